@@ -0,0 +1,218 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.infinispan.persistence.ceph.configuration.Durability;
+import org.infinispan.persistence.spi.PersistenceException;
+
+import com.ceph.rados.exceptions.RadosException;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Writes and removes entry objects through the asynchronous librados API, so that the caller waits only as long as
+ * the configured {@link Durability} requires. The Java binding exposes only the synchronous operations, which wait
+ * for the commit, so the asynchronous functions are called directly.
+ * <p>
+ * With {@link Durability#COMMIT} the caller waits for the commit of the operation, with {@link Durability#ACK} for its
+ * acknowledgement. With {@link Durability#FIRE_AND_FORGET} writes return once submitted, their futures are completed
+ * by {@link Completions}. The number of such writes in flight is bounded, further writes wait for a free slot. Failed
+ * writes are counted and reported by {@link #awaitInFlight()}. Removes are never fire-and-forget, as the caller needs
+ * to know whether the object existed. The context of every operation stays leased until the operation completes.
+ * <p>
+ * The asynchronous variants return futures completed from the completion callbacks, no thread waits for them.
+ *
+ * @since 9.0
+ */
+final class AsyncWrites {
+
+   private static final int CEPH_ENOENT = -2;
+
+   private final ConnectionPool connections;
+   private final Durability durability;
+   private final int maxInFlight;
+   private final Semaphore inFlight;
+   private final Completions completions;
+   private final Consumer<String> failureListener;
+   private final AtomicInteger failures = new AtomicInteger();
+   private final AtomicReference<RadosException> firstFailure = new AtomicReference<>();
+
+   /**
+    * @param failureListener notified about the object name of every failed fire-and-forget write
+    */
+   AsyncWrites(ConnectionPool connections, Durability durability, int maxInFlight, Completions completions,
+         Consumer<String> failureListener) {
+      this.connections = connections;
+      this.durability = durability;
+      this.maxInFlight = Math.max(1, maxInFlight);
+      this.inFlight = new Semaphore(this.maxInFlight);
+      this.completions = completions;
+      this.failureListener = failureListener;
+   }
+
+   void writeFull(String objectName, byte[] bytes) throws RadosException {
+      if (durability != Durability.FIRE_AND_FORGET) {
+         try (ClusterConnections.Lease lease = connections.lease(objectName)) {
+            await(submitWrite(lease, objectName, bytes), objectName, durability == Durability.COMMIT);
+         }
+         return;
+      }
+      try {
+         inFlight.acquire();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException(String.format("Interrupted while writing %s", objectName), e);
+      }
+      CompletableFuture<Void> write;
+      try {
+         write = writeFullAsync(objectName, bytes, false);
+      } catch (RuntimeException e) {
+         inFlight.release();
+         throw e;
+      }
+      write.whenComplete((v, e) -> {
+         inFlight.release();
+         if (e != null) {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            failures.incrementAndGet();
+            firstFailure.compareAndSet(null, cause instanceof RadosException ? (RadosException) cause
+                  : new RadosException(String.format("Write of %s has failed", objectName), cause));
+            failureListener.accept(objectName);
+         }
+      });
+   }
+
+   /**
+    * Writes the whole object. The future completes once the write is acknowledged or committed, as required by the
+    * configured durability. Fire-and-forget writes are acknowledged too, the caller decides whether to wait.
+    */
+   CompletableFuture<Void> writeFullAsync(String objectName, byte[] bytes) {
+      return writeFullAsync(objectName, bytes, durability == Durability.COMMIT);
+   }
+
+   private CompletableFuture<Void> writeFullAsync(String objectName, byte[] bytes, boolean committed) {
+      ClusterConnections.Lease lease = connections.lease(objectName);
+      //librados copies the buffer before the call returns
+      CompletableFuture<Void> future = completions.submit(objectName, committed,
+            completion -> LibRados.INSTANCE.rados_aio_write_full(lease.ctx().getPointer(), objectName, completion,
+                  bytes, new NativeLong(bytes.length)),
+            result -> {
+               check(result, objectName);
+               return null;
+            });
+      return future.whenComplete((v, e) -> lease.close());
+   }
+
+   void remove(String objectName) throws RadosException {
+      try (ClusterConnections.Lease lease = connections.lease(objectName)) {
+         Pointer completion = createCompletion(objectName);
+         int result = LibRados.INSTANCE.rados_aio_remove(lease.ctx().getPointer(), objectName, completion);
+         if (result < 0) {
+            LibRados.INSTANCE.rados_aio_release(completion);
+            throw new RadosException(String.format("Unable to submit remove of %s", objectName), result);
+         }
+         await(completion, objectName, durability == Durability.COMMIT);
+      }
+   }
+
+   /**
+    * Removes the object, the future completes with {@code false} if there was no such object.
+    */
+   CompletableFuture<Boolean> removeAsync(String objectName) {
+      ClusterConnections.Lease lease = connections.lease(objectName);
+      CompletableFuture<Boolean> future = completions.submit(objectName, durability == Durability.COMMIT,
+            completion -> LibRados.INSTANCE.rados_aio_remove(lease.ctx().getPointer(), objectName, completion),
+            result -> {
+               if (result == CEPH_ENOENT) {
+                  return false;
+               }
+               check(result, objectName);
+               return true;
+            });
+      return future.whenComplete((v, e) -> lease.close());
+   }
+
+   /**
+    * Waits until all fire-and-forget writes submitted so far are completed.
+    *
+    * @throws PersistenceException if any fire-and-forget write has failed since the last call
+    */
+   void awaitInFlight() throws PersistenceException {
+      try {
+         inFlight.acquire(maxInFlight);
+         inFlight.release(maxInFlight);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException("Interrupted while waiting for writes in flight", e);
+      }
+      RadosException failure = firstFailure.getAndSet(null);
+      if (failure != null) {
+         throw new PersistenceException(
+               String.format("%d fire-and-forget writes have failed", failures.getAndSet(0)), failure);
+      }
+   }
+
+   private Pointer submitWrite(ClusterConnections.Lease lease, String objectName, byte[] bytes)
+         throws RadosException {
+      Pointer completion = createCompletion(objectName);
+      int result = LibRados.INSTANCE.rados_aio_write_full(lease.ctx().getPointer(), objectName, completion, bytes,
+            new NativeLong(bytes.length));
+      if (result < 0) {
+         LibRados.INSTANCE.rados_aio_release(completion);
+         throw new RadosException(String.format("Unable to submit write of %s", objectName), result);
+      }
+      return completion;
+   }
+
+   /**
+    * @return completion without callbacks, to be waited for by {@link #await(Pointer, String)}
+    */
+   static Pointer createCompletion(String objectName) throws RadosException {
+      PointerByReference completion = new PointerByReference();
+      int result = LibRados.INSTANCE.rados_aio_create_completion(null, null, null, completion);
+      if (result < 0) {
+         throw new RadosException(String.format("Unable to create completion for %s", objectName), result);
+      }
+      return completion.getValue();
+   }
+
+   /**
+    * Waits for the acknowledgement of the operation and releases its completion.
+    *
+    * @throws RadosException carrying the return value of the operation if it has failed
+    */
+   static void await(Pointer completion, String objectName) throws RadosException {
+      await(completion, objectName, false);
+   }
+
+   /**
+    * @param committed whether to wait for the commit of the operation rather than for its acknowledgement
+    */
+   private static void await(Pointer completion, String objectName, boolean committed) throws RadosException {
+      int result;
+      try {
+         if (committed) {
+            LibRados.INSTANCE.rados_aio_wait_for_safe(completion);
+         } else {
+            LibRados.INSTANCE.rados_aio_wait_for_complete(completion);
+         }
+         result = LibRados.INSTANCE.rados_aio_get_return_value(completion);
+      } finally {
+         LibRados.INSTANCE.rados_aio_release(completion);
+      }
+      check(result, objectName);
+   }
+
+   private static void check(int result, String objectName) throws RadosException {
+      if (result < 0) {
+         throw new RadosException(String.format("Operation on %s has failed", objectName), result);
+      }
+   }
+
+}
@@ -0,0 +1,110 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter of strings. The number of bits and hash functions is derived from the expected number of
+ * insertions and the requested false positive rate; inserting more elements than expected only increases the false
+ * positive rate. Bit positions are derived from two halves of a 64-bit hash of the string (Kirsch-Mitzenmacher), so
+ * every operation hashes the string once.
+ *
+ * @since 9.0
+ */
+final class BloomFilter {
+
+   private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+   private static final long MAX_BITS = (long) Integer.MAX_VALUE * Long.SIZE;
+
+   private final AtomicLongArray words;
+   private final long bits;
+   private final int hashes;
+   private final long expectedInsertions;
+   private final AtomicLong insertions = new AtomicLong();
+
+   BloomFilter(long expectedInsertions, double falsePositiveRate) {
+      long n = Math.max(1, expectedInsertions);
+      long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / LN2_SQUARED);
+      this.bits = Math.min(MAX_BITS, Math.max(Long.SIZE, (m + Long.SIZE - 1) / Long.SIZE * Long.SIZE));
+      this.words = new AtomicLongArray((int) (bits / Long.SIZE));
+      this.hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+      this.expectedInsertions = n;
+   }
+
+   /**
+    * Adds the element, which counts as an insertion only if it changes the filter, so adding the same element again
+    * doesn't fill the filter up.
+    *
+    * @return {@code false} if the element might have been added already
+    */
+   boolean add(String element) {
+      boolean changed = false;
+      long hash = hash(element);
+      int h1 = (int) hash;
+      int h2 = (int) (hash >>> 32);
+      for (int i = 1; i <= hashes; i++) {
+         long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bits;
+         int word = (int) (bit >>> 6);
+         long mask = 1L << bit;
+         for (;;) {
+            long current = words.get(word);
+            if ((current & mask) != 0) {
+               break;
+            }
+            if (words.compareAndSet(word, current, current | mask)) {
+               changed = true;
+               break;
+            }
+         }
+      }
+      if (changed) {
+         insertions.incrementAndGet();
+      }
+      return changed;
+   }
+
+   /**
+    * @return {@code false} if the element was certainly never added, {@code true} if it might have been
+    */
+   boolean mightContain(String element) {
+      long hash = hash(element);
+      int h1 = (int) hash;
+      int h2 = (int) (hash >>> 32);
+      for (int i = 1; i <= hashes; i++) {
+         long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bits;
+         if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * @return {@code true} if more elements were added than the filter was sized for
+    */
+   boolean isOverfilled() {
+      return insertions.get() > expectedInsertions;
+   }
+
+   long bits() {
+      return bits;
+   }
+
+   /**
+    * 64-bit FNV-1a of the characters, finished by the MurmurHash3 mixing step to spread the bits of short strings.
+    */
+   private static long hash(String element) {
+      long h = 0xcbf29ce484222325L;
+      for (int i = 0; i < element.length(); i++) {
+         h ^= element.charAt(i);
+         h *= 0x100000001b3L;
+      }
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+   }
+
+}
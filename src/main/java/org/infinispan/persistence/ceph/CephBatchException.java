@@ -0,0 +1,32 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.infinispan.persistence.spi.PersistenceException;
+
+/**
+ * Thrown when some operations of a batch write or delete have failed. All operations of the batch are attempted,
+ * failures of the individual keys are available via {@link #getFailures()}.
+ *
+ * @since 9.0
+ */
+public class CephBatchException extends PersistenceException {
+
+   private static final long serialVersionUID = 5926217366180742283L;
+
+   private final Map<Object, Throwable> failures;
+
+   public CephBatchException(String message, Map<Object, Throwable> failures) {
+      super(message, failures.isEmpty() ? null : failures.values().iterator().next());
+      this.failures = Collections.unmodifiableMap(failures);
+   }
+
+   /**
+    * @return map of keys which failed to be written or deleted to the cause of the failure
+    */
+   public Map<Object, Throwable> getFailures() {
+      return failures;
+   }
+
+}
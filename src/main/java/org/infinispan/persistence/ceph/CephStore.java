@@ -1,32 +1,65 @@
 package org.infinispan.persistence.ceph;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.transaction.Transaction;
 
 import org.infinispan.commons.configuration.ConfiguredBy;
 import org.infinispan.commons.util.Util;
+import org.infinispan.configuration.global.TransportConfiguration;
+import org.infinispan.distribution.DistributionManager;
 import org.infinispan.executors.ExecutorAllCompletionService;
 import org.infinispan.filter.KeyFilter;
 import org.infinispan.marshall.core.MarshalledEntry;
-import org.infinispan.metadata.EmbeddedMetadata;
 import org.infinispan.metadata.InternalMetadata;
-import org.infinispan.metadata.Metadata;
-import org.infinispan.metadata.impl.InternalMetadataImpl;
 import org.infinispan.persistence.TaskContextImpl;
 import org.infinispan.persistence.ceph.configuration.CephStoreConfiguration;
+import org.infinispan.persistence.ceph.configuration.ClearMode;
+import org.infinispan.persistence.ceph.configuration.Durability;
+import org.infinispan.persistence.ceph.configuration.ReplicaSelection;
 import org.infinispan.persistence.keymappers.MarshallingTwoWayKey2StringMapper;
 import org.infinispan.persistence.spi.AdvancedLoadWriteStore;
 import org.infinispan.persistence.spi.InitializationContext;
 import org.infinispan.persistence.spi.PersistenceException;
+import org.infinispan.persistence.spi.TransactionalCacheWriter;
+import org.infinispan.persistence.support.BatchModification;
+import org.reactivestreams.Publisher;
 
 import com.ceph.rados.IoCTX;
-import com.ceph.rados.ListCtx;
 import com.ceph.rados.Rados;
 import com.ceph.rados.ReadOp;
 import com.ceph.rados.ReadOp.ReadResult;
@@ -41,14 +74,10 @@ import com.ceph.rados.exceptions.RadosException;
  *
  */
 @ConfiguredBy(CephStoreConfiguration.class)
-public class CephStore<K, V> implements AdvancedLoadWriteStore<K, V> {
+public class CephStore<K, V> implements AdvancedLoadWriteStore<K, V>, TransactionalCacheWriter<K, V> {
    //TODO logging, once messages ids are reserved
    //private static final Log log = LogFactory.getLog(CephStore.class, Log.class);
 
-   private static final String CEPH_CONF_MONITOR_HOST = "mon host";
-   private static final String CEPH_CONF_KEY = "key";
-   private static final String CEPH_CONF_KEYRING = "keyring";
-
    private static final int CEPH_ENOENT = -2; //No such file or directory
    private static final int CEPH_ENODATA = -61; //No data available
 
@@ -58,15 +87,77 @@ public class CephStore<K, V> implements AdvancedLoadWriteStore<K, V> {
    private static final String ATTR_LAST_USED = "ispn_meta_last_used";
 
    private static final int POOL_BATCH_SIZE = 1000;
-   private static final int PROCESS_BATCH_SIZE = 1000;
+   /**
+    * Objects of each listed chunk are split among several tasks to fetch and process them concurrently by the executor
+    * threads.
+    */
+   private static final int ITERATION_PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+   /**
+    * Number of slices of the pool listed at the same time, each by its own cursor, see {@link ObjectList}.
+    */
+   private static final int LIST_SLICES = ITERATION_PARALLELISM;
+   private static final int ITERATION_TASK_SIZE = Math.max(1, POOL_BATCH_SIZE / ITERATION_PARALLELISM);
+   private static final int MAX_ITERATION_TASKS_IN_FLIGHT = 2 * ITERATION_PARALLELISM;
+   private static final int INITIAL_READ_SIZE = 16 * 1024;
+   private static final int INITIAL_KEY_READ_SIZE = 1024;
+   private static final long STOP_TIMEOUT_SECONDS = 30;
+   private static final long EXPIRATION_BUCKET_WIDTH = TimeUnit.MINUTES.toMillis(1);
+   private static final long MAX_PURGE_BUCKETS = 10000;
+   private static final int BACKGROUND_THREADS = 2;
+   private static final int COMPLETION_THREADS = 4;
+   private static final int MAX_PACKED_BUCKETS_PER_PURGE = 64;
+   /**
+    * Purges using the expiration index don't list the pool, every this many of them the pool is listed to find orphan
+    * chunks.
+    */
+   private static final int PURGES_PER_CHUNK_SCAN = 100;
+   /**
+    * Chunks younger than this may belong to a value whose manifest is not written yet, they are never collected.
+    */
+   private static final long MIN_ORPHAN_CHUNK_AGE = TimeUnit.HOURS.toMillis(1);
+   private static final int MAX_CHUNK_READ_ATTEMPTS = 3;
+   private static final int MAX_PENDING_TOUCHES = 100000;
+   private static final long CHUNK_THREAD_KEEP_ALIVE_SECONDS = 60;
+   private static final long TRANSACTION_RETRY_INTERVAL = TimeUnit.SECONDS.toMillis(10);
 
    private InitializationContext initializationContext;
    private CephStoreConfiguration configuration;
    private String poolName;
 
-   private Rados cephCluster;
-   private IoCTX poolCtx;
+   private ConnectionPool connections;
    private MarshallingTwoWayKey2StringMapper key2StringMapper;
+   private ExecutorService ioExecutor;
+   private ScheduledExecutorService backgroundExecutor;
+   private ExpirationIndex expirationIndex;
+   private Generations generations;
+   private DistributionManager distributionManager;
+   private boolean segmentPrefixes;
+   private SegmentIndex segmentIndex;
+   private boolean hashObjectNames;
+   private ObjectNames objectNames;
+   private PackedEntries packedEntries;
+   private int packedBucketsPurged;
+   private int purgesSinceChunkScan;
+   private ThreadPoolExecutor chunkExecutor;
+   private ChunkedValues chunkedValues;
+   private int chunkThreshold;
+   private ValueCodec valueCodec;
+   private NameFilter nameFilter;
+   private int compressionThreshold;
+   private NearCache nearCache;
+   private long nearCacheTrustWindow;
+   private SingleFlight<StoredEntry> valueFetches;
+   private SingleFlight<StoredEntry> headerFetches;
+   private WriteBehindQueue<K, V> writeBehind;
+   private AsyncWrites asyncWrites;
+   private ExecutorService completionExecutor;
+   private Completions completions;
+   private ExecutorService readExecutor;
+   private ExecutorService listExecutor;
+   private HedgedReads hedgedReads;
+   private TransactionLog transactionLog;
+   private Touches touches;
+   private final ConcurrentMap<Transaction, PreparedTransaction<K, V>> preparedTransactions = new ConcurrentHashMap<>();
 
    public CephStoreConfiguration getConfiguration() {
       return configuration;
@@ -88,289 +179,2390 @@ public class CephStore<K, V> implements AdvancedLoadWriteStore<K, V> {
 
    @Override
    public void start() {
-      cephCluster = new Rados(configuration.userName());
-      //connect to the Ceph cluster
-      try {
-         cephCluster.confSet(CEPH_CONF_MONITOR_HOST, configuration.monitorHost());
-         String authKey = configuration.key();
-         if (authKey != null && !authKey.isEmpty()) {
-            cephCluster.confSet(CEPH_CONF_KEY, authKey);
-         } else {
-            cephCluster.confSet(CEPH_CONF_KEYRING, configuration.keyringPath());
+      //connections are shared by all stores of the cache manager
+      connections = new ConnectionPool(
+            ConnectionRegistry.of(initializationContext.getCache().getAdvancedCache().getCacheManager()
+                  .getGlobalComponentRegistry()),
+            configuration, getPoolName());
+      connections.start();
+
+      key2StringMapper = Util.getInstance(configuration.key2StringMapper(),
+            initializationContext.getCache().getAdvancedCache().getClassLoader());
+      key2StringMapper.setMarshaller(initializationContext.getMarshaller());
+
+      if (configuration.expirationIndex()) {
+         expirationIndex = new ExpirationIndex(connections, EXPIRATION_BUCKET_WIDTH);
+      }
+
+      distributionManager = initializationContext.getCache().getAdvancedCache().getDistributionManager();
+      segmentPrefixes = configuration.segmented() && distributionManager != null;
+      hashObjectNames = configuration.hashObjectNames();
+      //names of the internal objects are reserved only if there are any
+      boolean generationPrefixes = configuration.clearMode() == ClearMode.GENERATION;
+      objectNames = new ObjectNames(generationPrefixes || configuration.expirationIndex()
+            || configuration.packedBuckets() > 0 || configuration.chunkThreshold() > 0
+            || configuration.transactionLog() || segmentPrefixes, generationPrefixes, segmentPrefixes);
+      completionExecutor = Executors.newFixedThreadPool(COMPLETION_THREADS, threadFactory("completion"));
+      completions = new Completions(completionExecutor);
+      if (segmentPrefixes) {
+         segmentIndex = new SegmentIndex(connections, completions);
+      }
+      if (configuration.packedBuckets() > 0) {
+         packedEntries = new PackedEntries(connections, completions, configuration.packedBuckets(),
+               configuration.packedValueThreshold());
+      }
+
+      ioExecutor = Executors.newFixedThreadPool(configuration.ioThreadPoolSize(), threadFactory("io"));
+      //listing threads are waited for by the io threads, so they must never queue behind them
+      listExecutor = Executors.newCachedThreadPool(threadFactory("list"));
+      backgroundExecutor = Executors.newScheduledThreadPool(BACKGROUND_THREADS, threadFactory("background"));
+      //chunks are transferred by their own threads, the io threads may be blocked waiting for them
+      chunkExecutor = new ThreadPoolExecutor(configuration.ioThreadPoolSize(), configuration.ioThreadPoolSize(),
+            CHUNK_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory("chunk"));
+      chunkExecutor.allowCoreThreadTimeOut(true);
+      chunkedValues = new ChunkedValues(connections, chunkExecutor, configuration.chunkSize());
+      asyncWrites = new AsyncWrites(connections, configuration.durability(), configuration.maxWritesInFlight(),
+            completions, this::writeFailed);
+      chunkThreshold = configuration.chunkThreshold();
+      valueCodec = ValueCodec.of(configuration.compression());
+      compressionThreshold = configuration.compressionThreshold();
+      if (configuration.nearCacheSize() > 0) {
+         nearCache = new NearCache(configuration.nearCacheSize());
+         nearCacheTrustWindow = configuration.nearCacheTrustWindow();
+      }
+      valueFetches = new SingleFlight<>();
+      headerFetches = new SingleFlight<>();
+      if (configuration.hedgedReadPercentile() > 0) {
+         //io threads wait for the reads, which must not queue behind each other
+         readExecutor = Executors.newCachedThreadPool(threadFactory("read"));
+         int hedgeFlags = configuration.hedgedReadReplica() == ReplicaSelection.LOCALIZE
+               ? Rados.OPERATION_LOCALIZE_READS : Rados.OPERATION_BALANCE_READS;
+         hedgedReads = new HedgedReads(configuration.hedgedReadPercentile(), configuration.hedgedReadMaxRatio(),
+               hedgeFlags, readExecutor);
+      }
+
+      if (configuration.clearMode() == ClearMode.GENERATION) {
+         generations = new Generations(connections, ioExecutor, backgroundExecutor,
+               configuration.generationCleanupRate());
+         try {
+            generations.start();
+         } catch (RadosException e) {
+            throw new PersistenceException(
+                  String.format("Unable to read current generation of the pool '%s'", getPoolName()), e);
          }
-         cephCluster.connect();
-      } catch (RadosException e) {
-         throw new PersistenceException("Unable to connect to Ceph cluster", e);
       }
 
-      //get of create Ceph pool
-      try {
-         cephCluster.poolLookup(getPoolName());
-      } catch (RadosException e) {
-         if (e.getReturnValue() == CEPH_ENOENT) {
-            //try create pool
-            try {
-               cephCluster.poolCreate(getPoolName());
-            } catch (RadosException ex) {
-               throw new PersistenceException(String.format("Unable to create pool %s", getPoolName()), e);
-            }
-         } else {
-            throw new PersistenceException(String.format("Cannot connect to pool %s", getPoolName()), e);
+      if (configuration.bloomFilterFalsePositiveRate() > 0) {
+         nameFilter = new NameFilter(configuration.bloomFilterFalsePositiveRate(), this::entryNames,
+               this::isEntryObject, this::poolObjects, backgroundExecutor);
+         nameFilter.rebuild();
+         long rebuildInterval = configuration.bloomFilterRebuildInterval();
+         if (rebuildInterval > 0) {
+            backgroundExecutor.scheduleWithFixedDelay(nameFilter::rebuild, rebuildInterval, rebuildInterval,
+                  TimeUnit.MILLISECONDS);
          }
       }
 
-      //obtain pool context
-      try {
-         poolCtx = cephCluster.ioCtxCreate(getPoolName());
-      } catch (RadosException e) {
-         throw new PersistenceException("Unable to get Ceph context", e);
+      if (configuration.writeBehindQueueSize() > 0) {
+         writeBehind = new WriteBehindQueue<>(configuration.writeBehindQueueSize(),
+               configuration.writeBehindMaxMemory(), configuration.writeBehindMaxAge(), this::applyModifications,
+               backgroundExecutor);
+         long checkInterval = Math.max(1, configuration.writeBehindMaxAge() / 2);
+         backgroundExecutor.scheduleWithFixedDelay(writeBehind::flushIfDue, checkInterval, checkInterval,
+               TimeUnit.MILLISECONDS);
       }
 
-      key2StringMapper = Util.getInstance(configuration.key2StringMapper(),
-            initializationContext.getCache().getAdvancedCache().getClassLoader());
-      key2StringMapper.setMarshaller(initializationContext.getMarshaller());
+      if (configuration.transactionLog()) {
+         transactionLog = new TransactionLog(connections, transactionLogName());
+         try {
+            //commits interrupted by a crash are completed before the store is used
+            transactionLog.recover(this::applyLog);
+         } catch (RadosException e) {
+            throw new PersistenceException(
+                  String.format("Unable to recover transactions from the pool '%s'", getPoolName()), e);
+         }
+         backgroundExecutor.scheduleWithFixedDelay(this::retryTransactions, TRANSACTION_RETRY_INTERVAL,
+               TRANSACTION_RETRY_INTERVAL, TimeUnit.MILLISECONDS);
+      }
+
+      long touchInterval = configuration.touchInterval();
+      if (touchInterval > 0) {
+         touches = new Touches(MAX_PENDING_TOUCHES, this::writeTouches, backgroundExecutor);
+         backgroundExecutor.scheduleWithFixedDelay(touches::flushQuietly, touchInterval, touchInterval,
+               TimeUnit.MILLISECONDS);
+      }
+   }
+
+   /**
+    * @return name of the intent log of this node, the node name of the transport or the host name if none is
+    *         configured, followed by the name of the cache
+    */
+   private String transactionLogName() {
+      TransportConfiguration transport = initializationContext.getCache().getAdvancedCache().getCacheManager()
+            .getCacheManagerConfiguration().transport();
+      String nodeName = transport != null ? transport.nodeName() : null;
+      if (nodeName == null || nodeName.isEmpty()) {
+         try {
+            nodeName = InetAddress.getLocalHost().getHostName();
+         } catch (UnknownHostException e) {
+            throw new PersistenceException("Unable to determine the name of the transaction log, the node name of "
+                  + "the transport is not configured", e);
+         }
+      }
+      return nodeName + "_" + initializationContext.getCache().getName();
+   }
+
+   private ThreadFactory threadFactory(final String name) {
+      final AtomicInteger threadCounter = new AtomicInteger();
+      return r -> {
+         Thread t = new Thread(r,
+               String.format("CephStore-%s-%s-%d", getPoolName(), name, threadCounter.incrementAndGet()));
+         t.setDaemon(true);
+         return t;
+      };
    }
 
    public void stop() {
-      cephCluster.shutDown();
+      try {
+         if (touches != null) {
+            touches.flushQuietly();
+         }
+         flush();
+      } finally {
+         backgroundExecutor.shutdownNow();
+         ioExecutor.shutdown();
+         completionExecutor.shutdown();
+         listExecutor.shutdown();
+         if (readExecutor != null) {
+            readExecutor.shutdown();
+         }
+         try {
+            ioExecutor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            chunkExecutor.shutdown();
+            chunkExecutor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         connections.stop();
+      }
    }
 
    public int size() {
+      flushWriteBehind();
       try {
-         return (int) poolCtx.poolStat().num_objects;
+         if (objectNames.hasInternalObjects() || connections.isNamespaced()) {
+            //pool may contain internal objects, e.g. chunks, objects of the previous generations or other namespaces,
+            //packed entries are not objects
+            return countEntries(null);
+         }
+         return (int) poolObjects();
       } catch (RadosException e) {
          throw new PersistenceException("Cannot get poll size", e);
       }
    }
 
+   /**
+    * @return number of objects in the pool, according to the pool statistics
+    */
+   private long poolObjects() throws RadosException {
+      try (ClusterConnections.Lease lease = connections.lease()) {
+         return lease.ctx().poolStat().num_objects;
+      }
+   }
+
+   /**
+    * @return number of entries which belong to given segments; with the segmented layout only object names are listed,
+    *         otherwise the key of every entry has to be unmarshalled to find out its segment
+    */
+   public int size(Set<Integer> segments) {
+      requireSegments();
+      flushWriteBehind();
+      try {
+         return countEntries(segments);
+      } catch (RadosException e) {
+         throw new PersistenceException(String.format("Cannot get size of segments %s", segments), e);
+      }
+   }
+
+   private int countEntries(Set<Integer> segments) throws RadosException {
+      int size = 0;
+      try (EntryNames names = entryNames()) {
+         String[] chunk;
+         while ((chunk = names.next()) != null) {
+            for (String objectName : chunk) {
+               if (isEntryObject(objectName) && inSegments(objectName, segments)) {
+                  size++;
+               }
+            }
+         }
+      }
+      return size;
+   }
+
    public void clear() {
+      if (writeBehind != null) {
+         writeBehind.clear();
+      }
+      if (touches != null) {
+         touches.clear();
+      }
       try {
-         for (String item : poolCtx.listObjects()) {
-            poolCtx.remove(item);
+         if (generations != null) {
+            generations.advance();
+         } else {
+            String[] items;
+            try (ClusterConnections.Lease lease = connections.lease()) {
+               items = lease.ctx().listObjects();
+            }
+            for (String item : items) {
+               try (ClusterConnections.Lease lease = connections.lease(item)) {
+                  lease.ctx().remove(item);
+               }
+            }
          }
       } catch (RadosException e) {
          throw new PersistenceException(String.format("Unable to clear the pool '%s'", getPoolName()), e);
+      } finally {
+         if (nearCache != null) {
+            nearCache.clear();
+         }
+         valueFetches.forgetAll();
+         headerFetches.forgetAll();
+      }
+      if (nameFilter != null) {
+         //names of the removed entries remain in the filter
+         nameFilter.rebuild();
       }
    }
 
    public boolean contains(Object key) {
-      return load(key) != null;
+      long now = initializationContext.getTimeService().wallClockTime();
+      WriteBehindQueue.Modification<K, V> modification = writeBehind != null ? writeBehind.get(key) : null;
+      if (modification != null) {
+         return modification.isWrite() && !isExpired(modification.entry(), now);
+      }
+      String objectName = objectName(key);
+      if (nameFilter != null && !nameFilter.mightContain(objectName)) {
+         return false;
+      }
+      StoredEntry stored = nearCache != null ? trustedEntry(objectName, now) : null;
+      if (stored == null) {
+         stored = headerFetches.fetch(objectName, () -> fetch(objectName, false, false, true));
+      }
+      return stored != null && !isExpired(objectName, stored, now);
    }
 
    public MarshalledEntry<K, V> load(Object key) {
-      String keyStr = key2StringMapper.getStringMapping(key);
-      try {
-         poolCtx.stat(keyStr);
-      } catch (RadosException e) {
-         if (e.getReturnValue() == CEPH_ENOENT) {
-            return null;
-         }
-         throw new PersistenceException(String.format("Cannot stat key %s in pool %s",
-               key2StringMapper.getStringMapping(key), getPoolName(), e));
+      long now = initializationContext.getTimeService().wallClockTime();
+      WriteBehindQueue.Modification<K, V> modification = writeBehind != null ? writeBehind.get(key) : null;
+      if (modification != null) {
+         return modification.isWrite() && !isExpired(modification.entry(), now)
+               ? (MarshalledEntry<K, V>) modification.entry() : null;
+      }
+      String objectName = objectName(key);
+      if (nameFilter != null && !nameFilter.mightContain(objectName)) {
+         return null;
       }
+      //concurrent loads of the same object share one fetch
+      StoredEntry stored = valueFetches.fetch(objectName,
+            () -> nearCache != null ? fetchCached(objectName, now) : fetch(objectName, false, true, true));
+      return loaded(key, objectName, stored, now);
+   }
 
-      long now = initializationContext.getTimeService().wallClockTime();
-      Metadata metadata = loadMetadata(keyStr);
-      InternalMetadata internalMetadata = loadInternalMetadata(keyStr, metadata);
-      MarshalledEntry<K, V> me = internalMetadata.isExpired(now) ? null
-            : initializationContext.getMarshalledEntryFactory().newMarshalledEntry(key, loadValue(keyStr),
-                  new InternalMetadataImpl(metadata, now, now));
-      return me;
+   /**
+    * @return entry loaded from given stored entry or {@code null} if there is no such entry or it's expired
+    */
+   private MarshalledEntry<K, V> loaded(Object key, String objectName, StoredEntry stored, long now) {
+      if (stored == null || isExpired(objectName, stored, now)) {
+         return null;
+      }
+      if (touches != null) {
+         touches.touch(objectName, stored, isLegacy(stored), now);
+         return initializationContext.getMarshalledEntryFactory().newMarshalledEntry(key, unmarshall(stored),
+               stored.metadata(now));
+      }
+      return initializationContext.getMarshalledEntryFactory().newMarshalledEntry(key, unmarshall(stored),
+            stored.metadata());
    }
 
    public void write(MarshalledEntry<? extends K, ? extends V> entry) {
-      String key = key2StringMapper.getStringMapping(entry.getKey());
-      InternalMetadata metadata = entry.getMetadata();
-      String lifespan = metadata == null ? "-1" : String.valueOf(metadata.lifespan());
-      String maxIdle = metadata == null ? "-1" : String.valueOf(metadata.maxIdle());
-      String created = metadata == null ? "-1" : String.valueOf(metadata.created());
-      String lastUsed = metadata == null ? "-1" : String.valueOf(metadata.lastUsed());
+      if (writeBehind != null) {
+         writeBehind.write(entry);
+         return;
+      }
+      writeEntry(entry);
+   }
 
+   private void writeEntry(MarshalledEntry<? extends K, ? extends V> entry) {
+      byte[] keyBytes = hashObjectNames ? marshallKey(entry.getKey()) : null;
+      String key = objectName(entry.getKey(), keyBytes);
+      InternalMetadata metadata = entry.getMetadata();
+      if (nameFilter != null) {
+         nameFilter.beginWrite(key);
+      }
+      long modification = nearCache != null ? nearCache.invalidate(key) : 0;
+      long stamp = nearCache != null ? NearCache.newStamp() : EntryFormat.NO_STAMP;
+      boolean cached = false;
       try {
-         poolCtx.write(key, marshall(entry));
-         poolCtx.setExtentedAttribute(key, ATTR_LIFESPAN, lifespan);
-         poolCtx.setExtentedAttribute(key, ATTR_MAX_IDLE, maxIdle);
-         poolCtx.setExtentedAttribute(key, ATTR_CREATED, created);
-         poolCtx.setExtentedAttribute(key, ATTR_LAST_USED, lastUsed);
+         if (expirationIndex != null && metadata != null) {
+            long expiryTime = EntryFormat.expiryTime(metadata.lifespan(), metadata.maxIdle(), metadata.created(),
+                  metadata.lastUsed());
+            if (expiryTime > -1) {
+               //index first, so that the entry is never stored without being indexed
+               expirationIndex.add(key, expiryTime, initializationContext.getTimeService().wallClockTime());
+            }
+         }
+         if (segmentIndex != null) {
+            //index first, so that the removal of the segment finds the object
+            segmentIndex.add(key);
+         }
+         EncodedValue encoded = encodeValue(entry);
+         byte[] value = encoded.bytes;
+         int codec = encoded.codec;
+         if (chunkThreshold > 0 && value.length > chunkThreshold) {
+            writeChunked(key, keyBytes, value, codec, stamp, metadata);
+            return;
+         }
+         byte[] bytes = EntryFormat.encode(keyBytes, value, codec, stamp, metadata);
+         boolean packed = packedEntries != null && packedEntries.accepts(value.length);
+         if (packed) {
+            if (packedEntries.write(key, bytes) == PackedEntries.Layout.STANDALONE) {
+               //the value was stored in a standalone object before
+               removeObject(key);
+            }
+         } else {
+            ChunkManifest previous = chunkThreshold > 0 ? readManifest(key) : null;
+            //chunks of the previous value may be removed only once the object no longer refers to them
+            writeStandalone(key, bytes, previous == null);
+            if (previous != null) {
+               chunkedValues.remove(key, previous);
+            }
+         }
+         if (nearCache != null) {
+            cached = nearCache.putIfUnmodified(key, StoredEntry.fromHeader(bytes, bytes.length, true), packed,
+                  modification, initializationContext.getTimeService().wallClockTime());
+         }
       } catch (RadosException e) {
          throw new PersistenceException(String.format("Unable to write entry %s to the pool '%s'", key, getPoolName()),
                e);
-      } catch (IOException | InterruptedException e) {
+      } catch (IOException e) {
          throw new PersistenceException(e);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException(e);
+      } finally {
+         written(key, cached);
       }
    }
 
-   public boolean delete(Object key) {
-      String keyStr = key2StringMapper.getStringMapping(key);
-      try {
-         poolCtx.remove(keyStr);
-         return true;
-      } catch (RadosException e) {
-         if (e.getReturnValue() == CEPH_ENOENT) {
-            return false;
+   /**
+    * @return marshalled value of the entry, compressed if configured and worth it
+    */
+   private EncodedValue encodeValue(MarshalledEntry<? extends K, ? extends V> entry)
+         throws IOException, InterruptedException {
+      byte[] value = marshall(entry);
+      if (valueCodec != null && value.length >= compressionThreshold) {
+         byte[] compressed = valueCodec.compress(value);
+         if (compressed.length < value.length) {
+            return new EncodedValue(compressed, valueCodec.id());
          }
-         throw new PersistenceException(
-               String.format("Unable to delete entry %s from the pool '%s'", keyStr, getPoolName()), e);
       }
+      return new EncodedValue(value, ValueCodec.NONE);
    }
 
-   public void purge(Executor executor, PurgeListener<? super K> listener) {
-      ExecutorAllCompletionService eacs = new ExecutorAllCompletionService(executor);
+   /**
+    * Ends the write of given object, whether it succeeded or failed.
+    *
+    * @param cached whether the written entry was stored in the near cache
+    */
+   private void written(String objectName, boolean cached) {
+      if (nearCache != null && !cached) {
+         //a concurrent load may have cached the previous entry
+         nearCache.invalidate(objectName);
+      }
+      forgetFetches(objectName);
+      if (touches != null) {
+         touches.forget(objectName);
+      }
+      if (nameFilter != null) {
+         nameFilter.endWrite();
+      }
+   }
+
+   /**
+    * Stores the value in chunks and then the object with the manifest, so that the object never refers to missing
+    * chunks. Chunks of the previous value are removed afterwards.
+    */
+   private void writeChunked(String objectName, byte[] keyBytes, byte[] value, int codec, long stamp,
+         InternalMetadata metadata) throws RadosException {
+      ChunkManifest previous = readManifest(objectName);
+      ChunkManifest manifest = chunkedValues.write(objectName, value);
+      byte[] bytes = EntryFormat.encode(keyBytes, codec, stamp, metadata, manifest);
       try {
-         ListCtx purgeCtx = poolCtx.listObjectsPartial(POOL_BATCH_SIZE);
-         while (purgeCtx.nextObjects() > 0) {
-            submitPurgeTask(eacs, purgeCtx.getObjects(), listener);
-         }
+         writeStandalone(objectName, bytes, false);
       } catch (RadosException e) {
-         throw new PersistenceException(String.format("Error when purgine pool '%s'", getPoolName()), e);
+         chunkedValues.remove(objectName, manifest);
+         throw e;
+      }
+      if (previous != null) {
+         chunkedValues.remove(objectName, previous);
       }
-
    }
 
-   public void process(KeyFilter<? super K> keyFilter, CacheLoaderTask<K, V> task, Executor executor, boolean loadValue,
-         boolean loadMetadata) {
-      ExecutorAllCompletionService eacs = new ExecutorAllCompletionService(executor);
-      final TaskContext taskContext = new TaskContextImpl();
-
+   /**
+    * Writes the standalone object of an entry. With packing enabled, the bucket of the entry is marked concurrently,
+    * which also removes the packed entry stored before, see {@link PackedEntries#markStandalone(String)}. If the mark
+    * fails, the object is removed, as the next packed write of the entry would not remove an unmarked object.
+    *
+    * @param asConfigured whether to wait for the cluster only as required by
+    *        {@link CephStoreConfiguration#durability()} rather than for the commit
+    */
+   private void writeStandalone(String objectName, byte[] bytes, boolean asConfigured) throws RadosException {
+      PackedEntries.Mark mark = packedEntries != null ? packedEntries.markStandalone(objectName) : null;
       try {
-         ListCtx processCtx = poolCtx.listObjectsPartial(POOL_BATCH_SIZE);
-         Map<String, K> keyEntries = new HashMap<String, K>(PROCESS_BATCH_SIZE);
-         while (processCtx.nextObjects() > 0) {
-            for (String k : processCtx.getObjects()) {
-               K key = (K) key2StringMapper.getKeyMapping(k);
-               if (keyFilter == null || keyFilter.accept(key)) {
-                  keyEntries.put(k, key);
-               }
-               if (keyEntries.size() == PROCESS_BATCH_SIZE) {
-                  final Map<String, K> batch = keyEntries;
-                  keyEntries = new HashMap<String, K>(PROCESS_BATCH_SIZE);
-                  submitProcessTask(eacs, task, taskContext, batch, loadValue, loadMetadata);
+         if (asConfigured) {
+            writeObject(objectName, bytes);
+         } else {
+            try (ClusterConnections.Lease lease = connections.lease(objectName)) {
+               lease.ctx().writeFull(objectName, bytes, bytes.length);
+            }
+         }
+      } catch (RadosException | RuntimeException e) {
+         if (mark != null) {
+            try {
+               mark.await();
+            } catch (RadosException markFailure) {
+               e.addSuppressed(markFailure);
+            }
+         }
+         throw e;
+      }
+      if (mark != null) {
+         try {
+            mark.await();
+         } catch (RadosException e) {
+            try {
+               try (ClusterConnections.Lease lease = connections.lease(objectName)) {
+                  lease.ctx().remove(objectName);
                }
+            } catch (RadosException removeFailure) {
+               e.addSuppressed(removeFailure);
             }
+            throw e;
          }
+      }
+   }
 
-         if (!keyEntries.isEmpty()) {
-            submitProcessTask(eacs, task, taskContext, keyEntries, loadValue, loadMetadata);
-         }
+   /**
+    * Writes the whole object, waiting for the cluster as required by {@link CephStoreConfiguration#durability()}.
+    */
+   private void writeObject(String objectName, byte[] bytes) throws RadosException {
+      asyncWrites.writeFull(objectName, bytes);
+   }
 
-         eacs.waitUntilAllCompleted();
-         if (eacs.isExceptionThrown()) {
-            throw new PersistenceException("Processing of the entries has failed", eacs.getFirstException());
-         }
+   /**
+    * Called once a fire-and-forget write of given object has failed.
+    */
+   private void writeFailed(String objectName) {
+      if (nearCache != null) {
+         nearCache.invalidate(objectName);
+      }
+   }
 
-      } catch (RadosException e) {
-         throw new PersistenceException(String.format("Error when processing pool '%s'", getPoolName()), e);
+   /**
+    * @return manifest of the chunks of the value stored in given object or {@code null} if the object doesn't exist or
+    *         its value is not chunked
+    */
+   private ChunkManifest readManifest(String objectName) throws PersistenceException {
+      byte[] bytes = readRange(objectName, EntryFormat.PREFIX_SIZE);
+      if (bytes == null || !EntryFormat.hasHeader(bytes, bytes.length)) {
+         return null;
       }
+      return EntryFormat.manifest(bytes);
    }
 
-   private byte[] marshall(MarshalledEntry<? extends K, ? extends V> entry) throws IOException, InterruptedException {
-      return initializationContext.getMarshaller().objectToByteBuffer(entry.getValue());
+   /**
+    * Deletes the entry. With the write-behind queue enabled, the delete is only queued and the result is best-effort:
+    * it's told by the queued modification of the key or by the near cache, the cluster is not read. If neither knows
+    * the key, the entry is reported as deleted unless the name filter rules it out.
+    */
+   public boolean delete(Object key) {
+      if (writeBehind != null) {
+         long now = initializationContext.getTimeService().wallClockTime();
+         WriteBehindQueue.Modification<K, V> previous = writeBehind.delete(key);
+         if (previous != null) {
+            return previous.isWrite() && !isExpired(previous.entry(), now);
+         }
+         String objectName = objectName(key);
+         NearCache.Entry cached = nearCache != null ? nearCache.get(objectName) : null;
+         if (cached != null) {
+            return !isExpired(objectName, cached.stored(), now);
+         }
+         return nameFilter == null || nameFilter.mightContain(objectName);
+      }
+      return deleteEntry(key);
    }
 
-   private V unmarshall(byte[] bytes) throws IOException, ClassNotFoundException {
-      if (bytes == null) {
-         return null;
+   private boolean deleteEntry(Object key) {
+      String objectName = objectName(key);
+      try {
+         //removes also the mark of a standalone object, a packed entry has no object to remove
+         return removePacked(objectName) == PackedEntries.Layout.PACKED || removeObject(objectName);
+      } finally {
+         deleted(objectName);
+      }
+   }
+
+   /**
+    * Ends the delete of given object, whether it succeeded or failed.
+    */
+   private void deleted(String objectName) {
+      if (nearCache != null) {
+         nearCache.invalidate(objectName);
+      }
+      forgetFetches(objectName);
+      if (touches != null) {
+         touches.forget(objectName);
       }
-      return (V) initializationContext.getMarshaller().objectFromByteBuffer(bytes);
    }
 
-   private V loadValue(String key) throws PersistenceException {
-      long valueSize = 0l;
+   /**
+    * @return layout of the entry before it was removed, {@link PackedEntries.Layout#NONE} if the packing is disabled
+    */
+   private PackedEntries.Layout removePacked(String objectName) {
+      if (packedEntries == null) {
+         return PackedEntries.Layout.NONE;
+      }
       try {
-         valueSize = poolCtx.stat(key).getSize();
+         return packedEntries.remove(objectName);
       } catch (RadosException e) {
-         if (e.getReturnValue() == CEPH_ENOENT) {
-            return null;
-         }
-         throw new PersistenceException(String.format("Cannot stat key %s in pool %s",
-               key2StringMapper.getStringMapping(key), getPoolName(), e));
+         throw new PersistenceException(
+               String.format("Unable to delete entry %s from the pool '%s'", objectName, getPoolName()), e);
       }
+   }
 
-      try (final ReadOp rop = poolCtx.readOpCreate()) {
-         ReadResult readRes = rop.queueRead(0, valueSize);
-         rop.operate(key, Rados.OPERATION_NOFLAG);
-         byte[] bytes = new byte[(int) readRes.getBytesRead()];
-         readRes.getBuffer().get(bytes);
-         return (V) unmarshall(bytes);
-      } catch (RadosException e) {
-         throw new PersistenceException(String.format("Unable to read entry %s from the pool '%s'", key, getPoolName()),
-               e);
-      } catch (IOException | ClassNotFoundException e) {
-         throw new PersistenceException(e);
+   /**
+    * Removes the standalone object and the mark in its bucket, see {@link PackedEntries#removeMark(String)}.
+    */
+   private boolean removeStandalone(String objectName) {
+      boolean removed = removeObject(objectName);
+      if (removed && packedEntries != null) {
+         try {
+            packedEntries.removeMark(objectName);
+         } catch (RadosException e) {
+            throw new PersistenceException(
+                  String.format("Unable to delete entry %s from the pool '%s'", objectName, getPoolName()), e);
+         }
       }
+      return removed;
    }
 
-   private Metadata loadMetadata(String key) throws PersistenceException {
-      String lifespanAttr = loadAttribute(key, ATTR_LIFESPAN);
-      String maxIdleAttr = loadAttribute(key, ATTR_MAX_IDLE);
-      Long lifespan = lifespanAttr != null ? Long.parseLong(lifespanAttr) : -1;
-      Long maxIdle = maxIdleAttr != null ? Long.parseLong(maxIdleAttr) : -1;
-      return new EmbeddedMetadata.Builder().lifespan(lifespan, TimeUnit.MILLISECONDS).maxIdle(maxIdle).build();
+   private boolean removeObject(String objectName) {
+      try {
+         ChunkManifest manifest = chunkThreshold > 0 ? readManifest(objectName) : null;
+         asyncWrites.remove(objectName);
+         if (manifest != null) {
+            chunkedValues.remove(objectName, manifest);
+         }
+         return true;
+      } catch (RadosException e) {
+         if (e.getReturnValue() == CEPH_ENOENT) {
+            return false;
+         }
+         throw new PersistenceException(
+               String.format("Unable to delete entry %s from the pool '%s'", objectName, getPoolName()), e);
+      }
    }
 
-   private InternalMetadata loadInternalMetadata(String key, Metadata metadata) {
-      String createdAttr = loadAttribute(key, ATTR_CREATED);
-      String lastUsedAttr = loadAttribute(key, ATTR_LAST_USED);
-      Long created = createdAttr != null ? Long.parseLong(createdAttr) : -1;
-      Long lastUsed = lastUsedAttr != null ? Long.parseLong(lastUsedAttr) : -1;
-      return new InternalMetadataImpl(loadMetadata(key), created, lastUsed);
+   /**
+    * Asynchronous variant of {@link #load(Object)}. The returned stage completes once the entry is fetched from the
+    * cluster, the calling thread is not blocked. The object and the bucket of packed entries are read through
+    * {@link Completions}. Chunks and legacy metadata are read only synchronously and hedged reads are timed by the
+    * waiting thread, such reads are performed by the io threads.
+    */
+   public CompletionStage<MarshalledEntry<K, V>> loadAsync(Object key) {
+      try {
+         long now = initializationContext.getTimeService().wallClockTime();
+         WriteBehindQueue.Modification<K, V> modification = writeBehind != null ? writeBehind.get(key) : null;
+         if (modification != null) {
+            return CompletableFuture.completedFuture(modification.isWrite() && !isExpired(modification.entry(), now)
+                  ? (MarshalledEntry<K, V>) modification.entry() : null);
+         }
+         String objectName = objectName(key);
+         if (nameFilter != null && !nameFilter.mightContain(objectName)) {
+            return CompletableFuture.completedFuture(null);
+         }
+         return valueFetches
+               .fetchAsync(objectName,
+                     () -> nearCache != null ? fetchCachedAsync(objectName, now) : fetchAsync(objectName, false, true))
+               .thenApply(stored -> loaded(key, objectName, stored, now));
+      } catch (RuntimeException e) {
+         return failedFuture(e);
+      }
    }
 
-   private String loadAttribute(String key, String attrName) throws PersistenceException {
-      String attr = null;
+   /**
+    * Asynchronous variant of {@link #contains(Object)}, only the header of the object is read, see
+    * {@link #loadAsync(Object)}.
+    */
+   public CompletionStage<Boolean> containsAsync(Object key) {
       try {
-         attr = poolCtx.getExtentedAttribute(key, attrName);
-      } catch (RadosException e) {
-         if (e.getReturnValue() != CEPH_ENODATA) {
-            throw new PersistenceException(
-                  String.format("Error when reading attributes for key %s from pool '%s'", key, getPoolName()), e);
+         long now = initializationContext.getTimeService().wallClockTime();
+         WriteBehindQueue.Modification<K, V> modification = writeBehind != null ? writeBehind.get(key) : null;
+         if (modification != null) {
+            return CompletableFuture
+                  .completedFuture(modification.isWrite() && !isExpired(modification.entry(), now));
+         }
+         String objectName = objectName(key);
+         if (nameFilter != null && !nameFilter.mightContain(objectName)) {
+            return CompletableFuture.completedFuture(false);
          }
+         StoredEntry trusted = nearCache != null ? trustedEntry(objectName, now) : null;
+         CompletableFuture<StoredEntry> stored = trusted != null ? CompletableFuture.completedFuture(trusted)
+               : headerFetches.fetchAsync(objectName, () -> fetchAsync(objectName, false, false));
+         return stored.thenApply(s -> s != null && !isExpired(objectName, s, now));
+      } catch (RuntimeException e) {
+         return failedFuture(e);
       }
-      return attr;
    }
 
-   private void submitPurgeTask(CompletionService<Void> cs, final String[] keys,
-         final PurgeListener<? super K> listener) {
-      cs.submit(new Callable<Void>() {
-         @Override
-         public Void call() throws RadosException {
-            long now = initializationContext.getTimeService().wallClockTime();
-            for (String key : keys) {
-               InternalMetadata internalMetadata = loadInternalMetadata(key, loadMetadata(key));
-               if (internalMetadata.isExpired(now)) {
-                  poolCtx.remove(key);
-                  listener.entryPurged((K) key2StringMapper.getKeyMapping(key));
+   /**
+    * Asynchronous variant of {@link #write(MarshalledEntry)}. The object is written through {@link AsyncWrites}, the
+    * stage completes once the write is stored as required by {@link CephStoreConfiguration#durability()}. Chunked and
+    * packed entries and the expiration index are written only synchronously, such writes are performed by the io
+    * threads.
+    */
+   public CompletionStage<Void> writeAsync(MarshalledEntry<? extends K, ? extends V> entry) {
+      if (writeBehind != null) {
+         //queueing doesn't block unless the queue is full
+         return completedStage(() -> {
+            write(entry);
+            return null;
+         });
+      }
+      return writeEntryAsync(entry);
+   }
+
+   /**
+    * Asynchronous variant of {@link #writeEntry(MarshalledEntry)}, see {@link #writeAsync(MarshalledEntry)}.
+    */
+   private CompletableFuture<Void> writeEntryAsync(MarshalledEntry<? extends K, ? extends V> entry) {
+      if (chunkThreshold > 0 || packedEntries != null || expirationIndex != null) {
+         return CompletableFuture.runAsync(() -> writeEntry(entry), ioExecutor);
+      }
+      if (configuration.durability() == Durability.FIRE_AND_FORGET) {
+         //submitting doesn't block unless too many fire-and-forget writes are in flight
+         return completedStage(() -> {
+            writeEntry(entry);
+            return null;
+         });
+      }
+      String key = null;
+      boolean writing = false;
+      try {
+         byte[] keyBytes = hashObjectNames ? marshallKey(entry.getKey()) : null;
+         key = objectName(entry.getKey(), keyBytes);
+         if (nameFilter != null) {
+            nameFilter.beginWrite(key);
+         }
+         writing = true;
+         long modification = nearCache != null ? nearCache.invalidate(key) : 0;
+         long stamp = nearCache != null ? NearCache.newStamp() : EntryFormat.NO_STAMP;
+         EncodedValue encoded = encodeValue(entry);
+         byte[] bytes = EntryFormat.encode(keyBytes, encoded.bytes, encoded.codec, stamp, entry.getMetadata());
+         String objectName = key;
+         //index first, see writeEntry(MarshalledEntry)
+         CompletableFuture<Void> write = segmentIndex != null
+               ? segmentIndex.addAsync(objectName).thenCompose(v -> asyncWrites.writeFullAsync(objectName, bytes))
+               : asyncWrites.writeFullAsync(objectName, bytes);
+         return write.handle((v, e) -> {
+            boolean cached = false;
+            try {
+               if (e != null) {
+                  throw asPersistenceException(e,
+                        String.format("Unable to write entry %s to the pool '%s'", objectName, getPoolName()));
                }
+               if (nearCache != null) {
+                  cached = nearCache.putIfUnmodified(objectName, StoredEntry.fromHeader(bytes, bytes.length, true),
+                        false, modification, initializationContext.getTimeService().wallClockTime());
+               }
+               return null;
+            } finally {
+               written(objectName, cached);
             }
-            return null;
+         });
+      } catch (IOException e) {
+         written(key, false);
+         return failedFuture(new PersistenceException(e));
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         written(key, false);
+         return failedFuture(new PersistenceException(e));
+      } catch (RuntimeException e) {
+         if (writing) {
+            written(key, false);
          }
-      });
+         return failedFuture(e);
+      }
    }
 
-   private void submitProcessTask(CompletionService<Void> cs, final CacheLoaderTask<K, V> task,
-         final TaskContext taskContext, final Map<String, K> batch, final boolean loadEntry,
-         final boolean loadMetadata) {
-      cs.submit(new Callable<Void>() {
-         @Override
-         public Void call() throws Exception {
-            long now = initializationContext.getTimeService().wallClockTime();
-            for (Entry<String, K> keyEntry : batch.entrySet()) {
-               if (taskContext.isStopped()) {
-                  break;
-               }
+   /**
+    * Asynchronous variant of {@link #delete(Object)}. The object is removed through {@link AsyncWrites}, packed
+    * entries and chunks are removed by the io threads, as their removes are synchronous.
+    */
+   public CompletionStage<Boolean> deleteAsync(Object key) {
+      if (writeBehind != null) {
+         return completedStage(() -> delete(key));
+      }
+      return deleteEntryAsync(key);
+   }
 
-               V value = loadEntry ? loadValue(keyEntry.getKey()) : null;
-               InternalMetadata internalMetadata = loadMetadata
-                     ? new InternalMetadataImpl(loadMetadata(keyEntry.getKey()), now, now) : null;
-               MarshalledEntry<K, V> me = initializationContext.getMarshalledEntryFactory()
-                     .newMarshalledEntry(keyEntry.getKey(), value, internalMetadata);
-               if (!internalMetadata.isExpired(now)) {
-                  task.processEntry(me, taskContext);
-               }
+   /**
+    * Asynchronous variant of {@link #deleteEntry(Object)}, see {@link #deleteAsync(Object)}.
+    */
+   private CompletableFuture<Boolean> deleteEntryAsync(Object key) {
+      if (packedEntries != null || chunkThreshold > 0) {
+         return CompletableFuture.supplyAsync(() -> deleteEntry(key), ioExecutor);
+      }
+      String objectName;
+      CompletableFuture<Boolean> remove;
+      try {
+         objectName = objectName(key);
+         remove = asyncWrites.removeAsync(objectName);
+      } catch (RuntimeException e) {
+         return failedFuture(e);
+      }
+      return remove.handle((removed, e) -> {
+         try {
+            if (e != null) {
+               throw asPersistenceException(e,
+                     String.format("Unable to delete entry %s from the pool '%s'", objectName, getPoolName()));
             }
-            return null;
+            return removed;
+         } finally {
+            deleted(objectName);
          }
       });
    }
 
+   /**
+    * @return stage completed with the result of given operation performed by the calling thread
+    */
+   private static <T> CompletableFuture<T> completedStage(Supplier<T> operation) {
+      CompletableFuture<T> stage = new CompletableFuture<>();
+      try {
+         stage.complete(operation.get());
+      } catch (RuntimeException e) {
+         stage.completeExceptionally(e);
+      }
+      return stage;
+   }
+
+   private static <T> CompletableFuture<T> failedFuture(Throwable failure) {
+      CompletableFuture<T> future = new CompletableFuture<>();
+      future.completeExceptionally(failure);
+      return future;
+   }
+
+   /**
+    * @param failure failure of a stage, possibly wrapped in a {@link CompletionException}
+    * @return the failure itself if it's a {@link PersistenceException}, otherwise one caused by it
+    */
+   private static PersistenceException asPersistenceException(Throwable failure, String message) {
+      Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause()
+            : failure;
+      return cause instanceof PersistenceException ? (PersistenceException) cause
+            : new PersistenceException(message, cause);
+   }
+
+   /**
+    * Applies all modifications held by the write-behind queue, see
+    * {@link CephStoreConfiguration#writeBehindQueueSize()}, and waits for the writes submitted with
+    * {@link Durability#FIRE_AND_FORGET} durability. Returns once all modifications made so far are stored.
+    *
+    * @throws CephBatchException if any of the queued modifications has failed, failed modifications remain queued
+    * @throws PersistenceException if any fire-and-forget write has failed since the last flush
+    */
+   public void flush() {
+      flushWriteBehind();
+      asyncWrites.awaitInFlight();
+   }
+
+   /**
+    * Applies the modifications held by the write-behind queue, so that operations which read the pool directly see
+    * them.
+    */
+   private void flushWriteBehind() {
+      if (writeBehind != null) {
+         writeBehind.flush();
+      }
+   }
+
+   /**
+    * Applies the modifications flushed from the write-behind queue, up to
+    * {@link CephStoreConfiguration#maxBatchInFlight()} at the same time.
+    */
+   private void applyModifications(Map<Object, WriteBehindQueue.Modification<K, V>> modifications) {
+      applyModifications(modifications, WriteBehindQueue.Modification::entry, "write-behind flush");
+   }
+
+   /**
+    * @param writtenEntry written entry of given modification or {@code null} if it deletes the key
+    */
+   private <M> void applyModifications(Map<Object, M> modifications,
+         Function<M, MarshalledEntry<? extends K, ? extends V>> writtenEntry, String operationName) {
+      applyBatch(modifications.entrySet(), Map.Entry::getKey, e -> {
+         MarshalledEntry<? extends K, ? extends V> entry = writtenEntry.apply(e.getValue());
+         return entry != null ? writeEntryAsync(entry) : deleteEntryAsync(e.getKey());
+      }, operationName);
+   }
+
+   private static boolean isExpired(MarshalledEntry<?, ?> entry, long now) {
+      InternalMetadata metadata = entry.getMetadata();
+      return metadata != null && metadata.isExpired(now);
+   }
+
+   /**
+    * @return {@code true} if the entry is expired, taking into account its last use which is not written yet
+    */
+   private boolean isExpired(String objectName, StoredEntry stored, long now) {
+      long expiryTime = expiryTime(objectName, stored);
+      return expiryTime > -1 && expiryTime <= now;
+   }
+
+   /**
+    * @return expiry time of the entry, taking into account its last use which is not written yet, or -1 if it never
+    *         expires
+    */
+   private long expiryTime(String objectName, StoredEntry stored) {
+      return touches != null ? stored.expiryTime(touches.lastUse(objectName)) : stored.expiryTime();
+   }
+
+   /**
+    * @return {@code true} if the entry was read from an object written in the legacy layout, where the metadata is
+    *         stored in extended attributes
+    */
+   private static boolean isLegacy(StoredEntry stored) {
+      return stored.hasValue() && !EntryFormat.hasHeader(stored.buffer(), stored.buffer().length);
+   }
+
+   /**
+    * Writes the times of the last use of loaded entries recorded by {@link Touches}, up to
+    * {@link CephStoreConfiguration#maxBatchInFlight()} at the same time.
+    */
+   private void writeTouches(Map<String, Touches.Touch> touched) {
+      applyBatch(touched.entrySet(), Map.Entry::getKey,
+            e -> CompletableFuture.runAsync(() -> writeTouch(e.getKey(), e.getValue()), ioExecutor), "touch");
+   }
+
+   private void writeTouch(String objectName, Touches.Touch touch) {
+      try (ClusterConnections.Lease lease = connections.lease(objectName)) {
+         IoCTX ctx = lease.ctx();
+         if (touch.legacy()) {
+            Touches.setAttributeIfExists(ctx, objectName, ATTR_LAST_USED,
+                  Long.toString(touch.time()).getBytes(StandardCharsets.UTF_8));
+         } else if (Touches.writeIfUnchanged(ctx, objectName, touch) && nearCache != null) {
+            //the stamp of the object is not changed, the cached entry stays valid
+            nearCache.touched(objectName, touch.stamp(), touch.time());
+         }
+      } catch (RadosException e) {
+         throw new PersistenceException(
+               String.format("Unable to write last use of entry %s to the pool '%s'", objectName, getPoolName()), e);
+      } finally {
+         forgetFetches(objectName);
+      }
+   }
+
+   /**
+    * Writes all given entries. Up to {@link CephStoreConfiguration#maxBatchInFlight()} writes are in flight at the same
+    * time. Failure of one write doesn't stop the others.
+    *
+    * @throws CephBatchException if any of the writes has failed
+    */
+   public void writeBatch(Iterable<MarshalledEntry<? extends K, ? extends V>> entries) {
+      applyBatch(entries, MarshalledEntry::getKey, this::writeAsync, "write");
+   }
+
+   /**
+    * Deletes all given keys. Up to {@link CephStoreConfiguration#maxBatchInFlight()} deletes are in flight at the same
+    * time. Failure of one delete doesn't stop the others.
+    *
+    * @throws CephBatchException if any of the deletes has failed
+    */
+   public void deleteBatch(Iterable<Object> keys) {
+      applyBatch(keys, Function.identity(), this::deleteAsync, "delete");
+   }
+
+   /**
+    * Stages the modifications of given transaction until it's committed or rolled back. If the intent log is enabled,
+    * see {@link CephStoreConfiguration#transactionLog()}, the modifications are encoded into the log already, so that
+    * marshalling failures are reported by the prepare and the commit only writes the log.
+    */
+   @Override
+   public void prepareWithModifications(Transaction transaction, BatchModification batchModification) {
+      Map<Object, PreparedTransaction.Modification<K, V>> modifications = new HashMap<>();
+      TransactionLog.Encoder log = transactionLog != null ? new TransactionLog.Encoder() : null;
+      try {
+         for (MarshalledEntry<K, V> entry : (Collection<MarshalledEntry<K, V>>) (Collection<?>) batchModification
+               .getMarshalledEntries()) {
+            modifications.put(entry.getKey(), new PreparedTransaction.Modification<>(entry));
+            if (log != null) {
+               log.add(TransactionLog.WRITE,
+                     EntryFormat.encode(marshallKey(entry.getKey()), marshall(entry), entry.getMetadata()));
+            }
+         }
+      } catch (IOException e) {
+         throw new PersistenceException(e);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException(e);
+      }
+      for (Object key : batchModification.getKeysToRemove()) {
+         modifications.put(key, new PreparedTransaction.Modification<>(null));
+         if (log != null) {
+            log.add(TransactionLog.DELETE, marshallKey(key));
+         }
+      }
+      preparedTransactions.put(transaction,
+            new PreparedTransaction<>(modifications, log != null ? log.toByteArray() : null));
+   }
+
+   /**
+    * Applies the staged modifications of given transaction by one compound operation per object, see
+    * {@link #applyTransaction(Map, String)}. If the intent log is enabled, the modifications are written to the log
+    * first and the log is removed once they are applied. With the write-behind queue enabled, the modifications are
+    * only queued.
+    *
+    * @throws CephBatchException if any of the modifications has failed, the intent log is then kept and applied again
+    *         in the background
+    */
+   @Override
+   public void commit(Transaction transaction) {
+      PreparedTransaction<K, V> prepared = preparedTransactions.remove(transaction);
+      if (prepared == null || prepared.modifications().isEmpty()) {
+         return;
+      }
+      if (writeBehind != null) {
+         for (Map.Entry<Object, PreparedTransaction.Modification<K, V>> e : prepared.modifications().entrySet()) {
+            if (e.getValue().isWrite()) {
+               writeBehind.write(e.getValue().entry());
+            } else {
+               writeBehind.delete(e.getKey());
+            }
+         }
+         return;
+      }
+      if (prepared.log() == null) {
+         applyTransaction(prepared.modifications(), "transaction commit");
+         return;
+      }
+      int slot;
+      try {
+         slot = transactionLog.write(prepared.log(), initializationContext.getTimeService().wallClockTime());
+      } catch (RadosException e) {
+         throw new PersistenceException(
+               String.format("Unable to write transaction log to the pool '%s'", getPoolName()), e);
+      }
+      try {
+         applyTransaction(prepared.modifications(), "transaction commit");
+         transactionLog.remove(slot);
+      } catch (RadosException e) {
+         transactionLog.retain(slot);
+         throw new PersistenceException(
+               String.format("Unable to remove transaction log from the pool '%s'", getPoolName()), e);
+      } catch (RuntimeException e) {
+         transactionLog.retain(slot);
+         throw e;
+      }
+   }
+
+   /**
+    * Applies the modifications of a transaction by one compound write operation per object, see
+    * {@link CompoundWrites}: the standalone object of every entry is written or removed by one operation, the records
+    * of all entries packed into the same bucket are set or removed by another one, and all the operations are in
+    * flight at the same time. Names of the expiring entries, and of all entries in the segmented layout, are indexed
+    * before, together with reading the previous layouts of the packed entries, so that no entry is stored without being
+    * indexed and the standalone object of an entry which is packed now is removed. With chunking enabled, see
+    * {@link CephStoreConfiguration#chunkThreshold()}, writes need the manifests of the previous values, so the
+    * modifications are applied one by one instead.
+    *
+    * @throws CephBatchException if any of the modifications has failed
+    */
+   private void applyTransaction(Map<Object, PreparedTransaction.Modification<K, V>> modifications,
+         String operationName) {
+      if (chunkThreshold > 0) {
+         applyModifications(modifications, PreparedTransaction.Modification::entry, operationName);
+         return;
+      }
+      boolean committed = configuration.durability() == Durability.COMMIT;
+      long now = initializationContext.getTimeService().wallClockTime();
+      Map<Object, Throwable> failures = new HashMap<>();
+      Map<Object, String> written = new HashMap<>();
+      Map<Object, String> deleted = new HashMap<>();
+      Map<Object, byte[]> standalone = new HashMap<>();
+      Map<Object, byte[]> packed = new HashMap<>();
+      Map<Object, CompletableFuture<PackedEntries.Layout>> layouts = new HashMap<>();
+      CompoundWrites index = new CompoundWrites();
+      try {
+         for (Map.Entry<Object, PreparedTransaction.Modification<K, V>> e : modifications.entrySet()) {
+            Object key = e.getKey();
+            MarshalledEntry<? extends K, ? extends V> entry = e.getValue().entry();
+            try {
+               byte[] keyBytes = hashObjectNames ? marshallKey(key) : null;
+               String objectName = objectName(key, keyBytes);
+               if (entry == null) {
+                  deleted.put(key, objectName);
+                  continue;
+               }
+               if (nameFilter != null) {
+                  nameFilter.beginWrite(objectName);
+               }
+               written.put(key, objectName);
+               EncodedValue encoded = encodeValue(entry);
+               InternalMetadata metadata = entry.getMetadata();
+               long stamp = nearCache != null ? NearCache.newStamp() : EntryFormat.NO_STAMP;
+               byte[] bytes = EntryFormat.encode(keyBytes, encoded.bytes, encoded.codec, stamp, metadata);
+               if (expirationIndex != null && metadata != null) {
+                  long expiryTime = EntryFormat.expiryTime(metadata.lifespan(), metadata.maxIdle(),
+                        metadata.created(), metadata.lastUsed());
+                  if (expiryTime > -1) {
+                     expirationIndex.add(index, objectName, expiryTime, now, key);
+                  }
+               }
+               if (segmentIndex != null) {
+                  segmentIndex.add(index, objectName, key);
+               }
+               if (packedEntries != null && packedEntries.accepts(encoded.bytes.length)) {
+                  packed.put(key, bytes);
+                  layouts.put(key, packedEntries.layoutAsync(objectName));
+               } else {
+                  standalone.put(key, bytes);
+               }
+            } catch (IOException | RuntimeException ex) {
+               failures.put(key, ex);
+            }
+         }
+         failures.putAll(index.submit(connections, completions, committed).join());
+         CompoundWrites writes = new CompoundWrites();
+         for (Map.Entry<Object, String> e : deleted.entrySet()) {
+            writes.remove(e.getValue(), e.getKey());
+            if (packedEntries != null) {
+               packedEntries.remove(writes, e.getValue(), e.getKey());
+            }
+         }
+         for (Map.Entry<Object, byte[]> e : standalone.entrySet()) {
+            String objectName = written.get(e.getKey());
+            if (!failures.containsKey(e.getKey())) {
+               writes.writeFull(objectName, e.getValue(), e.getKey());
+               if (packedEntries != null) {
+                  //replaces the packed entry stored before, if any
+                  packedEntries.markStandalone(writes, objectName, e.getKey());
+               }
+            }
+         }
+         for (Map.Entry<Object, byte[]> e : packed.entrySet()) {
+            String objectName = written.get(e.getKey());
+            PackedEntries.Layout layout;
+            try {
+               layout = layouts.get(e.getKey()).join();
+            } catch (CompletionException ex) {
+               failures.put(e.getKey(), ex.getCause() != null ? ex.getCause() : ex);
+               continue;
+            }
+            if (!failures.containsKey(e.getKey())) {
+               packedEntries.write(writes, objectName, e.getValue(), e.getKey());
+               if (layout == PackedEntries.Layout.STANDALONE) {
+                  //the value was stored in a standalone object before
+                  writes.remove(objectName, e.getKey());
+               }
+            }
+         }
+         failures.putAll(writes.submit(connections, completions, committed).join());
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException(String.format("Interrupted during batch %s", operationName), e);
+      } finally {
+         for (String objectName : written.values()) {
+            written(objectName, false);
+         }
+         for (String objectName : deleted.values()) {
+            deleted(objectName);
+         }
+      }
+      if (!failures.isEmpty()) {
+         throw new CephBatchException(String.format("Batch %s of %d entries to the pool '%s' has failed",
+               operationName, failures.size(), getPoolName()), failures);
+      }
+   }
+
+   @Override
+   public void rollback(Transaction transaction) {
+      preparedTransactions.remove(transaction);
+   }
+
+   /**
+    * Applies the intent logs of the failed commits again, see
+    * {@link TransactionLog#retry(java.util.function.Consumer)}.
+    */
+   private void retryTransactions() {
+      try {
+         transactionLog.retry(this::applyLog);
+      } catch (RadosException | PersistenceException e) {
+         //TODO log, once messages ids are reserved
+      }
+   }
+
+   /**
+    * Applies the modifications of an intent log left by a commit which was interrupted or has failed. Modifications
+    * of the entries written after the log are skipped, so that a late retry never reverts them.
+    */
+   private void applyLog(byte[] log) {
+      long time = TransactionLog.time(log);
+      Map<Object, PreparedTransaction.Modification<K, V>> modifications = new HashMap<>();
+      for (TransactionLog.Record record : TransactionLog.decode(log)) {
+         byte[] content = record.content();
+         if (record.type() == TransactionLog.WRITE) {
+            StoredEntry stored = StoredEntry.fromHeader(content, content.length, true);
+            Object key = unmarshallKey(content, stored.keyOffset(), stored.keyLength());
+            if (!writtenAfter(objectName(key), time)) {
+               MarshalledEntry<K, V> entry = initializationContext.getMarshalledEntryFactory().newMarshalledEntry(key,
+                     unmarshall(stored), stored.metadata());
+               modifications.put(key, new PreparedTransaction.Modification<>(entry));
+            }
+         } else {
+            Object key = unmarshallKey(content, 0, content.length);
+            if (!writtenAfter(objectName(key), time)) {
+               modifications.put(key, new PreparedTransaction.Modification<>(null));
+            }
+         }
+      }
+      applyTransaction(modifications, "transaction recovery");
+   }
+
+   /**
+    * @return {@code true} if the entry stored in given object was certainly written after given time, as told by its
+    *         creation time or, unless the uses of the entries are written to the objects, by the modification time of
+    *         its standalone object
+    */
+   private boolean writtenAfter(String objectName, long time) throws PersistenceException {
+      StoredEntry stored = fetch(objectName, false, false, false);
+      if (stored == null) {
+         return false;
+      }
+      if (stored.created() > time) {
+         return true;
+      }
+      if (touches != null) {
+         return false;
+      }
+      try (ClusterConnections.Lease lease = connections.lease(objectName)) {
+         //seconds are truncated, so the object is certainly newer only if written in a later second
+         return TimeUnit.SECONDS.toMillis(lease.ctx().stat(objectName).getMtime()) > time;
+      } catch (RadosException e) {
+         if (e.getReturnValue() == CEPH_ENOENT) {
+            //packed entry
+            return false;
+         }
+         throw new PersistenceException(String.format("Unable to read object %s from the pool '%s'", objectName,
+               getPoolName()), e);
+      }
+   }
+
+   /**
+    * Removes all entries which belong to given segments, e.g. once the segments are no longer owned by this node. In
+    * the segmented layout only the objects recorded in the indexes of the segments are deleted, see
+    * {@link SegmentIndex}. Otherwise, or until the index is complete, the pool is listed once and objects of the
+    * segments are deleted in batches, see {@link #deleteBatch(Iterable)}.
+    *
+    * @throws CephBatchException if any of the deletes has failed
+    */
+   public void removeSegments(Set<Integer> segments) {
+      requireSegments();
+      //queued entries of the segments must not be written afterwards
+      flushWriteBehind();
+      try {
+         if (segmentIndex != null && segmentIndex.isComplete()) {
+            removeIndexedSegments(segments);
+            return;
+         }
+         try (EntryNames names = entryNames()) {
+            String[] chunk;
+            while ((chunk = names.next()) != null) {
+               List<String> objectNames = new ArrayList<>();
+               CompoundWrites index = new CompoundWrites();
+               for (String objectName : chunk) {
+                  if (!isEntryObject(objectName)) {
+                     continue;
+                  }
+                  if (inSegments(objectName, segments)) {
+                     objectNames.add(objectName);
+                  } else if (segmentIndex != null) {
+                     //entries written before the index was introduced
+                     segmentIndex.add(index, objectName, objectName);
+                  }
+               }
+               removeObjects(objectNames, names.packed());
+               Map<Object, Throwable> failures = index.submit(connections, completions, false).join();
+               if (!failures.isEmpty()) {
+                  throw new CephBatchException(String.format("Batch segment indexing of %d entries to the pool '%s' "
+                        + "has failed", failures.size(), getPoolName()), failures);
+               }
+            }
+         }
+         if (segmentIndex != null) {
+            for (int segment : segments) {
+               segmentIndex.remove(segment);
+            }
+            segmentIndex.markComplete();
+         }
+      } catch (RadosException e) {
+         throw new PersistenceException(String.format("Unable to remove segments %s", segments), e);
+      } finally {
+         if (nearCache != null) {
+            nearCache.clear();
+         }
+         valueFetches.forgetAll();
+         headerFetches.forgetAll();
+      }
+   }
+
+   /**
+    * Removes the objects recorded in the indexes of given segments and then the indexes. The layout of the objects is
+    * not known, so both the packed entry and the standalone object are removed.
+    */
+   private void removeIndexedSegments(Set<Integer> segments) throws RadosException {
+      for (int segment : segments) {
+         String[] chunk;
+         String startAfter = "";
+         do {
+            chunk = segmentIndex.names(segment, startAfter, POOL_BATCH_SIZE);
+            List<String> objectNames = new ArrayList<>();
+            for (String objectName : chunk) {
+               startAfter = objectName;
+               if (isEntryObject(objectName)) {
+                  objectNames.add(objectName);
+               }
+            }
+            applyBatch(objectNames, objectName -> objectName, objectName -> CompletableFuture.supplyAsync(
+                  () -> removePacked(objectName) != PackedEntries.Layout.NONE | removeStandalone(objectName),
+                  ioExecutor), "segment removal");
+         } while (chunk.length == POOL_BATCH_SIZE);
+         segmentIndex.remove(segment);
+      }
+   }
+
+   private void removeObjects(List<String> objectNames, boolean packed) {
+      applyBatch(objectNames, objectName -> objectName, objectName -> CompletableFuture.supplyAsync(
+            () -> packed ? removePacked(objectName) != PackedEntries.Layout.NONE : removeStandalone(objectName),
+            ioExecutor), "segment removal");
+   }
+
+   /**
+    * Applies given operation to all items, up to {@link CephStoreConfiguration#maxBatchInFlight()} at the same time.
+    * The operations are submitted as asynchronous librados operations where possible, so the number of operations in
+    * flight is not limited by the io threads.
+    *
+    * @throws CephBatchException if any of the operations has failed
+    */
+   private <T> void applyBatch(Iterable<T> items, Function<T, Object> keyFunction,
+         Function<T, CompletionStage<?>> operation, String operationName) {
+      final int window = configuration.maxBatchInFlight();
+      final Semaphore inFlight = new Semaphore(window);
+      final Map<Object, Throwable> failures = new ConcurrentHashMap<>();
+      try {
+         for (T item : items) {
+            inFlight.acquire();
+            final Object key = keyFunction.apply(item);
+            CompletionStage<?> stage;
+            try {
+               stage = operation.apply(item);
+            } catch (RuntimeException e) {
+               inFlight.release();
+               failures.put(key, e);
+               continue;
+            }
+            stage.whenComplete((result, t) -> {
+               if (t != null) {
+                  failures.put(key, t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+               }
+               inFlight.release();
+            });
+         }
+         //wait for all pending operations
+         inFlight.acquire(window);
+         inFlight.release(window);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException(String.format("Interrupted during batch %s", operationName), e);
+      }
+      if (!failures.isEmpty()) {
+         throw new CephBatchException(String.format("Batch %s of %d entries to the pool '%s' has failed",
+               operationName, failures.size(), getPoolName()), failures);
+      }
+   }
+
+   public void purge(Executor executor, PurgeListener<? super K> listener) {
+      ExecutorAllCompletionService eacs = new ExecutorAllCompletionService(executor);
+      long now = initializationContext.getTimeService().wallClockTime();
+      try {
+         long cursor = expirationIndex != null ? expirationIndex.readCursor() : -1;
+         if (cursor >= 0) {
+            //visit only buckets which have already passed
+            long lastBucket = Math.min(expirationIndex.bucketOf(now), cursor + MAX_PURGE_BUCKETS);
+            for (long bucket = cursor; bucket < lastBucket; bucket++) {
+               submitIndexedPurgeTask(eacs, bucket, listener);
+            }
+            if (packedEntries != null) {
+               //packed entries are indexed as well, buckets are visited in turns to remove entries of previous
+               //generations
+               int buckets = Math.min(packedEntries.buckets(), MAX_PACKED_BUCKETS_PER_PURGE);
+               for (int i = 0; i < buckets; i++) {
+                  submitPackedPurgeTask(eacs, packedBucketsPurged, false, listener);
+                  packedBucketsPurged = (packedBucketsPurged + 1) % packedEntries.buckets();
+               }
+            }
+            if (chunkThreshold > 0 && ++purgesSinceChunkScan >= PURGES_PER_CHUNK_SCAN) {
+               purgesSinceChunkScan = 0;
+               submitPoolPurgeTasks(eacs, false, listener);
+            }
+            waitForPurge(eacs);
+            if (lastBucket > cursor) {
+               expirationIndex.writeCursor(lastBucket);
+            }
+         } else {
+            submitPoolPurgeTasks(eacs, true, listener);
+            if (packedEntries != null) {
+               for (int bucket = 0; bucket < packedEntries.buckets(); bucket++) {
+                  submitPackedPurgeTask(eacs, bucket, true, listener);
+               }
+            }
+            waitForPurge(eacs);
+            if (expirationIndex != null) {
+               //all entries were either purged or indexed by the scan, next purges can use the index
+               expirationIndex.writeCursor(expirationIndex.bucketOf(now));
+            }
+         }
+      } catch (RadosException e) {
+         throw new PersistenceException(String.format("Error when purging pool '%s'", getPoolName()), e);
+      }
+   }
+
+   public void process(KeyFilter<? super K> keyFilter, CacheLoaderTask<K, V> task, Executor executor, boolean loadValue,
+         boolean loadMetadata) {
+      //iteration reads only the stored entries
+      flushWriteBehind();
+      ExecutorAllCompletionService eacs = new ExecutorAllCompletionService(executor);
+      final TaskContext taskContext = new TaskContextImpl();
+      //limits the number of batches waiting for the executor, listing is paused once the limit is reached
+      final Semaphore inFlight = new Semaphore(MAX_ITERATION_TASKS_IN_FLIGHT);
+
+      try (EntryNames names = entryNames()) {
+         Map<String, K> keyEntries = new HashMap<String, K>(ITERATION_TASK_SIZE);
+         boolean packed = false;
+         String[] chunk;
+         while (!taskContext.isStopped() && (chunk = names.next()) != null) {
+            if (names.packed() != packed && !keyEntries.isEmpty()) {
+               //batch holds either standalone objects or packed entries
+               inFlight.acquire();
+               submitProcessTask(eacs, task, taskContext, keyEntries, packed, keyFilter, loadValue, loadMetadata,
+                     inFlight);
+               keyEntries = new HashMap<String, K>(ITERATION_TASK_SIZE);
+            }
+            packed = names.packed();
+            for (String k : chunk) {
+               if (taskContext.isStopped()) {
+                  break;
+               }
+               if (!isEntryObject(k)) {
+                  continue;
+               }
+               if (hashObjectNames) {
+                  //key is stored in the object, it's filtered once the object is fetched
+                  keyEntries.put(k, null);
+               } else {
+                  K key = (K) keyOf(k);
+                  if (keyFilter == null || keyFilter.accept(key)) {
+                     keyEntries.put(k, key);
+                  }
+               }
+               if (keyEntries.size() == ITERATION_TASK_SIZE) {
+                  final Map<String, K> batch = keyEntries;
+                  keyEntries = new HashMap<String, K>(ITERATION_TASK_SIZE);
+                  inFlight.acquire();
+                  submitProcessTask(eacs, task, taskContext, batch, packed, keyFilter, loadValue, loadMetadata,
+                        inFlight);
+               }
+            }
+         }
+
+         if (!keyEntries.isEmpty() && !taskContext.isStopped()) {
+            inFlight.acquire();
+            submitProcessTask(eacs, task, taskContext, keyEntries, packed, keyFilter, loadValue, loadMetadata,
+                  inFlight);
+         }
+
+         eacs.waitUntilAllCompleted();
+         if (eacs.isExceptionThrown()) {
+            throw new PersistenceException("Processing of the entries has failed", eacs.getFirstException());
+         }
+
+      } catch (RadosException e) {
+         throw new PersistenceException(String.format("Error when processing pool '%s'", getPoolName()), e);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException(String.format("Interrupted when processing pool '%s'", getPoolName()), e);
+      }
+   }
+
+   /**
+    * Publishes keys of all entries accepted by given filter. The pool is listed lazily, as the subscriber requests
+    * more keys, and the listing is stopped once the subscription is cancelled. Expired entries are skipped, so the
+    * header of every listed object is read.
+    */
+   public Publisher<K> publishKeys(KeyFilter<? super K> keyFilter) {
+      return publishKeys(null, keyFilter);
+   }
+
+   /**
+    * Variant of {@link #publishKeys(KeyFilter)} which publishes only keys of given segments.
+    */
+   public Publisher<K> publishKeys(Set<Integer> segments, KeyFilter<? super K> keyFilter) {
+      if (segments != null) {
+         requireSegments();
+      }
+      flushWriteBehind();
+      return new ObjectPublisher<>(this::entryNames, ioExecutor, (objectName, packed) -> {
+         if (!isEntryObject(objectName) || !inSegments(objectName, segments)) {
+            return null;
+         }
+         K key = null;
+         if (!hashObjectNames) {
+            key = (K) keyOf(objectName);
+            if (keyFilter != null && !keyFilter.accept(key)) {
+               return null;
+            }
+         }
+         //only the header is read, to skip expired entries
+         MarshalledEntry<K, V> entry = loadEntry(objectName, packed, key, keyFilter, false, false,
+               initializationContext.getTimeService().wallClockTime());
+         return entry != null ? entry.getKey() : null;
+      });
+   }
+
+   /**
+    * Publishes all entries accepted by given filter. Entries are fetched from the cluster one by one, only when the
+    * subscriber has requested them, so at most one listed chunk of object names is held in memory per subscription.
+    * Expired entries are skipped.
+    */
+   public Publisher<MarshalledEntry<K, V>> publishEntries(KeyFilter<? super K> keyFilter, boolean fetchValue,
+         boolean fetchMetadata) {
+      return publishEntries(null, keyFilter, fetchValue, fetchMetadata);
+   }
+
+   /**
+    * Variant of {@link #publishEntries(KeyFilter, boolean, boolean)} which publishes only entries of given segments.
+    * With the segmented layout objects of other segments are skipped without being read.
+    */
+   public Publisher<MarshalledEntry<K, V>> publishEntries(Set<Integer> segments, KeyFilter<? super K> keyFilter,
+         boolean fetchValue, boolean fetchMetadata) {
+      if (segments != null) {
+         requireSegments();
+      }
+      flushWriteBehind();
+      return new ObjectPublisher<>(this::entryNames, ioExecutor, (objectName, packed) -> {
+         if (!isEntryObject(objectName) || !inSegments(objectName, segments)) {
+            return null;
+         }
+         K key = null;
+         if (!hashObjectNames) {
+            key = (K) keyOf(objectName);
+            if (keyFilter != null && !keyFilter.accept(key)) {
+               return null;
+            }
+         }
+         return loadEntry(objectName, packed, key, keyFilter, fetchValue, fetchMetadata,
+               initializationContext.getTimeService().wallClockTime());
+      });
+   }
+
+   private String objectName(Object key) {
+      return objectName(key, hashObjectNames ? marshallKey(key) : null);
+   }
+
+   /**
+    * @param keyBytes marshalled key if object names are hashed, {@code null} otherwise
+    */
+   private String objectName(Object key, byte[] keyBytes) {
+      String mapping = keyBytes != null ? HashedObjectNames.of(keyBytes)
+            : objectNames.escape(key2StringMapper.getStringMapping(key));
+      if (segmentPrefixes) {
+         mapping = Segments.prefix(distributionManager.getReadConsistentHash().getSegment(key)) + mapping;
+      }
+      return generations != null ? generations.prefix() + mapping : mapping;
+   }
+
+   /**
+    * @return key of the entry stored in given object or {@code null} if the object name is hashed and the object
+    *         doesn't exist anymore
+    */
+   private Object keyOf(String objectName) {
+      if (hashObjectNames) {
+         StoredEntry stored = fetch(objectName, true, false, false);
+         return stored == null ? null : keyOf(objectName, stored);
+      }
+      return key2StringMapper.getKeyMapping(mappingOf(objectName));
+   }
+
+   /**
+    * @return key stored in the fetched object or, if there is no such key, key mapped from the object name
+    */
+   private Object keyOf(String objectName, StoredEntry stored) {
+      if (!stored.hasKey()) {
+         return key2StringMapper.getKeyMapping(mappingOf(objectName));
+      }
+      return unmarshallKey(stored.buffer(), stored.keyOffset(), stored.keyLength());
+   }
+
+   /**
+    * @return name mapped from the key of the entry stored in given object
+    */
+   private String mappingOf(String objectName) {
+      String mapping = generations != null ? Generations.stripPrefix(objectName) : objectName;
+      return objectNames.unescape(segmentPrefixes ? Segments.stripPrefix(mapping) : mapping);
+   }
+
+   private Object unmarshallKey(byte[] bytes, int offset, int length) throws PersistenceException {
+      try {
+         return initializationContext.getMarshaller().objectFromByteBuffer(bytes, offset, length);
+      } catch (IOException | ClassNotFoundException e) {
+         throw new PersistenceException(e);
+      }
+   }
+
+   /**
+    * @return {@code true} if the entry stored in given object belongs to one of given segments, or if no segments are
+    *         given
+    */
+   private boolean inSegments(String objectName, Set<Integer> segments) {
+      if (segments == null) {
+         return true;
+      }
+      if (segmentPrefixes) {
+         return segments.contains(Segments.segmentOf(Generations.stripPrefix(objectName)));
+      }
+      Object key = keyOf(objectName);
+      return key != null && segments.contains(distributionManager.getReadConsistentHash().getSegment(key));
+   }
+
+   private void requireSegments() {
+      if (distributionManager == null) {
+         throw new PersistenceException(
+               String.format("Cache '%s' is not distributed, its entries don't belong to any segment",
+                     initializationContext.getCache().getName()));
+      }
+   }
+
+   private EntryNames entryNames() {
+      return new EntryNames(connections, POOL_BATCH_SIZE, packedEntries, LIST_SLICES, listExecutor);
+   }
+
+   /**
+    * @return {@code true} if the object holds a cache entry which is visible to this store
+    */
+   private boolean isEntryObject(String objectName) {
+      return generations != null ? generations.isCurrent(objectName) : !objectNames.isInternalObject(objectName);
+   }
+
+   private byte[] marshallKey(Object key) throws PersistenceException {
+      try {
+         return initializationContext.getMarshaller().objectToByteBuffer(key);
+      } catch (IOException e) {
+         throw new PersistenceException(e);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException(e);
+      }
+   }
+
+   private byte[] marshall(MarshalledEntry<? extends K, ? extends V> entry) throws IOException, InterruptedException {
+      return initializationContext.getMarshaller().objectToByteBuffer(entry.getValue());
+   }
+
+   private V unmarshall(StoredEntry stored) throws PersistenceException {
+      try {
+         ValueCodec codec = ValueCodec.forId(stored.codec());
+         if (stored.chunks() != null) {
+            List<InputStream> chunks = new ArrayList<>(stored.chunks().length);
+            for (byte[] chunk : stored.chunks()) {
+               chunks.add(new ByteArrayInputStream(chunk));
+            }
+            //chunks are never copied into one buffer
+            InputStream in = new SequenceInputStream(Collections.enumeration(chunks));
+            return (V) initializationContext.getMarshaller()
+                  .objectFromInputStream(codec != null ? codec.decompress(in) : in);
+         }
+         if (codec != null) {
+            return (V) initializationContext.getMarshaller()
+                  .objectFromByteBuffer(codec.decompress(stored.buffer(), stored.valueOffset(), stored.valueLength()));
+         }
+         return (V) initializationContext.getMarshaller().objectFromByteBuffer(stored.buffer(), stored.valueOffset(),
+               stored.valueLength());
+      } catch (IOException | ClassNotFoundException e) {
+         throw new PersistenceException(e);
+      }
+   }
+
+   /**
+    * Fetches the entry stored under given object name, either packed or in a standalone object. With packing enabled,
+    * the bucket is read concurrently with the standalone object, so that an entry of either layout is fetched in one
+    * round trip. The packed entry wins if both exist.
+    *
+    * @param hedge whether the read of the standalone object may be hedged, see {@link HedgedReads}
+    * @return fetched entry or {@code null} if there is no such entry
+    */
+   private StoredEntry fetch(String objectName, boolean fetchKey, boolean fetchValue, boolean hedge)
+         throws PersistenceException {
+      if (packedEntries == null) {
+         return fetchObject(objectName, fetchKey, fetchValue, hedge);
+      }
+      CompletableFuture<byte[]> packed = packedEntries.readAsync(objectName);
+      StoredEntry stored = fetchObject(objectName, fetchKey, fetchValue, hedge);
+      StoredEntry packedEntry = packedEntry(objectName, joinPacked(objectName, packed));
+      return packedEntry != null ? packedEntry : stored;
+   }
+
+   /**
+    * Asynchronous variant of {@link #fetch(String, boolean, boolean, boolean)}, the read may be hedged.
+    */
+   private CompletableFuture<StoredEntry> fetchAsync(String objectName, boolean fetchKey, boolean fetchValue) {
+      if (packedEntries == null) {
+         return fetchObjectAsync(objectName, fetchKey, fetchValue);
+      }
+      return packedEntries.readAsync(objectName).thenCombine(fetchObjectAsync(objectName, fetchKey, fetchValue),
+            (packed, stored) -> packed != null ? packedEntry(objectName, packed) : stored);
+   }
+
+   /**
+    * @return bytes of the packed entry read by {@link PackedEntries#readAsync(String)}
+    */
+   private byte[] joinPacked(String objectName, CompletableFuture<byte[]> packed) throws PersistenceException {
+      try {
+         return packed.join();
+      } catch (CompletionException e) {
+         throw asPersistenceException(e,
+               String.format("Unable to read packed entry %s from the pool '%s'", objectName, getPoolName()));
+      }
+   }
+
+   /**
+    * Fetches packed entry, always with its value and key, as they are read anyway.
+    *
+    * @return fetched entry or {@code null} if there is no such packed entry
+    */
+   private StoredEntry fetchPacked(String objectName) throws PersistenceException {
+      try {
+         return packedEntry(objectName, packedEntries.read(objectName));
+      } catch (RadosException e) {
+         throw new PersistenceException(
+               String.format("Unable to read packed entry %s from the pool '%s'", objectName, getPoolName()), e);
+      }
+   }
+
+   /**
+    * @param bytes encoded packed entry or {@code null} if there is none
+    * @return packed entry or {@code null} if there is none
+    */
+   private StoredEntry packedEntry(String objectName, byte[] bytes) throws PersistenceException {
+      if (bytes == null) {
+         return null;
+      }
+      if (!EntryFormat.hasHeader(bytes, bytes.length)) {
+         throw new PersistenceException(
+               String.format("Packed entry %s in the pool '%s' is corrupted", objectName, getPoolName()));
+      }
+      return StoredEntry.fromHeader(bytes, bytes.length, true);
+   }
+
+   /**
+    * Fetches the entry with its value through the near cache. The cached entry is returned without contacting the
+    * cluster within {@link CephStoreConfiguration#nearCacheTrustWindow()} since it was last validated, afterwards only
+    * the header and the write stamp of the object are read and the entry is fetched again only if the stamp changed.
+    * Packed entries are validated only by the trust window.
+    *
+    * @return fetched entry or {@code null} if there is no such entry
+    */
+   private StoredEntry fetchCached(String objectName, long now) throws PersistenceException {
+      NearCache.Entry cached = nearCache.get(objectName);
+      if (cached != null) {
+         if (now - cached.validatedAt() < nearCacheTrustWindow) {
+            return cached.stored();
+         }
+         if (!cached.packed()) {
+            byte[] bytes = readRange(objectName, EntryFormat.HEADER_SIZE + EntryFormat.STAMP_SIZE);
+            if (isValid(cached, bytes, now)) {
+               return cached.stored();
+            }
+         }
+      }
+      return fetchUncached(objectName, now);
+   }
+
+   /**
+    * Asynchronous variant of {@link #fetchCached(String, long)}.
+    */
+   private CompletableFuture<StoredEntry> fetchCachedAsync(String objectName, long now) {
+      NearCache.Entry cached = nearCache.get(objectName);
+      if (cached != null) {
+         if (now - cached.validatedAt() < nearCacheTrustWindow) {
+            return CompletableFuture.completedFuture(cached.stored());
+         }
+         if (!cached.packed()) {
+            return readRangeAsync(objectName, EntryFormat.HEADER_SIZE + EntryFormat.STAMP_SIZE)
+                  .thenCompose(bytes -> isValid(cached, bytes, now) ? CompletableFuture.completedFuture(cached.stored())
+                        : fetchUncachedAsync(objectName, now));
+         }
+      }
+      return fetchUncachedAsync(objectName, now);
+   }
+
+   /**
+    * Marks the cached entry as validated if the object still has the same write stamp.
+    *
+    * @param bytes beginning of the object or {@code null} if there is no such object
+    * @return whether the cached entry is still valid
+    */
+   private static boolean isValid(NearCache.Entry cached, byte[] bytes, long now) {
+      if (bytes != null && EntryFormat.hasHeader(bytes, bytes.length)
+            && EntryFormat.stamp(bytes, bytes.length) == cached.stamp()) {
+         cached.validated(now);
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * Fetches the entry with its value and stores it in the near cache, unless it was modified in the meantime.
+    */
+   private StoredEntry fetchUncached(String objectName, long now) throws PersistenceException {
+      long modification = nearCache.modification(objectName);
+      CompletableFuture<byte[]> packed = packedEntries != null ? packedEntries.readAsync(objectName) : null;
+      StoredEntry stored = fetchObject(objectName, false, true, true);
+      StoredEntry packedEntry = packed != null ? packedEntry(objectName, joinPacked(objectName, packed)) : null;
+      return cache(objectName, packedEntry != null ? packedEntry : stored, packedEntry != null, modification, now);
+   }
+
+   private CompletableFuture<StoredEntry> fetchUncachedAsync(String objectName, long now) {
+      long modification = nearCache.modification(objectName);
+      CompletableFuture<StoredEntry> stored = fetchObjectAsync(objectName, false, true);
+      if (packedEntries == null) {
+         return stored.thenApply(s -> cache(objectName, s, false, modification, now));
+      }
+      return packedEntries.readAsync(objectName).thenCombine(stored,
+            (packed, s) -> packed != null ? cache(objectName, packedEntry(objectName, packed), true, modification, now)
+                  : cache(objectName, s, false, modification, now));
+   }
+
+   /**
+    * Stores the fetched entry in the near cache, unless it was modified since given modification.
+    *
+    * @return the fetched entry
+    */
+   private StoredEntry cache(String objectName, StoredEntry stored, boolean packed, long modification, long now) {
+      nearCache.putIfUnmodified(objectName, stored, packed, modification, now);
+      return stored;
+   }
+
+   /**
+    * @return entry of the near cache validated within {@link CephStoreConfiguration#nearCacheTrustWindow()} or
+    *         {@code null} if there is no such entry
+    */
+   private StoredEntry trustedEntry(String objectName, long now) {
+      NearCache.Entry cached = nearCache.get(objectName);
+      return cached != null && now - cached.validatedAt() < nearCacheTrustWindow ? cached.stored() : null;
+   }
+
+   /**
+    * Makes loads which begin after a modification of given object fetch it again instead of joining a fetch which is
+    * in flight, see {@link SingleFlight}.
+    */
+   private void forgetFetches(String objectName) {
+      valueFetches.forget(objectName);
+      headerFetches.forget(objectName);
+   }
+
+   /**
+    * Fetches the entry stored in given standalone object. Both metadata and value are obtained by one read operation,
+    * together with the size of the object. If the object is larger than {@link #INITIAL_READ_SIZE}, only its remaining
+    * bytes are read by a second operation. Legacy objects store their metadata in extended attributes. If the value is
+    * not needed, only the header is read, followed by the key if it's stored in the object and requested. Chunks of a
+    * chunked value are read in parallel once the manifest is read. If a chunk is missing because the value was
+    * replaced in the meantime, the object is read again.
+    * 
+    * @param hedge whether the read of the object may be hedged, see {@link HedgedReads}, chunks are never hedged
+    * @return fetched entry or {@code null} if there is no such object
+    */
+   private StoredEntry fetchObject(String objectName, boolean fetchKey, boolean fetchValue, boolean hedge)
+         throws PersistenceException {
+      for (int attempt = 0; attempt < MAX_CHUNK_READ_ATTEMPTS; attempt++) {
+         StoredEntry stored = hedge && hedgedReads != null
+               ? hedgedReads.read(flags -> readEntry(objectName, fetchKey, fetchValue, flags))
+               : readEntry(objectName, fetchKey, fetchValue, Rados.OPERATION_NOFLAG);
+         if (stored == null || !fetchValue || stored.manifest() == null) {
+            return stored;
+         }
+         stored = withChunks(objectName, stored);
+         if (stored != null) {
+            return stored;
+         }
+      }
+      throw new PersistenceException(String.format("Chunks of entry %s in the pool '%s' are missing or keep changing",
+            objectName, getPoolName()));
+   }
+
+   /**
+    * Asynchronous variant of {@link #fetchObject(String, boolean, boolean, boolean)}, the read may be hedged. The
+    * object is read through {@link Completions}. Hedged reads are timed by the waiting thread and chunks are read
+    * synchronously, such reads are performed by an io thread.
+    */
+   private CompletableFuture<StoredEntry> fetchObjectAsync(String objectName, boolean fetchKey, boolean fetchValue) {
+      if (hedgedReads != null) {
+         return CompletableFuture.supplyAsync(() -> fetchObject(objectName, fetchKey, fetchValue, true), ioExecutor);
+      }
+      return readEntryAsync(objectName, fetchKey, fetchValue, 0).thenCompose(stored -> {
+         if (stored == null || !fetchValue || stored.manifest() == null) {
+            return CompletableFuture.completedFuture(stored);
+         }
+         return CompletableFuture.supplyAsync(() -> {
+            StoredEntry withChunks = withChunks(objectName, stored);
+            //the value was replaced in the meantime
+            return withChunks != null ? withChunks : fetchObject(objectName, fetchKey, fetchValue, false);
+         }, ioExecutor);
+      });
+   }
+
+   /**
+    * @return given entry with the chunks of its value or {@code null} if some chunks are missing
+    */
+   private StoredEntry withChunks(String objectName, StoredEntry stored) throws PersistenceException {
+      try {
+         byte[][] chunks = chunkedValues.read(objectName, stored.manifest());
+         return chunks != null ? stored.withChunks(chunks) : null;
+      } catch (RadosException e) {
+         throw new PersistenceException(
+               String.format("Unable to read chunks of entry %s from the pool '%s'", objectName, getPoolName()), e);
+      }
+   }
+
+   /**
+    * @param flags flags of the read operations, e.g. to direct them to a replica other than the primary
+    */
+   private StoredEntry readEntry(String objectName, boolean fetchKey, boolean fetchValue, int flags)
+         throws PersistenceException {
+      byte[] bytes = null;
+      try (ClusterConnections.Lease lease = connections.lease(objectName)) {
+         for (int attempt = 0; bytes == null; attempt++) {
+            if (attempt == MAX_CHUNK_READ_ATTEMPTS) {
+               throw changingWhileRead(objectName);
+            }
+            long length;
+            try (ObjectRead read = initialRead(fetchKey, fetchValue)) {
+               read.operate(lease.ctx(), objectName, flags);
+               bytes = read.bytes();
+               length = entryLength(read, bytes, fetchKey, fetchValue);
+            }
+            if (length > bytes.length) {
+               try (ObjectRead read = remainingRead(bytes, length)) {
+                  read.operate(lease.ctx(), objectName, flags);
+                  bytes = remaining(bytes, read, length);
+               } catch (RadosException e) {
+                  if (!ObjectRead.isMismatch(e.getReturnValue())) {
+                     throw e;
+                  }
+                  bytes = null;
+               }
+            }
+         }
+      } catch (RadosException e) {
+         if (e.getReturnValue() == CEPH_ENOENT) {
+            return null;
+         }
+         throw new PersistenceException(
+               String.format("Unable to read entry %s from the pool '%s'", objectName, getPoolName()), e);
+      }
+
+      if (EntryFormat.hasHeader(bytes, bytes.length)) {
+         return StoredEntry.fromHeader(bytes, bytes.length, fetchKey || fetchValue);
+      }
+      return fetchLegacyMetadata(objectName, fetchValue ? bytes : null);
+   }
+
+   /**
+    * Asynchronous variant of {@link #readEntry(String, boolean, boolean, int)}. The object is read through
+    * {@link Completions}, legacy metadata is read synchronously by an io thread.
+    *
+    * @param attempt number of reads which found the object rewritten while being read
+    */
+   private CompletableFuture<StoredEntry> readEntryAsync(String objectName, boolean fetchKey, boolean fetchValue,
+         int attempt) {
+      if (attempt == MAX_CHUNK_READ_ATTEMPTS) {
+         return failedFuture(changingWhileRead(objectName));
+      }
+      ClusterConnections.Lease lease = connections.lease(objectName);
+      ObjectRead read = initialRead(fetchKey, fetchValue);
+      CompletableFuture<byte[]> bytes = read.operateAsync(completions, lease.ctx(), objectName,
+            Rados.OPERATION_NOFLAG).thenCompose(v -> {
+               byte[] head = read.bytes();
+               long length = entryLength(read, head, fetchKey, fetchValue);
+               if (length <= head.length) {
+                  return CompletableFuture.completedFuture(head);
+               }
+               ObjectRead rest = remainingRead(head, length);
+               return rest.operateAsync(completions, lease.ctx(), objectName, Rados.OPERATION_NOFLAG)
+                     .handle((v2, e) -> {
+                        try {
+                           if (e == null) {
+                              return remaining(head, rest, length);
+                           }
+                           if (ObjectRead.isMismatch(returnValue(e))) {
+                              return null;
+                           }
+                           throw e instanceof CompletionException ? (CompletionException) e
+                                 : new CompletionException(e);
+                        } finally {
+                           rest.close();
+                        }
+                     });
+            });
+      return bytes.whenComplete((b, e) -> {
+         read.close();
+         lease.close();
+      }).handle((b, e) -> {
+         if (e != null) {
+            if (returnValue(e) == CEPH_ENOENT) {
+               return CompletableFuture.<StoredEntry> completedFuture(null);
+            }
+            return CephStore.<StoredEntry> failedFuture(asPersistenceException(e,
+                  String.format("Unable to read entry %s from the pool '%s'", objectName, getPoolName())));
+         }
+         if (b == null) {
+            return readEntryAsync(objectName, fetchKey, fetchValue, attempt + 1);
+         }
+         if (EntryFormat.hasHeader(b, b.length)) {
+            return CompletableFuture.completedFuture(StoredEntry.fromHeader(b, b.length, fetchKey || fetchValue));
+         }
+         return CompletableFuture.supplyAsync(() -> fetchLegacyMetadata(objectName, fetchValue ? b : null),
+               ioExecutor);
+      }).thenCompose(Function.identity());
+   }
+
+   /**
+    * @return read of the beginning of an entry object, which holds the whole entry unless its key or value is large
+    */
+   private static ObjectRead initialRead(boolean fetchKey, boolean fetchValue) {
+      //header is followed by the stamp and the manifest if the value is chunked
+      int readSize = fetchValue ? INITIAL_READ_SIZE : fetchKey ? INITIAL_KEY_READ_SIZE : EntryFormat.PREFIX_SIZE;
+      ObjectRead read = new ObjectRead(0, readSize);
+      return fetchValue ? read.stat() : read;
+   }
+
+   /**
+    * @param head bytes read by the {@link #initialRead(boolean, boolean)}
+    * @return number of bytes of the object to read
+    */
+   private static long entryLength(ObjectRead read, byte[] head, boolean fetchKey, boolean fetchValue) {
+      if (fetchValue) {
+         return read.size();
+      }
+      if (fetchKey && EntryFormat.hasHeader(head, head.length) && EntryFormat.hasKey(head)) {
+         //key may be longer than the initial read
+         return EntryFormat.valueOffset(head);
+      }
+      return head.length;
+   }
+
+   /**
+    * Reads the rest of the object following its first bytes, which were read before. The read fails with
+    * {@link ObjectRead#isMismatch(int)} if the object was rewritten in the meantime, i.e. its header or stamp differ
+    * from the ones already read. The time of the last use is not compared, as it's updated in place without
+    * rewriting the object.
+    */
+   private static ObjectRead remainingRead(byte[] head, long length) {
+      ObjectRead read = new ObjectRead(head.length, (int) (length - head.length));
+      read.compare(head, 0, Math.min(head.length, EntryFormat.OFFSET_LAST_USED));
+      if (EntryFormat.hasHeader(head, head.length) && EntryFormat.stamp(head, head.length) != EntryFormat.NO_STAMP) {
+         read.compare(head, EntryFormat.HEADER_SIZE, EntryFormat.STAMP_SIZE);
+      }
+      return read;
+   }
+
+   /**
+    * @return first {@code length} bytes of the object or {@code null} if it was truncated since its first bytes were
+    *         read
+    */
+   private static byte[] remaining(byte[] head, ObjectRead read, long length) {
+      byte[] remaining = read.bytes();
+      if (head.length + remaining.length != length) {
+         return null;
+      }
+      byte[] bytes = Arrays.copyOf(head, (int) length);
+      System.arraycopy(remaining, 0, bytes, head.length, remaining.length);
+      return bytes;
+   }
+
+   private PersistenceException changingWhileRead(String objectName) {
+      return new PersistenceException(
+            String.format("Entry %s in the pool '%s' keeps changing while read", objectName, getPoolName()));
+   }
+
+   /**
+    * @param failure failure of a stage, possibly wrapped in a {@link CompletionException}
+    * @return return value of the librados operation which has failed or 0 if it's not a failure of an operation
+    */
+   private static int returnValue(Throwable failure) {
+      Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+      return cause instanceof RadosException ? ((RadosException) cause).getReturnValue() : 0;
+   }
+
+   /**
+    * Asynchronous variant of {@link #readRange(String, long)}.
+    */
+   private CompletableFuture<byte[]> readRangeAsync(String objectName, int length) {
+      ClusterConnections.Lease lease = connections.lease(objectName);
+      ObjectRead read = new ObjectRead(0, length);
+      return read.operateAsync(completions, lease.ctx(), objectName, Rados.OPERATION_NOFLAG).handle((v, e) -> {
+         try {
+            if (e == null) {
+               return read.bytes();
+            }
+            if (returnValue(e) == CEPH_ENOENT) {
+               return null;
+            }
+            throw asPersistenceException(e,
+                  String.format("Unable to read entry %s from the pool '%s'", objectName, getPoolName()));
+         } finally {
+            read.close();
+            lease.close();
+         }
+      });
+   }
+
+   /**
+    * @return first {@code length} bytes of the object or {@code null} if there is no such object
+    */
+   private byte[] readRange(String key, long length) throws PersistenceException {
+      return readRange(key, length, Rados.OPERATION_NOFLAG);
+   }
+
+   private byte[] readRange(String key, long length, int flags) throws PersistenceException {
+      try (ClusterConnections.Lease lease = connections.lease(key);
+            final ReadOp rop = lease.ctx().readOpCreate()) {
+         ReadResult readRes = rop.queueRead(0, length);
+         rop.operate(key, flags);
+         byte[] bytes = new byte[(int) readRes.getBytesRead()];
+         readRes.getBuffer().get(bytes);
+         return bytes;
+      } catch (RadosException e) {
+         if (e.getReturnValue() == CEPH_ENOENT) {
+            return null;
+         }
+         throw new PersistenceException(String.format("Unable to read entry %s from the pool '%s'", key, getPoolName()),
+               e);
+      }
+   }
+
+   /**
+    * Creates entry from an object written in the legacy layout, where the metadata is stored in extended attributes.
+    */
+   private StoredEntry fetchLegacyMetadata(String key, byte[] value) throws PersistenceException {
+      long lifespan = parseAttribute(loadAttribute(key, ATTR_LIFESPAN));
+      long maxIdle = parseAttribute(loadAttribute(key, ATTR_MAX_IDLE));
+      long created = parseAttribute(loadAttribute(key, ATTR_CREATED));
+      long lastUsed = parseAttribute(loadAttribute(key, ATTR_LAST_USED));
+      return new StoredEntry(true, lifespan, maxIdle, created, lastUsed, value, 0, -1, 0,
+            value == null ? 0 : value.length, ValueCodec.NONE, null, null);
+   }
+
+   private static long parseAttribute(String attr) {
+      return attr != null ? Long.parseLong(attr) : -1;
+   }
+
+   private String loadAttribute(String key, String attrName) throws PersistenceException {
+      String attr = null;
+      try (ClusterConnections.Lease lease = connections.lease(key)) {
+         attr = lease.ctx().getExtentedAttribute(key, attrName);
+      } catch (RadosException e) {
+         if (e.getReturnValue() != CEPH_ENODATA) {
+            throw new PersistenceException(
+                  String.format("Error when reading attributes for key %s from pool '%s'", key, getPoolName()), e);
+         }
+      }
+      return attr;
+   }
+
+   private void waitForPurge(ExecutorAllCompletionService eacs) {
+      eacs.waitUntilAllCompleted();
+      if (eacs.isExceptionThrown()) {
+         throw new PersistenceException(String.format("Purging of the pool '%s' has failed", getPoolName()),
+               eacs.getFirstException());
+      }
+   }
+
+   /**
+    * Removes the entry stored in given object if it's expired.
+    * 
+    * @param packed whether the entry is packed or stored in a standalone object
+    * @return the entry if it exists and is not expired, {@code null} otherwise
+    */
+   private StoredEntry purgeIfExpired(String objectName, boolean packed, long now, PurgeListener<? super K> listener)
+         throws RadosException {
+      StoredEntry stored = packed ? fetchPacked(objectName) : fetchObject(objectName, hashObjectNames, false, false);
+      return stored != null ? purgeIfExpired(objectName, stored, packed, now, listener) : null;
+   }
+
+   /**
+    * Removes given entry if it's expired. A packed entry is removed only if it wasn't written since it was fetched.
+    *
+    * @return the entry if it's not expired, {@code null} otherwise
+    */
+   private StoredEntry purgeIfExpired(String objectName, StoredEntry stored, boolean packed, long now,
+         PurgeListener<? super K> listener) throws RadosException {
+      if (isExpired(objectName, stored, now)) {
+         if (packed) {
+            if (!packedEntries.remove(objectName, stored.buffer())) {
+               return null;
+            }
+         } else {
+            try {
+               try (ClusterConnections.Lease lease = connections.lease(objectName)) {
+                  lease.ctx().remove(objectName);
+               }
+            } catch (RadosException e) {
+               if (e.getReturnValue() == CEPH_ENOENT) {
+                  return null;
+               }
+               throw e;
+            }
+            if (stored.manifest() != null) {
+               chunkedValues.remove(objectName, stored.manifest());
+            }
+            if (packedEntries != null) {
+               packedEntries.removeMark(objectName);
+            }
+         }
+         if (nearCache != null) {
+            nearCache.invalidate(objectName);
+         }
+         forgetFetches(objectName);
+         if (touches != null) {
+            touches.forget(objectName);
+         }
+         listener.entryPurged((K) keyOf(objectName, stored));
+         return null;
+      }
+      return stored;
+   }
+
+   /**
+    * Submits one purge task per slice of the pool, see {@link ObjectList}. Every task lists its slice by its own cursor
+    * and checks the listed objects.
+    *
+    * @param entries whether to purge expired entries, otherwise only orphan chunks are collected
+    */
+   private void submitPoolPurgeTasks(CompletionService<Void> cs, boolean entries, PurgeListener<? super K> listener) {
+      for (int slice = 0; slice < LIST_SLICES; slice++) {
+         final int listedSlice = slice;
+         cs.submit(() -> {
+            try (ClusterConnections.Lease lease = connections.lease();
+                  ObjectList list = new ObjectList(lease.ctx(), listedSlice, LIST_SLICES, POOL_BATCH_SIZE)) {
+               String[] objects;
+               while ((objects = list.next()) != null) {
+                  purgeObjects(objects, entries, listener);
+               }
+            }
+            return null;
+         });
+      }
+   }
+
+   /**
+    * Removes given chunk if it's not referred by the manifest of its entry, e.g. because the write of the entry has
+    * failed after the chunks were written or another write of the entry has won.
+    */
+   private void removeIfOrphan(String chunkName, long now) throws RadosException {
+      ChunkManifest manifest = readManifest(ChunkManifest.ownerOf(chunkName));
+      if (manifest != null && manifest.refersTo(chunkName)) {
+         return;
+      }
+      try (ClusterConnections.Lease lease = connections.lease(chunkName)) {
+         IoCTX ctx = lease.ctx();
+         if (now - TimeUnit.SECONDS.toMillis(ctx.stat(chunkName).getMtime()) >= MIN_ORPHAN_CHUNK_AGE) {
+            ctx.remove(chunkName);
+         }
+      } catch (RadosException e) {
+         if (e.getReturnValue() != CEPH_ENOENT) {
+            throw e;
+         }
+      }
+   }
+
+   /**
+    * @param entries whether to purge expired entries, otherwise only orphan chunks are collected
+    */
+   private void purgeObjects(String[] keys, boolean entries, PurgeListener<? super K> listener)
+         throws RadosException {
+      long now = initializationContext.getTimeService().wallClockTime();
+      for (String key : keys) {
+         if (chunkThreshold > 0 && ChunkManifest.ownerOf(key) != null) {
+            removeIfOrphan(key, now);
+            continue;
+         }
+         if (!entries || !isEntryObject(key)) {
+            continue;
+         }
+         StoredEntry stored = purgeIfExpired(key, false, now, listener);
+         if (stored != null && expirationIndex != null && expiryTime(key, stored) > -1) {
+            //index entries which were stored before the index was enabled
+            expirationIndex.add(key, expiryTime(key, stored), now);
+         }
+      }
+   }
+
+   private void submitIndexedPurgeTask(CompletionService<Void> cs, final long bucket,
+         final PurgeListener<? super K> listener) {
+      cs.submit(new Callable<Void>() {
+         @Override
+         public Void call() throws RadosException {
+            long now = initializationContext.getTimeService().wallClockTime();
+            for (String key : expirationIndex.readBucket(bucket)) {
+               if (isEntryObject(key)) {
+                  StoredEntry packed = packedEntries != null ? purgeIfExpired(key, true, now, listener) : null;
+                  StoredEntry stored = purgeIfExpired(key, false, now, listener);
+                  stored = stored != null ? stored : packed;
+                  if (stored != null && expiryTime(key, stored) > -1) {
+                     //entry was used since it was indexed, it's removed from this bucket together with the others
+                     expirationIndex.add(key, expiryTime(key, stored), now);
+                  }
+               }
+            }
+            expirationIndex.removeBucket(bucket);
+            return null;
+         }
+      });
+   }
+
+   /**
+    * Purges expired entries packed into given bucket, which are read by the listing, and removes the entries and marks
+    * of previous generations.
+    *
+    * @param index whether the remaining expiring entries should be added to the expiration index
+    */
+   private void submitPackedPurgeTask(CompletionService<Void> cs, final int bucket, final boolean index,
+         final PurgeListener<? super K> listener) {
+      cs.submit(new Callable<Void>() {
+         @Override
+         public Void call() throws RadosException {
+            long now = initializationContext.getTimeService().wallClockTime();
+            Map<String, byte[]> records;
+            String startAfter = "";
+            do {
+               records = packedEntries.list(bucket, startAfter, POOL_BATCH_SIZE);
+               for (Entry<String, byte[]> record : records.entrySet()) {
+                  String key = record.getKey();
+                  byte[] bytes = record.getValue();
+                  startAfter = key;
+                  if (!isEntryObject(key)) {
+                     //entry or mark of the previous generation
+                     packedEntries.remove(key, bytes);
+                     continue;
+                  }
+                  if (PackedEntries.isMark(bytes)) {
+                     continue;
+                  }
+                  if (!EntryFormat.hasHeader(bytes, bytes.length)) {
+                     throw new PersistenceException(
+                           String.format("Packed entry %s in the pool '%s' is corrupted", key, getPoolName()));
+                  }
+                  StoredEntry stored = purgeIfExpired(key, StoredEntry.fromHeader(bytes, bytes.length, true), true,
+                        now, listener);
+                  if (stored != null && index && expirationIndex != null && expiryTime(key, stored) > -1) {
+                     expirationIndex.add(key, expiryTime(key, stored), now);
+                  }
+               }
+            } while (records.size() == POOL_BATCH_SIZE);
+            return null;
+         }
+      });
+   }
+
+   private void submitProcessTask(CompletionService<Void> cs, final CacheLoaderTask<K, V> task,
+         final TaskContext taskContext, final Map<String, K> batch, final boolean packed,
+         final KeyFilter<? super K> keyFilter, final boolean loadEntry, final boolean loadMetadata,
+         final Semaphore inFlight) {
+      cs.submit(new Callable<Void>() {
+         @Override
+         public Void call() throws Exception {
+            try {
+               processBatch(task, taskContext, batch, packed, keyFilter, loadEntry, loadMetadata);
+            } finally {
+               inFlight.release();
+            }
+            return null;
+         }
+      });
+   }
+
+   private void processBatch(CacheLoaderTask<K, V> task, TaskContext taskContext, Map<String, K> batch,
+         boolean packed, KeyFilter<? super K> keyFilter, boolean loadEntry, boolean loadMetadata)
+         throws InterruptedException {
+      long now = initializationContext.getTimeService().wallClockTime();
+      for (Entry<String, K> keyEntry : batch.entrySet()) {
+         if (taskContext.isStopped()) {
+            break;
+         }
+
+         MarshalledEntry<K, V> me = loadEntry(keyEntry.getKey(), packed, keyEntry.getValue(), keyFilter, loadEntry,
+               loadMetadata, now);
+         if (me != null) {
+            task.processEntry(me, taskContext);
+         }
+      }
+   }
+
+   /**
+    * Loads the entry stored in given object during iteration.
+    *
+    * @param packed whether the entry is packed or stored in a standalone object
+    * @param key key of the entry or {@code null} if it's stored in the object and has to be checked by the filter
+    * @return the entry or {@code null} if the object doesn't exist, the entry is expired or its key was rejected
+    */
+   private MarshalledEntry<K, V> loadEntry(String objectName, boolean packed, K key, KeyFilter<? super K> keyFilter,
+         boolean fetchValue, boolean fetchMetadata, long now) {
+      StoredEntry stored = packed ? fetchPacked(objectName) : fetchObject(objectName, key == null, fetchValue, false);
+      if (stored == null || isExpired(objectName, stored, now)) {
+         return null;
+      }
+      if (key == null) {
+         key = (K) keyOf(objectName, stored);
+         if (keyFilter != null && !keyFilter.accept(key)) {
+            return null;
+         }
+      }
+      return initializationContext.getMarshalledEntryFactory().newMarshalledEntry(key,
+            fetchValue ? unmarshall(stored) : null, fetchMetadata ? stored.metadata() : null);
+   }
+
+   /**
+    * Marshalled value of an entry, possibly compressed.
+    */
+   private static final class EncodedValue {
+
+      private final byte[] bytes;
+      private final int codec;
+
+      EncodedValue(byte[] bytes, int codec) {
+         this.bytes = bytes;
+         this.codec = codec;
+      }
+   }
+
 }
@@ -0,0 +1,88 @@
+package org.infinispan.persistence.ceph;
+
+/**
+ * Describes a value split into chunks, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#chunkThreshold()}. Chunk {@code i} of
+ * the value stored under object name {@code name} is kept in object {@code __ispn_chunk_<writeId>_<i>_<name>}. Every
+ * write of the value uses new write id, so that the chunks of the previous value are not overwritten while they may
+ * still be read.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * offset  size  field
+ *      0     8  value length
+ *      8     4  chunk size
+ *     12     8  write id
+ * </pre>
+ *
+ * @since 9.0
+ */
+final class ChunkManifest {
+
+   static final int SIZE = 8 + 4 + 8;
+   private static final String CHUNK_PREFIX = ExpirationIndex.INTERNAL_OBJECT_PREFIX + "chunk_";
+   private static final char SEPARATOR = '_';
+
+   private final long valueLength;
+   private final int chunkSize;
+   private final long writeId;
+
+   ChunkManifest(long valueLength, int chunkSize, long writeId) {
+      this.valueLength = valueLength;
+      this.chunkSize = chunkSize;
+      this.writeId = writeId;
+   }
+
+   static ChunkManifest readFrom(byte[] bytes, int offset) {
+      return new ChunkManifest(EntryFormat.readLong(bytes, offset), EntryFormat.readInt(bytes, offset + 8),
+            EntryFormat.readLong(bytes, offset + 12));
+   }
+
+   void writeTo(byte[] bytes, int offset) {
+      EntryFormat.writeLong(bytes, offset, valueLength);
+      EntryFormat.writeInt(bytes, offset + 8, chunkSize);
+      EntryFormat.writeLong(bytes, offset + 12, writeId);
+   }
+
+   long valueLength() {
+      return valueLength;
+   }
+
+   int chunkCount() {
+      return (int) ((valueLength + chunkSize - 1) / chunkSize);
+   }
+
+   long chunkOffset(int chunk) {
+      return (long) chunk * chunkSize;
+   }
+
+   int chunkLength(int chunk) {
+      return (int) Math.min(chunkSize, valueLength - chunkOffset(chunk));
+   }
+
+   String chunkName(String objectName, int chunk) {
+      return CHUNK_PREFIX + Long.toHexString(writeId) + SEPARATOR + chunk + SEPARATOR + objectName;
+   }
+
+   /**
+    * @param chunkName name of a chunk of the object this manifest was read from
+    * @return {@code true} if the chunk was written together with this manifest
+    */
+   boolean refersTo(String chunkName) {
+      return chunkName.startsWith(CHUNK_PREFIX + Long.toHexString(writeId) + SEPARATOR);
+   }
+
+   /**
+    * @return name of the object whose value is stored in given chunk object or {@code null} if the object is not a
+    *         chunk
+    */
+   static String ownerOf(String objectName) {
+      if (!objectName.startsWith(CHUNK_PREFIX)) {
+         return null;
+      }
+      int writeIdEnd = objectName.indexOf(SEPARATOR, CHUNK_PREFIX.length());
+      int chunkEnd = writeIdEnd < 0 ? -1 : objectName.indexOf(SEPARATOR, writeIdEnd + 1);
+      return chunkEnd < 0 ? null : objectName.substring(chunkEnd + 1);
+   }
+
+}
@@ -0,0 +1,144 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.ceph.rados.exceptions.RadosException;
+
+/**
+ * Writes, reads and removes chunks of large values, see {@link ChunkManifest}. All chunks of a value are transferred
+ * in parallel, so that the transfer is spread among the OSDs holding the chunks. The executor is used only for the
+ * chunk operations, which never wait for each other, so it cannot be exhausted by the callers waiting for the chunks.
+ *
+ * @since 9.0
+ */
+final class ChunkedValues {
+
+   private static final int CEPH_ENOENT = -2;
+
+   private final ConnectionPool connections;
+   private final Executor executor;
+   private final int chunkSize;
+
+   ChunkedValues(ConnectionPool connections, Executor executor, int chunkSize) {
+      this.connections = connections;
+      this.executor = executor;
+      this.chunkSize = chunkSize;
+   }
+
+   /**
+    * Stores given value in chunks. If any of the chunks cannot be written, the already written ones are removed.
+    *
+    * @return manifest of the written chunks
+    */
+   ChunkManifest write(final String objectName, final byte[] value) throws RadosException {
+      final ChunkManifest manifest = new ChunkManifest(value.length, chunkSize, ThreadLocalRandom.current().nextLong());
+      try {
+         inParallel(manifest.chunkCount(), chunk -> {
+            int offset = (int) manifest.chunkOffset(chunk);
+            byte[] bytes = Arrays.copyOfRange(value, offset, offset + manifest.chunkLength(chunk));
+            String chunkName = manifest.chunkName(objectName, chunk);
+            try (ClusterConnections.Lease lease = connections.lease(chunkName)) {
+               lease.ctx().writeFull(chunkName, bytes, bytes.length);
+            }
+            return null;
+         });
+      } catch (RadosException | RuntimeException e) {
+         try {
+            remove(objectName, manifest);
+         } catch (RadosException | RuntimeException suppressed) {
+            e.addSuppressed(suppressed);
+         }
+         throw e;
+      }
+      return manifest;
+   }
+
+   /**
+    * @return chunks of the value or {@code null} if any of them is missing, e.g. because the value was concurrently
+    *         replaced
+    */
+   byte[][] read(final String objectName, final ChunkManifest manifest) throws RadosException {
+      List<byte[]> chunks = inParallel(manifest.chunkCount(), chunk -> {
+         byte[] bytes = new byte[manifest.chunkLength(chunk)];
+         String chunkName = manifest.chunkName(objectName, chunk);
+         try (ClusterConnections.Lease lease = connections.lease(chunkName)) {
+            int read = lease.ctx().read(chunkName, bytes.length, 0, bytes);
+            return read == bytes.length ? bytes : null;
+         } catch (RadosException e) {
+            if (e.getReturnValue() == CEPH_ENOENT) {
+               return null;
+            }
+            throw e;
+         }
+      });
+      return chunks.contains(null) ? null : chunks.toArray(new byte[chunks.size()][]);
+   }
+
+   void remove(final String objectName, final ChunkManifest manifest) throws RadosException {
+      inParallel(manifest.chunkCount(), chunk -> {
+         try {
+            String chunkName = manifest.chunkName(objectName, chunk);
+            try (ClusterConnections.Lease lease = connections.lease(chunkName)) {
+               lease.ctx().remove(chunkName);
+            }
+         } catch (RadosException e) {
+            if (e.getReturnValue() != CEPH_ENOENT) {
+               throw e;
+            }
+         }
+         return null;
+      });
+   }
+
+   private interface ChunkOperation<T> {
+      T apply(int chunk) throws RadosException;
+   }
+
+   /**
+    * Applies given operation to all chunks in parallel and waits until all of them complete.
+    *
+    * @return results of the operation in the chunk order
+    * @throws RadosException the first failure, if any of the operations has failed
+    */
+   private <T> List<T> inParallel(int chunkCount, final ChunkOperation<T> operation) throws RadosException {
+      List<CompletableFuture<T>> futures = new ArrayList<>(chunkCount);
+      for (int i = 0; i < chunkCount; i++) {
+         final int chunk = i;
+         futures.add(CompletableFuture.supplyAsync(() -> {
+            try {
+               return operation.apply(chunk);
+            } catch (RadosException e) {
+               throw new CompletionException(e);
+            }
+         }, executor));
+      }
+      List<T> results = new ArrayList<>(chunkCount);
+      Throwable failure = null;
+      for (CompletableFuture<T> future : futures) {
+         try {
+            results.add(future.join());
+         } catch (CompletionException e) {
+            if (failure == null) {
+               failure = e.getCause() != null ? e.getCause() : e;
+            }
+         }
+      }
+      if (failure instanceof RadosException) {
+         throw (RadosException) failure;
+      }
+      if (failure instanceof RuntimeException) {
+         throw (RuntimeException) failure;
+      }
+      if (failure != null) {
+         throw new CompletionException(failure);
+      }
+      return results;
+   }
+
+}
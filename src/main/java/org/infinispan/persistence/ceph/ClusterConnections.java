@@ -0,0 +1,405 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.infinispan.persistence.spi.PersistenceException;
+
+import com.ceph.rados.IoCTX;
+import com.ceph.rados.Rados;
+import com.ceph.rados.exceptions.RadosException;
+
+/**
+ * Fixed number of independent connections to one Ceph cluster, shared by all stores of a cache manager which use the
+ * same cluster and credentials, see {@link ConnectionRegistry}. Every connection is a separate librados client with its
+ * own messenger and operation queue and holds the I/O contexts of the pools (and namespaces) used by the stores. The
+ * contexts are reference counted, a context is destroyed once the last store using it is stopped.
+ * <p>
+ * Health of every connection is periodically probed. A connection whose probe fails is skipped by the context
+ * selection and replaced by a new one, while the others keep serving the stores. Contexts are handed out as
+ * {@link Lease}s counted by their connection, the replaced connection is closed once all leases of its contexts are
+ * closed, so that the operations and listings which already obtained its context can finish. Operations of every
+ * connection time out after {@link #OP_TIMEOUT_SECONDS}, so that neither a store operation nor a probe, which runs on
+ * the shared scheduler, waits forever for an unresponsive cluster.
+ *
+ * @since 9.0
+ */
+final class ClusterConnections {
+
+   private static final String CEPH_CONF_MONITOR_HOST = "mon host";
+   private static final String CEPH_CONF_KEY = "key";
+   private static final String CEPH_CONF_KEYRING = "keyring";
+   private static final String CEPH_CONF_OSD_OP_TIMEOUT = "rados_osd_op_timeout";
+   private static final String CEPH_CONF_MON_OP_TIMEOUT = "rados_mon_op_timeout";
+   private static final int OP_TIMEOUT_SECONDS = 30;
+   private static final int CEPH_ENOENT = -2;
+
+   private static final String PROBE_OBJECT = ExpirationIndex.INTERNAL_OBJECT_PREFIX + "probe";
+   private static final long HEALTH_CHECK_INTERVAL_MS = 5000;
+
+   private final String monitorHost;
+   private final String userName;
+   private final String key;
+   private final String keyringPath;
+   private final ScheduledExecutorService scheduler;
+   private final AtomicReferenceArray<Connection> connections;
+   private final Set<Connection> retiredConnections = ConcurrentHashMap.newKeySet();
+   //guarded by this
+   private final Map<PoolNamespace, Integer> contextReferences = new HashMap<>();
+   private ScheduledFuture<?> healthCheck;
+
+   ClusterConnections(String monitorHost, String userName, String key, String keyringPath, int size,
+         ScheduledExecutorService scheduler) {
+      this.monitorHost = monitorHost;
+      this.userName = userName;
+      this.key = key;
+      this.keyringPath = keyringPath;
+      this.scheduler = scheduler;
+      this.connections = new AtomicReferenceArray<>(Math.max(1, size));
+   }
+
+   private static final class PoolNamespace {
+      final String pool;
+      final String namespace;
+
+      PoolNamespace(String pool, String namespace) {
+         this.pool = pool;
+         this.namespace = namespace == null ? "" : namespace;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (!(o instanceof PoolNamespace)) {
+            return false;
+         }
+         PoolNamespace other = (PoolNamespace) o;
+         return pool.equals(other.pool) && namespace.equals(other.namespace);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hash(pool, namespace);
+      }
+   }
+
+   /**
+    * Context of a pool on one connection. The connection is not closed until the lease is closed, which has to be done
+    * exactly once.
+    */
+   static final class Lease implements AutoCloseable {
+      private final Connection connection;
+      private final IoCTX ctx;
+
+      private Lease(Connection connection, IoCTX ctx) {
+         this.connection = connection;
+         this.ctx = ctx;
+      }
+
+      IoCTX ctx() {
+         return ctx;
+      }
+
+      @Override
+      public void close() {
+         connection.release();
+      }
+   }
+
+   private final class Connection {
+      final Rados cluster;
+      final Map<PoolNamespace, IoCTX> contexts = new ConcurrentHashMap<>();
+      /**
+       * Number of open leases, -1 once the connection is closed.
+       */
+      final AtomicInteger leases = new AtomicInteger();
+      volatile boolean healthy = true;
+      volatile boolean retired;
+
+      Connection(Rados cluster) {
+         this.cluster = cluster;
+      }
+
+      /**
+       * @return {@code false} if the connection is already closed
+       */
+      boolean tryLease() {
+         int current;
+         do {
+            current = leases.get();
+            if (current < 0) {
+               return false;
+            }
+         } while (!leases.compareAndSet(current, current + 1));
+         return true;
+      }
+
+      void release() {
+         if (leases.decrementAndGet() == 0 && retired) {
+            closeIfUnused();
+         }
+      }
+
+      /**
+       * Closes the connection once the last lease is closed.
+       */
+      void retire() {
+         retiredConnections.add(this);
+         retired = true;
+         closeIfUnused();
+      }
+
+      private void closeIfUnused() {
+         if (leases.compareAndSet(0, -1)) {
+            retiredConnections.remove(this);
+            close();
+         }
+      }
+
+      /**
+       * Closes the connection regardless of the open leases, once the connections are no longer used.
+       */
+      void closeNow() {
+         if (leases.getAndSet(-1) >= 0) {
+            close();
+         }
+      }
+
+      IoCTX ctx(PoolNamespace poolNamespace) {
+         return contexts.computeIfAbsent(poolNamespace, pn -> {
+            try {
+               IoCTX ctx = cluster.ioCtxCreate(pn.pool);
+               if (!pn.namespace.isEmpty()) {
+                  LibRados.INSTANCE.rados_ioctx_set_namespace(ctx.getPointer(), pn.namespace);
+               }
+               return ctx;
+            } catch (RadosException e) {
+               throw new PersistenceException("Unable to get Ceph context", e);
+            }
+         });
+      }
+
+      void destroy(PoolNamespace poolNamespace) {
+         IoCTX ctx = contexts.remove(poolNamespace);
+         if (ctx != null) {
+            cluster.ioCtxDestroy(ctx);
+         }
+      }
+
+      private void close() {
+         for (IoCTX ctx : contexts.values()) {
+            cluster.ioCtxDestroy(ctx);
+         }
+         contexts.clear();
+         cluster.shutDown();
+      }
+   }
+
+   /**
+    * Opens all connections and schedules the health checks.
+    */
+   synchronized void open() throws PersistenceException {
+      try {
+         for (int i = 0; i < connections.length(); i++) {
+            connections.set(i, connect());
+         }
+      } catch (PersistenceException e) {
+         close();
+         throw e;
+      }
+      healthCheck = scheduler.scheduleWithFixedDelay(this::checkHealth, HEALTH_CHECK_INTERVAL_MS,
+            HEALTH_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+   }
+
+   synchronized void close() {
+      if (healthCheck != null) {
+         healthCheck.cancel(false);
+      }
+      for (int i = 0; i < connections.length(); i++) {
+         Connection connection = connections.getAndSet(i, null);
+         if (connection != null) {
+            connection.closeNow();
+         }
+      }
+      for (Connection connection : retiredConnections) {
+         connection.closeNow();
+      }
+      retiredConnections.clear();
+   }
+
+   int size() {
+      return connections.length();
+   }
+
+   /**
+    * Registers a user of given pool and namespace, creating the pool if it doesn't exist yet.
+    */
+   synchronized void acquire(String pool, String namespace) throws PersistenceException {
+      PoolNamespace poolNamespace = new PoolNamespace(pool, namespace);
+      Integer references = contextReferences.get(poolNamespace);
+      if (references == null) {
+         ensurePool(pool);
+         references = 0;
+      }
+      contextReferences.put(poolNamespace, references + 1);
+   }
+
+   /**
+    * Unregisters a user of given pool and namespace, destroying its contexts if it was the last one.
+    */
+   synchronized void release(String pool, String namespace) {
+      PoolNamespace poolNamespace = new PoolNamespace(pool, namespace);
+      Integer references = contextReferences.get(poolNamespace);
+      if (references == null) {
+         return;
+      }
+      if (references > 1) {
+         contextReferences.put(poolNamespace, references - 1);
+         return;
+      }
+      contextReferences.remove(poolNamespace);
+      for (int i = 0; i < connections.length(); i++) {
+         Connection connection = connections.get(i);
+         if (connection != null) {
+            connection.destroy(poolNamespace);
+         }
+      }
+   }
+
+   private void ensurePool(String pool) throws PersistenceException {
+      Rados cluster = connection(0).cluster;
+      //get of create Ceph pool
+      try {
+         cluster.poolLookup(pool);
+      } catch (RadosException e) {
+         if (e.getReturnValue() == CEPH_ENOENT) {
+            //try create pool
+            try {
+               cluster.poolCreate(pool);
+            } catch (RadosException ex) {
+               throw new PersistenceException(String.format("Unable to create pool %s", pool), e);
+            }
+         } else {
+            throw new PersistenceException(String.format("Cannot connect to pool %s", pool), e);
+         }
+      }
+   }
+
+   /**
+    * @return lease of the context of given pool and namespace on the first healthy connection starting from the
+    *         preferred one, or on the preferred one if there is no healthy connection
+    */
+   Lease lease(String pool, String namespace, int preferred) throws PersistenceException {
+      PoolNamespace poolNamespace = new PoolNamespace(pool, namespace);
+      while (true) {
+         Connection connection = select(preferred);
+         if (connection.tryLease()) {
+            try {
+               return new Lease(connection, connection.ctx(poolNamespace));
+            } catch (RuntimeException e) {
+               connection.release();
+               throw e;
+            }
+         }
+         //retired and closed in the meantime, its slot already holds the replacement
+      }
+   }
+
+   private Connection select(int preferred) throws PersistenceException {
+      for (int i = 0; i < connections.length(); i++) {
+         Connection connection = connections.get((preferred + i) % connections.length());
+         if (connection != null && connection.healthy) {
+            return connection;
+         }
+      }
+      return connection(preferred);
+   }
+
+   private Connection connection(int index) throws PersistenceException {
+      Connection connection = connections.get(index);
+      if (connection == null) {
+         throw new PersistenceException(String.format("Connections to Ceph cluster %s are closed", monitorHost));
+      }
+      return connection;
+   }
+
+   private void checkHealth() {
+      for (int i = 0; i < connections.length(); i++) {
+         Connection connection = connections.get(i);
+         if (connection == null) {
+            //closed
+            return;
+         }
+         if (connection.healthy) {
+            connection.healthy = probe(connection);
+         }
+         if (!connection.healthy) {
+            reconnect(i, connection);
+         }
+      }
+   }
+
+   /**
+    * Stats a non-existent object through one of the contexts of the connection, or asks the monitors for the cluster
+    * statistics if the connection has no context yet.
+    */
+   private static boolean probe(Connection connection) {
+      try {
+         IoCTX ctx = connection.contexts.values().stream().findFirst().orElse(null);
+         if (ctx != null) {
+            ctx.stat(PROBE_OBJECT);
+         } else {
+            connection.cluster.clusterStat();
+         }
+         return true;
+      } catch (RadosException e) {
+         return e.getReturnValue() == CEPH_ENOENT;
+      } catch (RuntimeException e) {
+         return false;
+      }
+   }
+
+   private void reconnect(int index, Connection failed) {
+      Connection replacement;
+      try {
+         replacement = connect();
+      } catch (PersistenceException e) {
+         //next health check will try again
+         return;
+      }
+      if (!connections.compareAndSet(index, failed, replacement)) {
+         //closed in the meantime
+         replacement.closeNow();
+         return;
+      }
+      failed.retire();
+   }
+
+   private Connection connect() throws PersistenceException {
+      Rados cluster = new Rados(userName);
+      try {
+         cluster.confSet(CEPH_CONF_MONITOR_HOST, monitorHost);
+         if (key != null && !key.isEmpty()) {
+            cluster.confSet(CEPH_CONF_KEY, key);
+         } else {
+            cluster.confSet(CEPH_CONF_KEYRING, keyringPath);
+         }
+         //librados waits without a limit by default
+         cluster.confSet(CEPH_CONF_OSD_OP_TIMEOUT, Integer.toString(OP_TIMEOUT_SECONDS));
+         cluster.confSet(CEPH_CONF_MON_OP_TIMEOUT, Integer.toString(OP_TIMEOUT_SECONDS));
+         cluster.connect();
+         return new Connection(cluster);
+      } catch (RadosException e) {
+         cluster.shutDown();
+         throw new PersistenceException("Unable to connect to Ceph cluster", e);
+      }
+   }
+
+}
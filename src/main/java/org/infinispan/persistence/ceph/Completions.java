@@ -0,0 +1,146 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ceph.rados.exceptions.RadosException;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Completes futures of asynchronous librados operations from the callbacks of their completions, so that no thread
+ * waits for an operation in flight. The callback is called by a librados thread which must not be blocked, it only
+ * hands the completion over to the given executor. The executor releases the completion, interprets the return value
+ * of the operation and completes its future, so the stages depending on the future run there too unless they are
+ * asynchronous.
+ * <p>
+ * The callback receives an identifier of the operation rather than a pointer to a Java object. Operations in flight are
+ * kept by their identifiers together with everything their native buffers are reachable from, so the buffers are not
+ * freed before librados is done with them.
+ *
+ * @since 9.0
+ */
+final class Completions {
+
+   private final Executor executor;
+   private final ConcurrentMap<Long, InFlight<?>> inFlight = new ConcurrentHashMap<>();
+   private final AtomicLong ids = new AtomicLong();
+   //JNA frees the native stub of a callback once the callback object is garbage collected
+   private final LibRados.Callback callback = (completion, arg) -> completed(Pointer.nativeValue(arg));
+
+   interface Submit {
+      /**
+       * Submits the operation with given completion.
+       *
+       * @return return value of the submitting librados function
+       */
+      int submit(Pointer completion);
+   }
+
+   interface Result<T> {
+      /**
+       * @param returnValue return value of the completed operation
+       * @return result of the operation
+       * @throws RadosException if the operation has failed
+       */
+      T apply(int returnValue) throws RadosException;
+   }
+
+   /**
+    * @param executor executor completing the futures, e.g. a small pool of threads
+    */
+   Completions(Executor executor) {
+      this.executor = executor;
+   }
+
+   /**
+    * Submits an operation completed once acknowledged by the cluster.
+    *
+    * @param resources referenced by the operation until it completes, e.g. its native buffers
+    * @return future completed with the result of the operation or with the {@link RadosException} of its failure
+    */
+   <T> CompletableFuture<T> submit(String objectName, Submit submit, Result<T> result, Object... resources) {
+      return submit(objectName, false, submit, result, resources);
+   }
+
+   /**
+    * @param committed whether the future completes only once the operation is committed rather than acknowledged
+    */
+   <T> CompletableFuture<T> submit(String objectName, boolean committed, Submit submit, Result<T> result,
+         Object... resources) {
+      CompletableFuture<T> future = new CompletableFuture<>();
+      long id = ids.incrementAndGet();
+      PointerByReference completion = new PointerByReference();
+      int created = committed
+            ? LibRados.INSTANCE.rados_aio_create_completion(Pointer.createConstant(id), null, callback, completion)
+            : LibRados.INSTANCE.rados_aio_create_completion(Pointer.createConstant(id), callback, null, completion);
+      if (created < 0) {
+         future.completeExceptionally(
+               new RadosException(String.format("Unable to create completion for %s", objectName), created));
+         return future;
+      }
+      inFlight.put(id, new InFlight<>(completion.getValue(), future, result, resources));
+      int submitted;
+      try {
+         submitted = submit.submit(completion.getValue());
+      } catch (RuntimeException e) {
+         inFlight.remove(id);
+         LibRados.INSTANCE.rados_aio_release(completion.getValue());
+         future.completeExceptionally(e);
+         return future;
+      }
+      if (submitted < 0) {
+         //the callback is never called for an operation which was not submitted
+         inFlight.remove(id);
+         LibRados.INSTANCE.rados_aio_release(completion.getValue());
+         future.completeExceptionally(
+               new RadosException(String.format("Unable to submit operation on %s", objectName), submitted));
+      }
+      return future;
+   }
+
+   private void completed(long id) {
+      InFlight<?> operation = inFlight.remove(id);
+      if (operation == null) {
+         return;
+      }
+      try {
+         executor.execute(operation::complete);
+      } catch (RejectedExecutionException e) {
+         //the store is stopping, the completion must still be released by a thread other than the librados one
+         ForkJoinPool.commonPool().execute(operation::complete);
+      }
+   }
+
+   private static final class InFlight<T> {
+
+      private final Pointer completion;
+      private final CompletableFuture<T> future;
+      private final Result<T> result;
+      @SuppressWarnings("unused")
+      private final Object[] resources;
+
+      InFlight(Pointer completion, CompletableFuture<T> future, Result<T> result, Object[] resources) {
+         this.completion = completion;
+         this.future = future;
+         this.result = result;
+         this.resources = resources;
+      }
+
+      void complete() {
+         int returnValue = LibRados.INSTANCE.rados_aio_get_return_value(completion);
+         LibRados.INSTANCE.rados_aio_release(completion);
+         try {
+            future.complete(result.apply(returnValue));
+         } catch (RadosException | RuntimeException e) {
+            future.completeExceptionally(e);
+         }
+      }
+   }
+
+}
@@ -0,0 +1,171 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ceph.rados.exceptions.RadosException;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * Modifications of several objects, each object modified by a single compound write operation. Modifications of the
+ * same object, e.g. records of several entries packed into one bucket, are collected and applied together. The
+ * operations of all objects are submitted at once through {@link Completions}, so the whole set takes about as long as
+ * the slowest operation rather than the sum of them.
+ * <p>
+ * Every modification is added on behalf of an owner, e.g. the key of the modified entry, and failed operations are
+ * reported by the owners of their modifications.
+ *
+ * @since 9.0
+ */
+final class CompoundWrites {
+
+   private static final int CEPH_ENOENT = -2;
+
+   private final Map<String, ObjectWrite> writes = new LinkedHashMap<>();
+
+   /**
+    * Replaces the content of the object.
+    */
+   void writeFull(String objectName, byte[] bytes, Object owner) {
+      write(objectName, owner).full = bytes;
+   }
+
+   /**
+    * Removes the object, the removal of an object which doesn't exist succeeds.
+    */
+   void remove(String objectName, Object owner) {
+      write(objectName, owner).remove = true;
+   }
+
+   void append(String objectName, byte[] bytes, Object owner) {
+      write(objectName, owner).appends.add(bytes);
+   }
+
+   /**
+    * Sets the omap record of the object.
+    */
+   void setRecord(String objectName, String key, byte[] value, Object owner) {
+      write(objectName, owner).records.put(key, value);
+   }
+
+   /**
+    * Removes the omap record of the object, the removal of a record of an object which doesn't exist succeeds.
+    */
+   void removeRecord(String objectName, String key, Object owner) {
+      write(objectName, owner).removedRecords.add(key);
+   }
+
+   boolean isEmpty() {
+      return writes.isEmpty();
+   }
+
+   /**
+    * Submits the operations of all objects.
+    *
+    * @param committed whether the operations complete once committed rather than acknowledged
+    * @return future completed with the failures by the owners of the modifications, empty if all of them succeeded
+    */
+   CompletableFuture<Map<Object, Throwable>> submit(ConnectionPool connections, Completions completions,
+         boolean committed) {
+      Map<Object, Throwable> failures = new ConcurrentHashMap<>();
+      List<CompletableFuture<Void>> operations = new ArrayList<>(writes.size());
+      for (Map.Entry<String, ObjectWrite> e : writes.entrySet()) {
+         ObjectWrite write = e.getValue();
+         operations.add(submit(connections, completions, committed, e.getKey(), write).handle((v, t) -> {
+            if (t != null) {
+               Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+               for (Object owner : write.owners) {
+                  failures.put(owner, cause);
+               }
+            }
+            return null;
+         }));
+      }
+      return CompletableFuture.allOf(operations.toArray(new CompletableFuture[operations.size()]))
+            .thenApply(v -> failures);
+   }
+
+   private static CompletableFuture<Void> submit(ConnectionPool connections, Completions completions,
+         boolean committed, String objectName, ObjectWrite write) {
+      ClusterConnections.Lease lease;
+      try {
+         lease = connections.lease(objectName);
+      } catch (RuntimeException e) {
+         CompletableFuture<Void> failed = new CompletableFuture<>();
+         failed.completeExceptionally(e);
+         return failed;
+      }
+      //librados copies the buffers while the operation is built
+      Pointer op = write.build();
+      CompletableFuture<Void> future = completions.submit(objectName, committed,
+            completion -> LibRados.INSTANCE.rados_aio_write_op_operate(op, lease.ctx().getPointer(), completion,
+                  objectName, null, 0),
+            result -> {
+               if (result < 0 && !(result == CEPH_ENOENT && write.onlyRemoves())) {
+                  throw new RadosException(String.format("Unable to write %s", objectName), result);
+               }
+               return null;
+            });
+      return future.whenComplete((v, e) -> {
+         LibRados.INSTANCE.rados_release_write_op(op);
+         lease.close();
+      });
+   }
+
+   private ObjectWrite write(String objectName, Object owner) {
+      ObjectWrite write = writes.computeIfAbsent(objectName, name -> new ObjectWrite());
+      write.owners.add(owner);
+      return write;
+   }
+
+   /**
+    * Modifications of one object.
+    */
+   private static final class ObjectWrite {
+
+      final Set<Object> owners = new HashSet<>();
+      byte[] full;
+      boolean remove;
+      final List<byte[]> appends = new ArrayList<>();
+      final Map<String, byte[]> records = new LinkedHashMap<>();
+      final List<String> removedRecords = new ArrayList<>();
+
+      /**
+       * @return {@code true} if the operation only removes the object or its records, so it's done if the object
+       *         doesn't exist
+       */
+      boolean onlyRemoves() {
+         return full == null && appends.isEmpty() && records.isEmpty();
+      }
+
+      Pointer build() {
+         Pointer op = LibRados.INSTANCE.rados_create_write_op();
+         if (remove) {
+            LibRados.INSTANCE.rados_write_op_remove(op);
+         }
+         if (full != null) {
+            LibRados.INSTANCE.rados_write_op_write_full(op, full, new NativeLong(full.length));
+         }
+         for (byte[] bytes : appends) {
+            LibRados.INSTANCE.rados_write_op_append(op, bytes, new NativeLong(bytes.length));
+         }
+         if (!removedRecords.isEmpty()) {
+            LibRados.INSTANCE.rados_write_op_omap_rm_keys(op,
+                  removedRecords.toArray(new String[removedRecords.size()]), new NativeLong(removedRecords.size()));
+         }
+         if (!records.isEmpty()) {
+            PackedEntries.setRecords(op, records);
+         }
+         return op;
+      }
+   }
+
+}
@@ -0,0 +1,90 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.infinispan.persistence.ceph.configuration.CephStoreConfiguration;
+import org.infinispan.persistence.spi.PersistenceException;
+
+/**
+ * I/O contexts of the pool (and namespace) used by one store, obtained from the {@link ClusterConnections} shared
+ * through the {@link ConnectionRegistry}, see {@link CephStoreConfiguration#connections()}. Operations on an object
+ * always use the same connection, chosen by the hash of the object name, so that they are ordered the same way as with
+ * a single connection; operations not bound to an object, e.g. listing, are spread round-robin. Contexts are leased,
+ * the lease has to be closed once the operation, including any listing or asynchronous operation started through the
+ * context, is completed.
+ *
+ * @since 9.0
+ */
+final class ConnectionPool {
+
+   private final ConnectionRegistry registry;
+   private final CephStoreConfiguration configuration;
+   private final String poolName;
+   private final String namespace;
+   private final AtomicInteger next = new AtomicInteger();
+   private volatile ClusterConnections cluster;
+
+   ConnectionPool(ConnectionRegistry registry, CephStoreConfiguration configuration, String poolName) {
+      this.registry = registry;
+      this.configuration = configuration;
+      this.poolName = poolName;
+      this.namespace = configuration.namespace();
+   }
+
+   /**
+    * Obtains the cluster connections and the contexts of the pool, creating the pool if it doesn't exist yet.
+    */
+   void start() throws PersistenceException {
+      ClusterConnections connections = registry.acquire(configuration);
+      try {
+         connections.acquire(poolName, namespace);
+      } catch (PersistenceException e) {
+         registry.release(connections);
+         throw e;
+      }
+      cluster = connections;
+   }
+
+   void stop() {
+      ClusterConnections connections = cluster;
+      if (connections != null) {
+         cluster = null;
+         connections.release(poolName, namespace);
+         registry.release(connections);
+      }
+   }
+
+   /**
+    * @return {@code true} if the pool is shared with other stores through namespaces
+    */
+   boolean isNamespaced() {
+      return namespace != null && !namespace.isEmpty();
+   }
+
+   /**
+    * @return lease of the context to be used for operations on given object
+    */
+   ClusterConnections.Lease lease(String objectName) throws PersistenceException {
+      ClusterConnections connections = cluster();
+      return connections.lease(poolName, namespace,
+            (objectName.hashCode() & Integer.MAX_VALUE) % connections.size());
+   }
+
+   /**
+    * @return lease of the context to be used for operations not bound to a single object
+    */
+   ClusterConnections.Lease lease() throws PersistenceException {
+      ClusterConnections connections = cluster();
+      return connections.lease(poolName, namespace,
+            (next.getAndIncrement() & Integer.MAX_VALUE) % connections.size());
+   }
+
+   private ClusterConnections cluster() throws PersistenceException {
+      ClusterConnections connections = cluster;
+      if (connections == null) {
+         throw new PersistenceException(String.format("Connections to pool %s are closed", poolName));
+      }
+      return connections;
+   }
+
+}
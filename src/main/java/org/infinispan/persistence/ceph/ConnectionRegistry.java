@@ -0,0 +1,101 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.infinispan.factories.GlobalComponentRegistry;
+import org.infinispan.persistence.ceph.configuration.CephStoreConfiguration;
+import org.infinispan.persistence.spi.PersistenceException;
+
+/**
+ * Cluster connections shared by all Ceph stores of a cache manager. Stores configured with the same monitor host,
+ * credentials and number of connections use the same {@link ClusterConnections}, so the number of monitor sessions and
+ * the time needed to start the caches don't grow with the number of caches. Connections are reference counted and
+ * closed once the last store using them is stopped.
+ *
+ * @since 9.0
+ */
+final class ConnectionRegistry {
+
+   private static final AtomicInteger registryCounter = new AtomicInteger();
+
+   //guarded by this
+   private final Map<List<Object>, ClusterConnections> clusters = new HashMap<>();
+   private final Map<ClusterConnections, Integer> references = new HashMap<>();
+   private ScheduledExecutorService scheduler;
+
+   /**
+    * @return registry of the cache manager owning given component registry, or a new private registry if the
+    *         component registry is not available
+    */
+   static ConnectionRegistry of(GlobalComponentRegistry componentRegistry) {
+      if (componentRegistry == null) {
+         return new ConnectionRegistry();
+      }
+      synchronized (componentRegistry) {
+         ConnectionRegistry registry = componentRegistry.getComponent(ConnectionRegistry.class);
+         if (registry == null) {
+            registry = new ConnectionRegistry();
+            componentRegistry.registerComponent(registry, ConnectionRegistry.class);
+         }
+         return registry;
+      }
+   }
+
+   /**
+    * @return connections to the cluster of given configuration, opened if no other store uses them
+    */
+   synchronized ClusterConnections acquire(CephStoreConfiguration configuration) throws PersistenceException {
+      List<Object> key = Arrays.asList(configuration.monitorHost(), configuration.userName(), configuration.key(),
+            configuration.keyringPath(), configuration.connections());
+      ClusterConnections cluster = clusters.get(key);
+      if (cluster == null) {
+         if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+               Thread t = new Thread(r, String.format("CephStore-connections-%d", registryCounter.incrementAndGet()));
+               t.setDaemon(true);
+               return t;
+            });
+         }
+         cluster = new ClusterConnections(configuration.monitorHost(), configuration.userName(), configuration.key(),
+               configuration.keyringPath(), configuration.connections(), scheduler);
+         try {
+            cluster.open();
+         } catch (PersistenceException e) {
+            shutDownSchedulerIfUnused();
+            throw e;
+         }
+         clusters.put(key, cluster);
+      }
+      references.merge(cluster, 1, Integer::sum);
+      return cluster;
+   }
+
+   synchronized void release(ClusterConnections cluster) {
+      Integer count = references.get(cluster);
+      if (count == null) {
+         return;
+      }
+      if (count > 1) {
+         references.put(cluster, count - 1);
+         return;
+      }
+      references.remove(cluster);
+      clusters.values().remove(cluster);
+      cluster.close();
+      shutDownSchedulerIfUnused();
+   }
+
+   private void shutDownSchedulerIfUnused() {
+      if (clusters.isEmpty() && scheduler != null) {
+         scheduler.shutdownNow();
+         scheduler = null;
+      }
+   }
+
+}
@@ -0,0 +1,77 @@
+package org.infinispan.persistence.ceph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link ValueCodec} using the Deflate algorithm of {@link java.util.zip}.
+ *
+ * @since 9.0
+ */
+final class DeflateCodec extends ValueCodec {
+
+   private static final int MIN_BUFFER_SIZE = 64;
+
+   DeflateCodec(int id) {
+      super(id);
+   }
+
+   @Override
+   byte[] compress(byte[] value) {
+      Deflater deflater = new Deflater();
+      try {
+         deflater.setInput(value);
+         deflater.finish();
+         byte[] bytes = new byte[ORIGINAL_LENGTH_SIZE + Math.max(MIN_BUFFER_SIZE, value.length)];
+         EntryFormat.writeInt(bytes, 0, value.length);
+         int length = ORIGINAL_LENGTH_SIZE;
+         while (!deflater.finished()) {
+            if (length == bytes.length) {
+               //incompressible value, it will be stored as is anyway
+               bytes = Arrays.copyOf(bytes, bytes.length + bytes.length / 2);
+            }
+            length += deflater.deflate(bytes, length, bytes.length - length);
+         }
+         return Arrays.copyOf(bytes, length);
+      } finally {
+         deflater.end();
+      }
+   }
+
+   @Override
+   byte[] decompress(byte[] bytes, int offset, int length) throws IOException {
+      byte[] value = new byte[EntryFormat.readInt(bytes, offset)];
+      Inflater inflater = new Inflater();
+      try {
+         inflater.setInput(bytes, offset + ORIGINAL_LENGTH_SIZE, length - ORIGINAL_LENGTH_SIZE);
+         int inflated = 0;
+         while (inflated < value.length && !inflater.finished()) {
+            int n = inflater.inflate(value, inflated, value.length - inflated);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+               break;
+            }
+            inflated += n;
+         }
+         if (inflated != value.length) {
+            throw new IOException("Compressed value is truncated");
+         }
+         return value;
+      } catch (DataFormatException e) {
+         throw new IOException(e);
+      } finally {
+         inflater.end();
+      }
+   }
+
+   @Override
+   InputStream decompress(InputStream in) throws IOException {
+      originalLength(in);
+      return new InflaterInputStream(in);
+   }
+
+}
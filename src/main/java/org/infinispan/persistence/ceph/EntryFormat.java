@@ -0,0 +1,275 @@
+package org.infinispan.persistence.ceph;
+
+import org.infinispan.metadata.InternalMetadata;
+import org.infinispan.persistence.spi.PersistenceException;
+
+/**
+ * Layout of the objects written by {@link CephStore}. Every object starts with a fixed-size header which carries entry
+ * metadata and is followed by the marshalled value, so that the whole entry is stored by a single full-object write.
+ * <p>
+ * Header layout (big endian):
+ * <pre>
+ * offset  size  field
+ *      0     4  magic
+ *      4     1  format version
+ *      5     1  flags
+ *      6     8  lifespan
+ *     14     8  max idle
+ *     22     8  created
+ *     30     8  last used
+ * </pre>
+ * If {@link #FLAG_STAMP} is set, the header is followed by the 8 byte write stamp, a random number which changes with
+ * every write of the object, so that a cached copy of the entry can be validated by reading just the beginning of the
+ * object, see {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#nearCacheSize()}.
+ * If {@link #FLAG_CHUNKED} is set, the value is stored in separate chunk objects and the header (and the stamp) is
+ * followed by the {@link ChunkManifest}, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#chunkThreshold()}.
+ * If {@link #FLAG_KEY} is set, the header (and the stamp and the manifest) is followed by the 4 byte length of the
+ * marshalled key and the key itself, see {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#hashObjectNames()}.
+ * Bits {@link #CODEC_MASK} of the flags hold the id of the {@link ValueCodec} the value is compressed with, 0 for
+ * uncompressed values, see {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#compression()}.
+ * Objects using any of these flags are written in format version 2, other objects are still written in version 1, so
+ * that they remain readable by older versions of the store.
+ * <p>
+ * Header fields are decoded directly from the read buffer into primitives, no intermediate objects are created.
+ * Objects without the header were written by older versions of the store, which kept the metadata in extended
+ * attributes.
+ *
+ * @since 9.0
+ */
+final class EntryFormat {
+
+   static final int MAGIC = 0xCE1F5EA1;
+   static final byte VERSION_1 = 1;
+   static final byte VERSION_2 = 2;
+   static final byte CURRENT_VERSION = VERSION_2;
+   static final int HEADER_SIZE = 4 + 1 + 1 + 4 * 8;
+   static final int KEY_LENGTH_SIZE = 4;
+
+   static final byte FLAG_METADATA = 0x01;
+   static final byte FLAG_KEY = 0x02;
+   static final byte FLAG_CHUNKED = 0x04;
+   static final byte CODEC_MASK = 0x38;
+   static final int CODEC_SHIFT = 3;
+   static final byte FLAG_STAMP = 0x40;
+   static final int STAMP_SIZE = 8;
+   static final long NO_STAMP = 0;
+   /**
+    * Number of bytes which always covers the header, the stamp, the manifest and the key length of an object, i.e.
+    * everything but the key and the value.
+    */
+   static final int PREFIX_SIZE = HEADER_SIZE + STAMP_SIZE + ChunkManifest.SIZE + KEY_LENGTH_SIZE;
+
+   static final int OFFSET_VERSION = 4;
+   static final int OFFSET_FLAGS = 5;
+   static final int OFFSET_LIFESPAN = 6;
+   static final int OFFSET_MAX_IDLE = 14;
+   static final int OFFSET_CREATED = 22;
+   static final int OFFSET_LAST_USED = 30;
+
+   private EntryFormat() {
+   }
+
+   static byte[] encode(byte[] value, InternalMetadata metadata) {
+      return encode(null, value, metadata);
+   }
+
+   /**
+    * @param key marshalled key to be stored in the object or {@code null}
+    */
+   static byte[] encode(byte[] key, byte[] value, InternalMetadata metadata) {
+      return encode(key, value, ValueCodec.NONE, metadata);
+   }
+
+   /**
+    * @param key marshalled key to be stored in the object or {@code null}
+    * @param codec id of the codec the value is compressed with
+    */
+   static byte[] encode(byte[] key, byte[] value, int codec, InternalMetadata metadata) {
+      return encode(key, value, codec, NO_STAMP, metadata, null);
+   }
+
+   /**
+    * @param key marshalled key to be stored in the object or {@code null}
+    * @param codec id of the codec the value is compressed with
+    * @param stamp write stamp or {@link #NO_STAMP}
+    */
+   static byte[] encode(byte[] key, byte[] value, int codec, long stamp, InternalMetadata metadata) {
+      return encode(key, value, codec, stamp, metadata, null);
+   }
+
+   /**
+    * Encodes entry whose value is stored in chunks described by given manifest.
+    *
+    * @param key marshalled key to be stored in the object or {@code null}
+    * @param codec id of the codec the chunked value is compressed with
+    * @param stamp write stamp or {@link #NO_STAMP}
+    */
+   static byte[] encode(byte[] key, int codec, long stamp, InternalMetadata metadata, ChunkManifest manifest) {
+      return encode(key, new byte[0], codec, stamp, metadata, manifest);
+   }
+
+   private static byte[] encode(byte[] key, byte[] value, int codec, long stamp, InternalMetadata metadata,
+         ChunkManifest manifest) {
+      int manifestOffset = stamp == NO_STAMP ? HEADER_SIZE : HEADER_SIZE + STAMP_SIZE;
+      int keyLengthOffset = manifest == null ? manifestOffset : manifestOffset + ChunkManifest.SIZE;
+      int valueOffset = key == null ? keyLengthOffset : keyLengthOffset + KEY_LENGTH_SIZE + key.length;
+      byte[] bytes = new byte[valueOffset + value.length];
+      writeInt(bytes, 0, MAGIC);
+      bytes[OFFSET_VERSION] = key == null && manifest == null && codec == ValueCodec.NONE && stamp == NO_STAMP
+            ? VERSION_1 : VERSION_2;
+      bytes[OFFSET_FLAGS] = (byte) ((metadata == null ? 0 : FLAG_METADATA) | (key == null ? 0 : FLAG_KEY)
+            | (manifest == null ? 0 : FLAG_CHUNKED) | (codec << CODEC_SHIFT & CODEC_MASK)
+            | (stamp == NO_STAMP ? 0 : FLAG_STAMP));
+      writeLong(bytes, OFFSET_LIFESPAN, metadata == null ? -1 : metadata.lifespan());
+      writeLong(bytes, OFFSET_MAX_IDLE, metadata == null ? -1 : metadata.maxIdle());
+      writeLong(bytes, OFFSET_CREATED, metadata == null ? -1 : metadata.created());
+      writeLong(bytes, OFFSET_LAST_USED, metadata == null ? -1 : metadata.lastUsed());
+      if (stamp != NO_STAMP) {
+         writeLong(bytes, HEADER_SIZE, stamp);
+      }
+      if (manifest != null) {
+         manifest.writeTo(bytes, manifestOffset);
+      }
+      if (key != null) {
+         writeInt(bytes, keyLengthOffset, key.length);
+         System.arraycopy(key, 0, bytes, keyLengthOffset + KEY_LENGTH_SIZE, key.length);
+      }
+      System.arraycopy(value, 0, bytes, valueOffset, value.length);
+      return bytes;
+   }
+
+   /**
+    * Checks whether given buffer starts with the header. Buffers without the header come from objects written in the
+    * legacy layout.
+    *
+    * @throws PersistenceException if the header was written in a format version unknown to this store
+    */
+   static boolean hasHeader(byte[] bytes, int length) {
+      if (length < HEADER_SIZE || readInt(bytes, 0) != MAGIC) {
+         return false;
+      }
+      if (bytes[OFFSET_VERSION] < VERSION_1 || bytes[OFFSET_VERSION] > CURRENT_VERSION) {
+         throw new PersistenceException(String.format("Unsupported entry format version %d", bytes[OFFSET_VERSION]));
+      }
+      return true;
+   }
+
+   static boolean hasMetadata(byte[] bytes) {
+      return (bytes[OFFSET_FLAGS] & FLAG_METADATA) != 0;
+   }
+
+   static boolean hasKey(byte[] bytes) {
+      return (bytes[OFFSET_FLAGS] & FLAG_KEY) != 0;
+   }
+
+   /**
+    * @return id of the codec the value is compressed with
+    */
+   static int codec(byte[] bytes) {
+      return (bytes[OFFSET_FLAGS] & CODEC_MASK) >>> CODEC_SHIFT;
+   }
+
+   /**
+    * @param length number of valid bytes in the buffer
+    * @return write stamp of the object or {@link #NO_STAMP} if it has none or it's not in the buffer
+    */
+   static long stamp(byte[] bytes, int length) {
+      return (bytes[OFFSET_FLAGS] & FLAG_STAMP) != 0 && length >= HEADER_SIZE + STAMP_SIZE
+            ? readLong(bytes, HEADER_SIZE) : NO_STAMP;
+   }
+
+   static boolean isChunked(byte[] bytes) {
+      return (bytes[OFFSET_FLAGS] & FLAG_CHUNKED) != 0;
+   }
+
+   /**
+    * @return manifest of the chunks holding the value or {@code null} if the value is stored in the object itself
+    */
+   static ChunkManifest manifest(byte[] bytes) {
+      return isChunked(bytes) ? ChunkManifest.readFrom(bytes, manifestOffset(bytes)) : null;
+   }
+
+   private static int manifestOffset(byte[] bytes) {
+      return (bytes[OFFSET_FLAGS] & FLAG_STAMP) != 0 ? HEADER_SIZE + STAMP_SIZE : HEADER_SIZE;
+   }
+
+   private static int keyLengthOffset(byte[] bytes) {
+      return isChunked(bytes) ? manifestOffset(bytes) + ChunkManifest.SIZE : manifestOffset(bytes);
+   }
+
+   static int keyOffset(byte[] bytes) {
+      return keyLengthOffset(bytes) + KEY_LENGTH_SIZE;
+   }
+
+   /**
+    * @return length of the stored key, -1 if the object doesn't contain the key
+    */
+   static int keyLength(byte[] bytes) {
+      return hasKey(bytes) ? readInt(bytes, keyLengthOffset(bytes)) : -1;
+   }
+
+   /**
+    * @return offset at which the marshalled value starts, i.e. number of bytes needed to read the header, the manifest
+    *         and the key
+    */
+   static int valueOffset(byte[] bytes) {
+      return hasKey(bytes) ? keyOffset(bytes) + keyLength(bytes) : keyLengthOffset(bytes);
+   }
+
+   static long lifespan(byte[] bytes) {
+      return readLong(bytes, OFFSET_LIFESPAN);
+   }
+
+   static long maxIdle(byte[] bytes) {
+      return readLong(bytes, OFFSET_MAX_IDLE);
+   }
+
+   static long created(byte[] bytes) {
+      return readLong(bytes, OFFSET_CREATED);
+   }
+
+   static long lastUsed(byte[] bytes) {
+      return readLong(bytes, OFFSET_LAST_USED);
+   }
+
+   /**
+    * Computes the time when an entry with given metadata expires, following the rules of
+    * {@link InternalMetadata#expiryTime()}.
+    *
+    * @return expiration time or -1 if the entry never expires
+    */
+   static long expiryTime(long lifespan, long maxIdle, long created, long lastUsed) {
+      long lifespanExpiry = lifespan > -1 ? created + lifespan : -1;
+      long maxIdleExpiry = maxIdle > -1 ? lastUsed + maxIdle : -1;
+      if (lifespanExpiry == -1) {
+         return maxIdleExpiry;
+      }
+      if (maxIdleExpiry == -1) {
+         return lifespanExpiry;
+      }
+      return Math.min(lifespanExpiry, maxIdleExpiry);
+   }
+
+   static int readInt(byte[] bytes, int offset) {
+      return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8)
+            | (bytes[offset + 3] & 0xFF);
+   }
+
+   static long readLong(byte[] bytes, int offset) {
+      return ((long) readInt(bytes, offset) << 32) | (readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+   }
+
+   static void writeInt(byte[] bytes, int offset, int value) {
+      bytes[offset] = (byte) (value >>> 24);
+      bytes[offset + 1] = (byte) (value >>> 16);
+      bytes[offset + 2] = (byte) (value >>> 8);
+      bytes[offset + 3] = (byte) value;
+   }
+
+   static void writeLong(byte[] bytes, int offset, long value) {
+      writeInt(bytes, offset, (int) (value >>> 32));
+      writeInt(bytes, offset + 4, (int) value);
+   }
+
+}
@@ -0,0 +1,201 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.infinispan.persistence.spi.PersistenceException;
+
+import com.ceph.rados.exceptions.RadosException;
+
+/**
+ * Names of all objects which may hold stored entries, obtained in chunks. The pool is listed first, followed by the
+ * names of the entries packed into the buckets of {@link PackedEntries}, if packing is enabled. Names are not
+ * filtered, listed chunks contain also the internal objects and entries of other generations.
+ * <p>
+ * The pool is split into slices, each listed by its own cursor, see {@link ObjectList}. Every slice is listed by the
+ * given executor one chunk ahead, chunks are returned in the order the slices deliver them.
+ *
+ * @since 9.0
+ */
+final class EntryNames implements AutoCloseable {
+
+   private static final String[] NO_NAMES = new String[0];
+
+   private final ConnectionPool connections;
+   private final int listBatchSize;
+   private final PackedEntries packedEntries;
+   private final int slices;
+   private final Executor executor;
+   private final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+
+   private ClusterConnections.Lease listLease;
+   private ObjectList[] lists;
+   //slices being listed by the executor
+   private int listing;
+   //slices which are not listed completely
+   private int remaining;
+   private boolean listed;
+   private int bucket;
+   private String startAfter = "";
+
+   /**
+    * @param packedEntries packed entries or {@code null} if packing is disabled
+    * @param slices number of slices of the pool listed at the same time
+    * @param executor executor listing the slices, it must not run out of threads while the caller waits for a chunk
+    */
+   EntryNames(ConnectionPool connections, int listBatchSize, PackedEntries packedEntries, int slices,
+         Executor executor) {
+      this.connections = connections;
+      this.listBatchSize = listBatchSize;
+      this.packedEntries = packedEntries;
+      this.slices = Math.max(1, slices);
+      this.executor = executor;
+   }
+
+   /**
+    * @return next chunk of names or {@code null} if all names were returned already
+    */
+   String[] next() throws RadosException {
+      if (!listed) {
+         if (lists == null) {
+            startListing();
+         }
+         while (remaining > 0) {
+            Chunk chunk = take();
+            if (chunk.failure != null || chunk.names == null) {
+               remaining--;
+               if (chunk.failure instanceof RadosException) {
+                  throw (RadosException) chunk.failure;
+               } else if (chunk.failure != null) {
+                  throw (RuntimeException) chunk.failure;
+               }
+               continue;
+            }
+            listAhead(chunk.slice);
+            return chunk.names;
+         }
+         close();
+         listed = true;
+      }
+      while (packedEntries != null && bucket < packedEntries.buckets()) {
+         Map<String, byte[]> records = packedEntries.list(bucket, startAfter, listBatchSize);
+         List<String> names = new ArrayList<>(records.size());
+         for (Map.Entry<String, byte[]> record : records.entrySet()) {
+            startAfter = record.getKey();
+            if (!PackedEntries.isMark(record.getValue())) {
+               names.add(record.getKey());
+            }
+         }
+         if (records.size() < listBatchSize) {
+            bucket++;
+            startAfter = "";
+         }
+         if (!names.isEmpty()) {
+            return names.toArray(NO_NAMES);
+         }
+      }
+      return null;
+   }
+
+   private void startListing() {
+      listLease = connections.lease();
+      lists = new ObjectList[slices];
+      for (int slice = 0; slice < slices; slice++) {
+         lists[slice] = new ObjectList(listLease.ctx(), slice, slices, listBatchSize);
+      }
+      remaining = slices;
+      for (int slice = 0; slice < slices; slice++) {
+         listAhead(slice);
+      }
+   }
+
+   /**
+    * Lists the next chunk of given slice, the slice is not listed by anyone else until the chunk is taken.
+    */
+   private void listAhead(int slice) {
+      Runnable list = () -> {
+         try {
+            chunks.add(new Chunk(slice, lists[slice].next(), null));
+         } catch (RadosException | RuntimeException e) {
+            chunks.add(new Chunk(slice, null, e));
+         }
+      };
+      listing++;
+      try {
+         executor.execute(list);
+      } catch (RejectedExecutionException e) {
+         //the store is stopping
+         list.run();
+      }
+   }
+
+   private Chunk take() {
+      try {
+         Chunk chunk = chunks.take();
+         listing--;
+         return chunk;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException("Interrupted while listing the pool", e);
+      }
+   }
+
+   /**
+    * @return {@code true} if the last returned chunk holds names of packed entries rather than of standalone objects
+    */
+   boolean packed() {
+      return listed;
+   }
+
+   @Override
+   public void close() {
+      //the cursors are freed only once no slice is being listed
+      boolean interrupted = false;
+      while (listing > 0) {
+         try {
+            chunks.take();
+            listing--;
+         } catch (InterruptedException e) {
+            interrupted = true;
+         }
+      }
+      if (interrupted) {
+         Thread.currentThread().interrupt();
+      }
+      if (lists != null) {
+         for (ObjectList list : lists) {
+            if (list != null) {
+               list.close();
+            }
+         }
+         lists = null;
+      }
+      if (listLease != null) {
+         listLease.close();
+         listLease = null;
+      }
+   }
+
+   private static final class Chunk {
+
+      final int slice;
+      /**
+       * Listed names or {@code null} once the slice is listed.
+       */
+      final String[] names;
+      final Exception failure;
+
+      Chunk(int slice, String[] names, Exception failure) {
+         this.slice = slice;
+         this.names = names;
+         this.failure = failure;
+      }
+
+   }
+
+}
@@ -0,0 +1,105 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Set;
+
+import com.ceph.rados.exceptions.RadosException;
+
+/**
+ * Index of expiring entries kept in the Ceph pool next to the entries themselves. Time is split into buckets of fixed
+ * width and every bucket has its own index object, to which names of the entries expiring within the bucket are
+ * appended. Purge then reads only the buckets which already passed instead of scanning the whole pool. A cursor object
+ * holds the first bucket which was not purged yet.
+ * <p>
+ * Records are only appended, entries which were deleted or rewritten with different expiration stay in the index and
+ * are checked against the actual entry metadata during purge.
+ *
+ * @since 9.0
+ */
+final class ExpirationIndex {
+
+   static final String INTERNAL_OBJECT_PREFIX = "__ispn_";
+   private static final String BUCKET_PREFIX = INTERNAL_OBJECT_PREFIX + "expiry_";
+   private static final String CURSOR_OBJECT = INTERNAL_OBJECT_PREFIX + "expiry_cursor";
+
+   private static final int CEPH_ENOENT = -2;
+
+   private final ConnectionPool connections;
+   private final long bucketWidth;
+
+   ExpirationIndex(ConnectionPool connections, long bucketWidth) {
+      this.connections = connections;
+      this.bucketWidth = bucketWidth;
+   }
+
+   /**
+    * @return {@code true} if the object is used internally by the store and doesn't hold any cache entry
+    */
+   static boolean isInternalObject(String objectName) {
+      return objectName.startsWith(INTERNAL_OBJECT_PREFIX);
+   }
+
+   long bucketOf(long time) {
+      return time / bucketWidth;
+   }
+
+   /**
+    * Records that the entry stored in given object expires at given time. Entries which are already expired are
+    * recorded into the current bucket, so that they are picked up by the next purge.
+    */
+   void add(String objectName, long expiryTime, long now) throws RadosException {
+      NameLog.append(connections, bucketObject(expiryTime, now), objectName);
+   }
+
+   /**
+    * Adds the record of {@link #add(String, long, long)} to the operation of the index object.
+    */
+   void add(CompoundWrites writes, String objectName, long expiryTime, long now, Object owner) {
+      writes.append(bucketObject(expiryTime, now), NameLog.encode(objectName), owner);
+   }
+
+   private String bucketObject(long expiryTime, long now) {
+      return bucketObject(Math.max(bucketOf(expiryTime), bucketOf(now)));
+   }
+
+   /**
+    * @return names of the objects recorded in given bucket, without duplicates
+    */
+   Set<String> readBucket(long bucket) throws RadosException {
+      String bucketObject = bucketObject(bucket);
+      return NameLog.decode(NameLog.read(connections, bucketObject));
+   }
+
+   void removeBucket(long bucket) throws RadosException {
+      try {
+         String bucketObject = bucketObject(bucket);
+         try (ClusterConnections.Lease lease = connections.lease(bucketObject)) {
+            lease.ctx().remove(bucketObject);
+         }
+      } catch (RadosException e) {
+         if (e.getReturnValue() != CEPH_ENOENT) {
+            throw e;
+         }
+      }
+   }
+
+   /**
+    * @return first bucket which wasn't purged yet or -1 if the index was not used for purging so far
+    */
+   long readCursor() throws RadosException {
+      byte[] bytes = NameLog.read(connections, CURSOR_OBJECT);
+      return bytes == null || bytes.length < 8 ? -1 : EntryFormat.readLong(bytes, 0);
+   }
+
+   void writeCursor(long bucket) throws RadosException {
+      byte[] bytes = new byte[8];
+      EntryFormat.writeLong(bytes, 0, bucket);
+      try (ClusterConnections.Lease lease = connections.lease(CURSOR_OBJECT)) {
+         lease.ctx().writeFull(CURSOR_OBJECT, bytes, bytes.length);
+      }
+   }
+
+   private String bucketObject(long bucket) {
+      return BUCKET_PREFIX + bucket;
+   }
+
+}
@@ -0,0 +1,327 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.infinispan.persistence.spi.PersistenceException;
+
+import com.ceph.rados.exceptions.RadosException;
+
+/**
+ * Keeps track of the generation of the entries stored in the pool, see
+ * {@link org.infinispan.persistence.ceph.configuration.ClearMode#GENERATION}. Objects of generation {@code N > 0} are
+ * named {@code ~gN~<key>}, generation 0 uses plain key names, so that pools written without generations are read as
+ * generation 0. The current generation is stored in a control object and periodically re-read, so that other nodes
+ * sharing the pool pick up the change. Objects of the previous generations are removed in the background, at most
+ * {@code cleanupRate} objects per second, together with the chunks of their values. The control object records also
+ * the generation whose predecessors were all removed, so that a restart doesn't scan the pool again.
+ * <p>
+ * Generations are told apart by the prefix rather than by namespaces: listing a namespace still makes the OSDs walk
+ * all objects of every placement group, so a namespace per generation wouldn't spare the cleanup the scan.
+ *
+ * @since 9.0
+ */
+final class Generations {
+
+   private static final String CONTROL_OBJECT = ExpirationIndex.INTERNAL_OBJECT_PREFIX + "generation";
+   private static final int OFFSET_CLEANED = 8;
+   private static final String PREFIX_START = "~g";
+   private static final char PREFIX_END = '~';
+   private static final int CEPH_ENOENT = -2;
+   private static final int LIST_BATCH_SIZE = 1000;
+   private static final long REFRESH_INTERVAL_MS = 1000;
+
+   private final ConnectionPool connections;
+   private final Executor deleteExecutor;
+   private final ScheduledExecutorService scheduler;
+   private final int cleanupRate;
+
+   private volatile long current;
+   private volatile String prefix = "";
+   private final AtomicBoolean cleanupRunning = new AtomicBoolean();
+   private volatile boolean cleanupRequested;
+
+   Generations(ConnectionPool connections, Executor deleteExecutor, ScheduledExecutorService scheduler,
+         int cleanupRate) {
+      this.connections = connections;
+      this.deleteExecutor = deleteExecutor;
+      this.scheduler = scheduler;
+      this.cleanupRate = cleanupRate;
+   }
+
+   void start() throws RadosException {
+      long[] control = readControl();
+      setCurrent(control[0]);
+      scheduler.scheduleWithFixedDelay(this::refresh, REFRESH_INTERVAL_MS, REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+      if (current > control[1]) {
+         //previous cleanup was interrupted
+         scheduleCleanup();
+      }
+   }
+
+   String prefix() {
+      return prefix;
+   }
+
+   /**
+    * @return {@code true} if the object holds an entry of the current generation
+    */
+   boolean isCurrent(String objectName) {
+      if (ExpirationIndex.isInternalObject(objectName)) {
+         return false;
+      }
+      return generationOf(objectName) == current;
+   }
+
+   /**
+    * @return object name without the generation prefix
+    */
+   static String stripPrefix(String objectName) {
+      return generationOf(objectName) == 0 ? objectName
+            : objectName.substring(objectName.indexOf(PREFIX_END, PREFIX_START.length()) + 1);
+   }
+
+   /**
+    * Switches to the next generation and schedules removal of the objects of the previous ones.
+    */
+   synchronized void advance() throws RadosException {
+      long[] control = readControl();
+      long next = Math.max(current, control[0]) + 1;
+      byte[] bytes = new byte[OFFSET_CLEANED + 8];
+      EntryFormat.writeLong(bytes, 0, next);
+      EntryFormat.writeLong(bytes, OFFSET_CLEANED, control[1]);
+      try (ClusterConnections.Lease lease = connections.lease(CONTROL_OBJECT)) {
+         lease.ctx().writeFull(CONTROL_OBJECT, bytes, bytes.length);
+      }
+      setCurrent(next);
+      scheduleCleanup();
+   }
+
+   private void setCurrent(long generation) {
+      current = generation;
+      prefix = generation == 0 ? "" : PREFIX_START + generation + PREFIX_END;
+   }
+
+   private long readGeneration() throws RadosException {
+      return readControl()[0];
+   }
+
+   /**
+    * @return current generation followed by the generation whose predecessors were all removed
+    */
+   private long[] readControl() throws RadosException {
+      try (ClusterConnections.Lease lease = connections.lease(CONTROL_OBJECT)) {
+         byte[] bytes = new byte[OFFSET_CLEANED + 8];
+         int read = lease.ctx().read(CONTROL_OBJECT, bytes.length, 0, bytes);
+         return new long[] { read < OFFSET_CLEANED ? 0 : EntryFormat.readLong(bytes, 0),
+               read < bytes.length ? 0 : EntryFormat.readLong(bytes, OFFSET_CLEANED) };
+      } catch (RadosException e) {
+         if (e.getReturnValue() == CEPH_ENOENT) {
+            return new long[2];
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Records that all objects of the generations older than given one were removed. A concurrent advance may only
+    * have moved the current generation past it, so the next start still cleans up.
+    */
+   private void writeCleaned(long generation) {
+      byte[] bytes = new byte[8];
+      EntryFormat.writeLong(bytes, 0, generation);
+      try (ClusterConnections.Lease lease = connections.lease(CONTROL_OBJECT)) {
+         lease.ctx().write(CONTROL_OBJECT, bytes, OFFSET_CLEANED);
+      } catch (RadosException | RuntimeException e) {
+         //the next start cleans up again
+      }
+   }
+
+   private void refresh() {
+      try {
+         long generation = readGeneration();
+         synchronized (this) {
+            if (generation > current) {
+               setCurrent(generation);
+            }
+         }
+      } catch (RadosException e) {
+         //keep the current generation, it will be re-read in the next round
+      }
+   }
+
+   /**
+    * @return generation encoded in the object name prefix, 0 for objects without the prefix
+    */
+   static long generationOf(String objectName) {
+      if (!objectName.startsWith(PREFIX_START)) {
+         return 0;
+      }
+      int end = objectName.indexOf(PREFIX_END, PREFIX_START.length());
+      if (end <= PREFIX_START.length()) {
+         return 0;
+      }
+      long generation = 0;
+      for (int i = PREFIX_START.length(); i < end; i++) {
+         char c = objectName.charAt(i);
+         if (c < '0' || c > '9') {
+            return 0;
+         }
+         generation = generation * 10 + (c - '0');
+      }
+      return generation;
+   }
+
+   private void scheduleCleanup() {
+      scheduler.execute(this::cleanup);
+   }
+
+   /**
+    * Removes all objects of the generations older than the current one. Deletes are issued in parallel, but not more
+    * than {@code cleanupRate} per second. The cleanup proceeds in steps scheduled by the scheduler, it never blocks its
+    * thread while waiting for the deletes or for the next second.
+    */
+   private void cleanup() {
+      cleanupRequested = true;
+      if (!cleanupRunning.compareAndSet(false, true)) {
+         //running cleanup will do another round
+         return;
+      }
+      cleanupRequested = false;
+      try {
+         refresh();
+         new Cleanup(current, connections.lease()).step();
+      } catch (RuntimeException e) {
+         //objects which were not removed will be removed by the next cleanup
+         cleanupFinished();
+      }
+   }
+
+   private void cleanupFinished() {
+      cleanupRunning.set(false);
+      if (cleanupRequested && !scheduler.isShutdown()) {
+         scheduleCleanup();
+      }
+   }
+
+   /**
+    * One pass of the cleanup over the pool listing. Every step removes up to {@code cleanupRate} objects and the next
+    * step starts once all of them are removed, but not sooner than one second after the previous one.
+    */
+   private final class Cleanup {
+
+      private final long generation;
+      private final ClusterConnections.Lease lease;
+      private final ObjectList list;
+      private String[] listed = new String[0];
+      private int position;
+      private volatile boolean failed;
+
+      /**
+       * @param lease lease of the context used for the listing, closed once the cleanup is finished
+       */
+      Cleanup(long generation, ClusterConnections.Lease lease) {
+         this.generation = generation;
+         this.lease = lease;
+         try {
+            this.list = new ObjectList(lease.ctx(), 0, 1, LIST_BATCH_SIZE);
+         } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+         }
+      }
+
+      void step() {
+         long stepStart = System.nanoTime();
+         List<CompletableFuture<Void>> deletes = new ArrayList<>(cleanupRate);
+         try {
+            String objectName;
+            while (deletes.size() < cleanupRate && (objectName = nextStale()) != null) {
+               final String stale = objectName;
+               deletes.add(CompletableFuture.runAsync(() -> remove(stale), deleteExecutor));
+            }
+         } catch (RadosException | RuntimeException e) {
+            //objects which were not removed will be removed by the next cleanup
+            failed = true;
+            finish();
+            return;
+         }
+         if (deletes.isEmpty()) {
+            finish();
+            return;
+         }
+         CompletableFuture.allOf(deletes.toArray(new CompletableFuture[deletes.size()])).whenComplete((r, t) -> {
+            if (t != null) {
+               failed = true;
+            }
+            long delay = TimeUnit.SECONDS.toNanos(1) - (System.nanoTime() - stepStart);
+            try {
+               scheduler.schedule(this::step, Math.max(0, delay), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+               //store is stopped
+               failed = true;
+               finish();
+            }
+         });
+      }
+
+      /**
+       * @return name of the next listed object of an older generation or {@code null} if the listing is finished
+       */
+      private String nextStale() throws RadosException {
+         while (true) {
+            if (position == listed.length) {
+               listed = list.next();
+               if (listed == null) {
+                  listed = new String[0];
+                  return null;
+               }
+               position = 0;
+            }
+            String objectName = listed[position++];
+            if (isStale(objectName, generation)) {
+               return objectName;
+            }
+         }
+      }
+
+      private void finish() {
+         list.close();
+         lease.close();
+         if (!failed) {
+            writeCleaned(generation);
+         }
+         cleanupFinished();
+      }
+   }
+
+   /**
+    * @return {@code true} if the object holds an entry, or a chunk of an entry, older than given generation
+    */
+   private static boolean isStale(String objectName, long generation) {
+      String owner = ChunkManifest.ownerOf(objectName);
+      if (owner != null) {
+         return generationOf(owner) < generation;
+      }
+      return !ExpirationIndex.isInternalObject(objectName) && generationOf(objectName) < generation;
+   }
+
+   private void remove(String objectName) {
+      try {
+         try (ClusterConnections.Lease lease = connections.lease(objectName)) {
+            lease.ctx().remove(objectName);
+         }
+      } catch (RadosException e) {
+         if (e.getReturnValue() != CEPH_ENOENT) {
+            throw new PersistenceException(e);
+         }
+      }
+   }
+
+}
@@ -0,0 +1,38 @@
+package org.infinispan.persistence.ceph;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Object naming used when {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#hashObjectNames()}
+ * is enabled. The object name is the hex encoded SHA-256 digest of the marshalled key, so all names have the same
+ * length regardless of the key size and are spread evenly among placement groups. The name cannot be mapped back to
+ * the key, the marshalled key is therefore stored in the object itself, see {@link EntryFormat#FLAG_KEY}.
+ *
+ * @since 9.0
+ */
+final class HashedObjectNames {
+
+   private static final String DIGEST_ALGORITHM = "SHA-256";
+   private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+   private HashedObjectNames() {
+   }
+
+   static String of(byte[] marshalledKey) {
+      byte[] digest;
+      try {
+         digest = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(marshalledKey);
+      } catch (NoSuchAlgorithmException e) {
+         //every Java platform is required to support SHA-256
+         throw new IllegalStateException(e);
+      }
+      char[] name = new char[2 * digest.length];
+      for (int i = 0; i < digest.length; i++) {
+         name[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0x0F];
+         name[2 * i + 1] = HEX_DIGITS[digest[i] & 0x0F];
+      }
+      return new String(name);
+   }
+
+}
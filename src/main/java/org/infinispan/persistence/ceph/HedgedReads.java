@@ -0,0 +1,175 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+import org.infinispan.persistence.spi.PersistenceException;
+
+import com.ceph.rados.Rados;
+
+/**
+ * Hedges reads of entry objects, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#hedgedReadPercentile()}. A read is
+ * performed by a thread of the given executor while the caller waits for it at most for the configured percentile of
+ * the latencies of recent reads. If the read doesn't finish in time, the same read is sent again with flags directing
+ * it to another replica, and the caller gets the result of whichever read succeeds first. The other read is left to
+ * finish, its result is discarded.
+ * <p>
+ * Every read adds the maximum ratio to a budget and every hedged read takes one from it, so the share of hedged reads
+ * stays bounded even if the whole cluster slows down. The budget accumulates at most for a small burst of hedged
+ * reads. Until enough latencies are recorded, reads are performed by the calling thread and never hedged.
+ *
+ * @since 9.0
+ */
+final class HedgedReads {
+
+   //number of recent latencies the delay is computed from
+   private static final int SAMPLES = 1024;
+   //delay is computed again after this number of reads, once at least as many latencies are recorded
+   private static final int UPDATE_INTERVAL = 128;
+   //budget is kept in millionths of a hedged read
+   private static final long BUDGET_UNIT = 1_000_000;
+   private static final long MAX_BUDGET = 10 * BUDGET_UNIT;
+   private static final long NO_DELAY = Long.MAX_VALUE;
+
+   private final double percentile;
+   private final long budgetPerRead;
+   private final int hedgeFlags;
+   private final Executor executor;
+   private final AtomicLongArray latencies = new AtomicLongArray(SAMPLES);
+   private final AtomicLong reads = new AtomicLong();
+   private final AtomicLong budget = new AtomicLong();
+   private volatile long delayNanos = NO_DELAY;
+
+   interface Read<T> {
+      /**
+       * @param flags flags of the read operation
+       */
+      T read(int flags) throws PersistenceException;
+   }
+
+   /**
+    * @param percentile percentile of the latencies of recent reads after which the read is hedged
+    * @param maxRatio maximum share of the reads which are hedged
+    * @param hedgeFlags flags of the hedged read
+    * @param executor executor which performs the reads, it must not queue them
+    */
+   HedgedReads(double percentile, double maxRatio, int hedgeFlags, Executor executor) {
+      this.percentile = Math.min(100, percentile);
+      this.budgetPerRead = Math.round(Math.max(0, Math.min(1, maxRatio)) * BUDGET_UNIT);
+      this.hedgeFlags = hedgeFlags;
+      this.executor = executor;
+   }
+
+   /**
+    * @return result of the read which has succeeded first
+    * @throws PersistenceException if the read has failed, or both reads if it was hedged
+    */
+   <T> T read(Read<T> read) throws PersistenceException {
+      budget.accumulateAndGet(budgetPerRead, (b, add) -> Math.min(MAX_BUDGET, b + add));
+      long delay = delayNanos;
+      if (delay == NO_DELAY) {
+         return timed(read);
+      }
+      CompletableFuture<T> primary = CompletableFuture.supplyAsync(() -> timed(read), executor);
+      try {
+         return primary.get(delay, TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+         if (!takeBudget()) {
+            return join(primary);
+         }
+         CompletableFuture<T> hedged = CompletableFuture.supplyAsync(() -> read.read(hedgeFlags), executor);
+         return join(firstSuccessful(primary, hedged));
+      } catch (ExecutionException e) {
+         throw failure(e.getCause());
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException("Interrupted while waiting for a read", e);
+      }
+   }
+
+   /**
+    * @return current delay after which reads are hedged or {@link Long#MAX_VALUE} if it's not known yet
+    */
+   long delayNanos() {
+      return delayNanos;
+   }
+
+   private <T> T timed(Read<T> read) {
+      long start = System.nanoTime();
+      try {
+         return read.read(Rados.OPERATION_NOFLAG);
+      } finally {
+         record(System.nanoTime() - start);
+      }
+   }
+
+   private void record(long latency) {
+      long count = reads.incrementAndGet();
+      latencies.lazySet((int) ((count - 1) % SAMPLES), latency);
+      if (count % UPDATE_INTERVAL == 0) {
+         int samples = (int) Math.min(count, SAMPLES);
+         long[] sorted = new long[samples];
+         for (int i = 0; i < samples; i++) {
+            sorted[i] = latencies.get(i);
+         }
+         Arrays.sort(sorted);
+         int index = (int) Math.ceil(percentile / 100 * samples) - 1;
+         delayNanos = sorted[Math.max(0, Math.min(samples - 1, index))];
+      }
+   }
+
+   private boolean takeBudget() {
+      long current;
+      do {
+         current = budget.get();
+         if (current < BUDGET_UNIT) {
+            return false;
+         }
+      } while (!budget.compareAndSet(current, current - BUDGET_UNIT));
+      return true;
+   }
+
+   /**
+    * @return future completed by the first successful read, or by the failure of the latter one if both fail
+    */
+   private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> primary, CompletableFuture<T> hedged) {
+      CompletableFuture<T> first = new CompletableFuture<>();
+      AtomicInteger failures = new AtomicInteger();
+      BiConsumer<T, Throwable> complete = (result, t) -> {
+         if (t == null) {
+            first.complete(result);
+         } else if (failures.incrementAndGet() == 2) {
+            first.completeExceptionally(t);
+         }
+      };
+      primary.whenComplete(complete);
+      hedged.whenComplete(complete);
+      return first;
+   }
+
+   private static <T> T join(CompletableFuture<T> read) throws PersistenceException {
+      try {
+         return read.join();
+      } catch (CompletionException e) {
+         throw failure(e.getCause());
+      }
+   }
+
+   private static PersistenceException failure(Throwable cause) {
+      while (cause instanceof CompletionException && cause.getCause() != null) {
+         cause = cause.getCause();
+      }
+      return cause instanceof PersistenceException ? (PersistenceException) cause : new PersistenceException(cause);
+   }
+
+}
@@ -0,0 +1,117 @@
+package org.infinispan.persistence.ceph;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.NativeLongByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * librados functions not exposed by the Java binding, called directly through JNA. The library is loaded once and
+ * shared by all users. I/O contexts are passed as {@link com.ceph.rados.IoCTX#getPointer()}.
+ *
+ * @since 9.0
+ */
+interface LibRados extends Library {
+
+   LibRados INSTANCE = (LibRados) Native.loadLibrary("rados", LibRados.class);
+
+   void rados_ioctx_set_namespace(Pointer ioctx, String namespace);
+
+   /**
+    * Callback of a completion, called by a librados thread once the operation is acknowledged or committed.
+    */
+   interface Callback extends com.sun.jna.Callback {
+      void invoke(Pointer completion, Pointer arg);
+   }
+
+   int rados_aio_create_completion(Pointer arg, Callback complete, Callback safe, PointerByReference completion);
+
+   int rados_aio_write_full(Pointer ioctx, String oid, Pointer completion, byte[] buf, NativeLong len);
+
+   int rados_aio_remove(Pointer ioctx, String oid, Pointer completion);
+
+   int rados_aio_wait_for_complete(Pointer completion);
+
+   int rados_aio_wait_for_safe(Pointer completion);
+
+   int rados_aio_get_return_value(Pointer completion);
+
+   void rados_aio_release(Pointer completion);
+
+   Pointer rados_create_write_op();
+
+   void rados_release_write_op(Pointer op);
+
+   void rados_write_op_assert_exists(Pointer op);
+
+   void rados_write_op_cmpext(Pointer op, byte[] expected, NativeLong len, long offset, IntByReference result);
+
+   void rados_write_op_write(Pointer op, byte[] buffer, NativeLong len, long offset);
+
+   void rados_write_op_write_full(Pointer op, byte[] buffer, NativeLong len);
+
+   void rados_write_op_append(Pointer op, byte[] buffer, NativeLong len);
+
+   void rados_write_op_remove(Pointer op);
+
+   void rados_write_op_setxattr(Pointer op, String name, byte[] value, NativeLong len);
+
+   void rados_write_op_omap_set(Pointer op, String[] keys, Pointer[] values, Pointer lengths, NativeLong count);
+
+   void rados_write_op_omap_rm_keys(Pointer op, String[] keys, NativeLong count);
+
+   void rados_write_op_omap_cmp(Pointer op, String key, byte comparison, byte[] value, NativeLong length,
+         IntByReference result);
+
+   int rados_write_op_operate(Pointer op, Pointer ioctx, String oid, Pointer mtime, int flags);
+
+   int rados_aio_write_op_operate(Pointer op, Pointer ioctx, Pointer completion, String oid, Pointer mtime,
+         int flags);
+
+   Pointer rados_create_read_op();
+
+   void rados_release_read_op(Pointer op);
+
+   void rados_read_op_omap_get_vals(Pointer op, String startAfter, String filterPrefix, long maxReturn,
+         PointerByReference iterator, IntByReference result);
+
+   void rados_read_op_omap_get_vals_by_keys(Pointer op, String[] keys, NativeLong count,
+         PointerByReference iterator, IntByReference result);
+
+   void rados_read_op_read(Pointer op, long offset, NativeLong length, Pointer buffer, NativeLongByReference bytesRead,
+         IntByReference result);
+
+   void rados_read_op_stat(Pointer op, LongByReference size, NativeLongByReference mtime, IntByReference result);
+
+   void rados_read_op_cmpext(Pointer op, Pointer expected, NativeLong length, long offset, IntByReference result);
+
+   int rados_read_op_operate(Pointer op, Pointer ioctx, String oid, int flags);
+
+   int rados_aio_read_op_operate(Pointer op, Pointer ioctx, Pointer completion, String oid, int flags);
+
+   int rados_omap_get_next(Pointer iterator, PointerByReference key, PointerByReference value,
+         NativeLongByReference length);
+
+   void rados_omap_get_end(Pointer iterator);
+
+   Pointer rados_object_list_begin(Pointer ioctx);
+
+   Pointer rados_object_list_end(Pointer ioctx);
+
+   int rados_object_list_cursor_cmp(Pointer ioctx, Pointer lhs, Pointer rhs);
+
+   void rados_object_list_cursor_free(Pointer ioctx, Pointer cursor);
+
+   void rados_object_list_slice(Pointer ioctx, Pointer start, Pointer finish, NativeLong n, NativeLong m,
+         PointerByReference splitStart, PointerByReference splitFinish);
+
+   int rados_object_list(Pointer ioctx, Pointer start, Pointer finish, NativeLong resultSize, Pointer filter,
+         NativeLong filterLength, Pointer results, PointerByReference next);
+
+   void rados_object_list_free(NativeLong resultSize, Pointer results);
+
+}
@@ -0,0 +1,180 @@
+package org.infinispan.persistence.ceph;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * {@link ValueCodec} producing the LZ4 block format, implemented in plain Java so that no native library or extra
+ * dependency is needed. The compressor uses a single hash table probe per position, which trades some ratio for speed
+ * in the same way as the fast mode of the reference implementation.
+ *
+ * @since 9.0
+ */
+final class Lz4Codec extends ValueCodec {
+
+   private static final int MIN_MATCH = 4;
+   private static final int LAST_LITERALS = 5;
+   //last match has to start at least this far from the end of the input
+   private static final int MF_LIMIT = 12;
+   private static final int MAX_DISTANCE = 0xFFFF;
+   private static final int HASH_LOG = 12;
+   private static final int RUN_MASK = 0x0F;
+
+   Lz4Codec(int id) {
+      super(id);
+   }
+
+   @Override
+   byte[] compress(byte[] value) {
+      int length = value.length;
+      byte[] bytes = new byte[ORIGINAL_LENGTH_SIZE + length + length / 255 + 16];
+      EntryFormat.writeInt(bytes, 0, length);
+      int out = ORIGINAL_LENGTH_SIZE;
+      int anchor = 0;
+      if (length > MF_LIMIT) {
+         //positions are stored incremented by one, so that 0 means an empty slot
+         int[] table = new int[1 << HASH_LOG];
+         int limit = length - MF_LIMIT;
+         int matchLimit = length - LAST_LITERALS;
+         int i = 0;
+         while (i < limit) {
+            int sequence = readIntLE(value, i);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+            int ref = table[hash] - 1;
+            table[hash] = i + 1;
+            if (ref < 0 || i - ref > MAX_DISTANCE || readIntLE(value, ref) != sequence) {
+               i++;
+               continue;
+            }
+            int matchEnd = i + MIN_MATCH;
+            int refEnd = ref + MIN_MATCH;
+            while (matchEnd < matchLimit && value[matchEnd] == value[refEnd]) {
+               matchEnd++;
+               refEnd++;
+            }
+            while (i > anchor && ref > 0 && value[i - 1] == value[ref - 1]) {
+               i--;
+               ref--;
+            }
+            int token = out;
+            out = writeSequence(value, anchor, i - anchor, bytes, out);
+            bytes[out++] = (byte) (i - ref);
+            bytes[out++] = (byte) ((i - ref) >>> 8);
+            int matchLength = matchEnd - i - MIN_MATCH;
+            if (matchLength >= RUN_MASK) {
+               bytes[token] |= RUN_MASK;
+               out = writeLength(matchLength - RUN_MASK, bytes, out);
+            } else {
+               bytes[token] |= matchLength;
+            }
+            i = matchEnd;
+            anchor = i;
+         }
+      }
+      out = writeSequence(value, anchor, length - anchor, bytes, out);
+      return Arrays.copyOf(bytes, out);
+   }
+
+   /**
+    * Writes the token and the literals of a sequence, match length is filled into the token by the caller.
+    */
+   private static int writeSequence(byte[] value, int offset, int literals, byte[] bytes, int out) {
+      if (literals >= RUN_MASK) {
+         bytes[out++] = (byte) (RUN_MASK << 4);
+         out = writeLength(literals - RUN_MASK, bytes, out);
+      } else {
+         bytes[out++] = (byte) (literals << 4);
+      }
+      System.arraycopy(value, offset, bytes, out, literals);
+      return out + literals;
+   }
+
+   private static int writeLength(int length, byte[] bytes, int out) {
+      while (length >= 255) {
+         bytes[out++] = (byte) 255;
+         length -= 255;
+      }
+      bytes[out++] = (byte) length;
+      return out;
+   }
+
+   private static int readIntLE(byte[] bytes, int offset) {
+      return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16
+            | (bytes[offset + 3] & 0xFF) << 24;
+   }
+
+   @Override
+   byte[] decompress(byte[] bytes, int offset, int length) throws IOException {
+      byte[] value = new byte[EntryFormat.readInt(bytes, offset)];
+      int in = offset + ORIGINAL_LENGTH_SIZE;
+      int end = offset + length;
+      int out = 0;
+      try {
+         while (in < end) {
+            int token = bytes[in++] & 0xFF;
+            int literals = token >>> 4;
+            if (literals == RUN_MASK) {
+               int b;
+               do {
+                  b = bytes[in++] & 0xFF;
+                  literals += b;
+               } while (b == 255);
+            }
+            System.arraycopy(bytes, in, value, out, literals);
+            in += literals;
+            out += literals;
+            if (in == end) {
+               break;
+            }
+            int distance = (bytes[in++] & 0xFF) | (bytes[in++] & 0xFF) << 8;
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+               int b;
+               do {
+                  b = bytes[in++] & 0xFF;
+                  matchLength += b;
+               } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            int ref = out - distance;
+            if (distance == 0 || ref < 0) {
+               throw new IOException("Compressed value is corrupted");
+            }
+            if (distance >= matchLength) {
+               System.arraycopy(value, ref, value, out, matchLength);
+               out += matchLength;
+            } else {
+               //overlapping match repeats the last bytes
+               for (int i = 0; i < matchLength; i++) {
+                  value[out++] = value[ref++];
+               }
+            }
+         }
+      } catch (IndexOutOfBoundsException e) {
+         throw new IOException("Compressed value is corrupted", e);
+      }
+      if (out != value.length) {
+         throw new IOException("Compressed value is truncated");
+      }
+      return value;
+   }
+
+   /**
+    * Block format cannot be decoded incrementally, the compressed value is read into memory first.
+    */
+   @Override
+   InputStream decompress(InputStream in) throws IOException {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+         compressed.write(buffer, 0, n);
+      }
+      byte[] bytes = compressed.toByteArray();
+      return new ByteArrayInputStream(decompress(bytes, 0, bytes.length));
+   }
+
+}
@@ -0,0 +1,140 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import com.ceph.rados.exceptions.RadosException;
+
+/**
+ * Local {@link BloomFilter} of the names of the stored objects, which lets point reads of missing entries return
+ * without a round trip to the cluster, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#bloomFilterFalsePositiveRate()}.
+ * <p>
+ * The filter is built in the background by listing the pool; until the first build completes every name is reported
+ * as possibly present. Deleted names cannot be removed from the filter, so the filter is rebuilt after a clear, once it
+ * holds more names than it was sized for and, if configured, periodically to pick up the objects written by other
+ * nodes sharing the pool.
+ * <p>
+ * A name is added before its object is written and the write holds a shared lock until it completes. A rebuild
+ * installs the new filter under the exclusive lock before it starts listing, so every object is either written before
+ * the listing starts or added to the new filter, and the filter never reports a stored object as missing.
+ *
+ * @since 9.0
+ */
+final class NameFilter {
+
+   private static final long MIN_EXPECTED_INSERTIONS = 1024;
+
+   private final double falsePositiveRate;
+   private final Supplier<EntryNames> listing;
+   private final Predicate<String> isEntryObject;
+   private final EstimatedSize estimatedSize;
+   private final Executor executor;
+   private final ReadWriteLock lock = new ReentrantReadWriteLock();
+   private final AtomicBoolean rebuilding = new AtomicBoolean();
+   private volatile boolean rebuildRequested;
+
+   //null until the first build completes
+   private volatile BloomFilter current;
+   private volatile BloomFilter building;
+   //number of entry objects found by the last listing
+   private volatile long listedNames;
+
+   interface EstimatedSize {
+      long get() throws RadosException;
+   }
+
+   NameFilter(double falsePositiveRate, Supplier<EntryNames> listing, Predicate<String> isEntryObject,
+         EstimatedSize estimatedSize, Executor executor) {
+      this.falsePositiveRate = falsePositiveRate;
+      this.listing = listing;
+      this.isEntryObject = isEntryObject;
+      this.estimatedSize = estimatedSize;
+      this.executor = executor;
+   }
+
+   /**
+    * @return {@code false} if there is certainly no object of given name, {@code true} if there might be one
+    */
+   boolean mightContain(String objectName) {
+      BloomFilter filter = current;
+      return filter == null || filter.mightContain(objectName);
+   }
+
+   /**
+    * Adds given name to the filter before its object is written, {@link #endWrite()} has to be called once the write
+    * completes.
+    */
+   void beginWrite(String objectName) {
+      lock.readLock().lock();
+      BloomFilter filter = current;
+      if (filter != null) {
+         filter.add(objectName);
+      }
+      filter = building;
+      if (filter != null) {
+         filter.add(objectName);
+      }
+   }
+
+   void endWrite() {
+      lock.readLock().unlock();
+      BloomFilter filter = current;
+      if (filter != null && filter.isOverfilled()) {
+         rebuild();
+      }
+   }
+
+   /**
+    * Schedules rebuild of the filter, unless one is running already, in which case another one follows it.
+    */
+   void rebuild() {
+      rebuildRequested = true;
+      if (rebuilding.compareAndSet(false, true)) {
+         executor.execute(this::doRebuild);
+      }
+   }
+
+   private void doRebuild() {
+      rebuildRequested = false;
+      try {
+         //the estimate may miss e.g. the packed entries, which the last listing found; should the pool have grown
+         //since, the new filter overfills and the next rebuild is sized from its listing
+         long expected = Math.max(estimatedSize.get(), listedNames);
+         BloomFilter filter = new BloomFilter(Math.max(MIN_EXPECTED_INSERTIONS, 2 * expected), falsePositiveRate);
+         lock.writeLock().lock();
+         try {
+            building = filter;
+         } finally {
+            lock.writeLock().unlock();
+         }
+         long listed = 0;
+         try (EntryNames names = listing.get()) {
+            String[] chunk;
+            while ((chunk = names.next()) != null) {
+               for (String objectName : chunk) {
+                  if (isEntryObject.test(objectName)) {
+                     filter.add(objectName);
+                     listed++;
+                  }
+               }
+            }
+         }
+         listedNames = listed;
+         current = filter;
+      } catch (RadosException | RuntimeException e) {
+         //keep the current filter, it never reports a stored object as missing
+      } finally {
+         building = null;
+         rebuilding.set(false);
+      }
+      if (rebuildRequested) {
+         rebuild();
+      }
+   }
+
+}
@@ -0,0 +1,81 @@
+package org.infinispan.persistence.ceph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.ceph.rados.exceptions.RadosException;
+
+/**
+ * Append-only log of object names kept in a single Ceph object. Every record is the 4 byte length of the UTF-8
+ * encoded name followed by the name itself. Appends are atomic, so several writers can append to the same log
+ * without any coordination.
+ *
+ * @since 9.0
+ */
+final class NameLog {
+
+   private static final int CEPH_ENOENT = -2;
+
+   private NameLog() {
+   }
+
+   static void append(ConnectionPool connections, String logObject, String name) throws RadosException {
+      try (ClusterConnections.Lease lease = connections.lease(logObject)) {
+         lease.ctx().append(logObject, encode(name));
+      }
+   }
+
+   /**
+    * @return content of the log or {@code null} if there is no such log
+    */
+   static byte[] read(ConnectionPool connections, String logObject) throws RadosException {
+      try (ClusterConnections.Lease lease = connections.lease(logObject)) {
+         long size = lease.ctx().stat(logObject).getSize();
+         byte[] bytes = new byte[(int) size];
+         int read = lease.ctx().read(logObject, bytes.length, 0, bytes);
+         if (read < bytes.length) {
+            byte[] trimmed = new byte[read];
+            System.arraycopy(bytes, 0, trimmed, 0, read);
+            return trimmed;
+         }
+         return bytes;
+      } catch (RadosException e) {
+         if (e.getReturnValue() == CEPH_ENOENT) {
+            return null;
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * @return names recorded in the log, without duplicates
+    */
+   static Set<String> decode(byte[] bytes) {
+      Set<String> names = new LinkedHashSet<>();
+      if (bytes == null) {
+         return names;
+      }
+      int offset = 0;
+      while (offset + 4 <= bytes.length) {
+         int length = EntryFormat.readInt(bytes, offset);
+         offset += 4;
+         if (length < 0 || offset + length > bytes.length) {
+            //incomplete record, cannot happen as appends are atomic, but don't fail the whole read on it
+            break;
+         }
+         names.add(new String(bytes, offset, length, StandardCharsets.UTF_8));
+         offset += length;
+      }
+      return names;
+   }
+
+   static byte[] encode(String name) {
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      byte[] record = new byte[4 + bytes.length];
+      EntryFormat.writeInt(record, 0, bytes.length);
+      System.arraycopy(bytes, 0, record, 4, bytes.length);
+      return record;
+   }
+
+}
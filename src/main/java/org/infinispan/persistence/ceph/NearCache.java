@@ -0,0 +1,249 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Size-bounded local cache of recently loaded and written entries, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#nearCacheSize()}. Entries are kept as
+ * the {@link StoredEntry} read from the cluster together with the write stamp of the object, see
+ * {@link EntryFormat#FLAG_STAMP}, so that a cached entry can be validated by reading only the beginning of the object.
+ * The value is unmarshalled from the cached buffer on every hit, loaded instances are never shared.
+ * <p>
+ * The cache is split into segments by the hash of the object name, each with its own lock and least recently used
+ * eviction. Every segment numbers the modifications of its objects: an entry fetched from the cluster, or written
+ * locally, is cached only if the object wasn't modified since the fetch or the write began, so that a slow read never
+ * replaces a newer entry. The segment remembers the last modification of a bounded number of recently modified
+ * objects; once an object is forgotten, it is taken for modified by the latest forgotten modification, which at worst
+ * prevents caching of its entry.
+ *
+ * @since 9.0
+ */
+final class NearCache {
+
+   private static final int SEGMENTS = 16;
+   //approximate size of the map entry and the cached objects apart from the buffers
+   private static final int ENTRY_OVERHEAD = 128;
+   private static final int MODIFICATIONS_PER_SEGMENT = 1024;
+
+   private final Segment[] segments = new Segment[SEGMENTS];
+
+   NearCache(long maxSize) {
+      for (int i = 0; i < SEGMENTS; i++) {
+         segments[i] = new Segment(Math.max(1, maxSize / SEGMENTS));
+      }
+   }
+
+   /**
+    * @return new random write stamp, never {@link EntryFormat#NO_STAMP}
+    */
+   static long newStamp() {
+      long stamp;
+      do {
+         stamp = ThreadLocalRandom.current().nextLong();
+      } while (stamp == EntryFormat.NO_STAMP);
+      return stamp;
+   }
+
+   /**
+    * @return cached entry or {@code null} if the object is not cached
+    */
+   Entry get(String objectName) {
+      Segment segment = segment(objectName);
+      synchronized (segment) {
+         return segment.entries.get(objectName);
+      }
+   }
+
+   /**
+    * @return last modification of the object, to be passed to
+    *         {@link #putIfUnmodified(String, StoredEntry, boolean, long, long)}
+    */
+   long modification(String objectName) {
+      Segment segment = segment(objectName);
+      synchronized (segment) {
+         return segment.modification(objectName);
+      }
+   }
+
+   /**
+    * Caches the entry fetched from the cluster or just written unless the object was modified since the fetch or the
+    * write began. Entries without the value or without the write stamp are not cached, and if the object doesn't
+    * exist any more, its cached entry is removed.
+    *
+    * @param stored fetched entry or {@code null} if there is no such object
+    * @param packed whether the entry is packed in a bucket, such entries can't be validated by the stamp
+    * @param modification result of {@link #modification(String)} obtained before the fetch began or of
+    *        {@link #invalidate(String)} called before the write
+    * @return {@code false} if the object was modified in the meantime and the cache was left unchanged
+    */
+   boolean putIfUnmodified(String objectName, StoredEntry stored, boolean packed, long modification, long now) {
+      Segment segment = segment(objectName);
+      synchronized (segment) {
+         if (segment.modification(objectName) != modification) {
+            return false;
+         }
+         segment.remove(objectName);
+         //concurrent fetches which began before must not replace the entry
+         segment.modify(objectName);
+         long stamp = stored != null && stored.hasValue()
+               ? EntryFormat.stamp(stored.buffer(), stored.buffer().length) : EntryFormat.NO_STAMP;
+         if (stamp != EntryFormat.NO_STAMP) {
+            segment.put(objectName, new Entry(stored, stamp, packed, now));
+         }
+         return true;
+      }
+   }
+
+   /**
+    * Removes the cached entry before the object is written or removed.
+    *
+    * @return the modification of the object, to be passed to
+    *         {@link #putIfUnmodified(String, StoredEntry, boolean, long, long)} once the write completes
+    */
+   long invalidate(String objectName) {
+      Segment segment = segment(objectName);
+      synchronized (segment) {
+         segment.remove(objectName);
+         return segment.modify(objectName);
+      }
+   }
+
+   /**
+    * Records the stored last use of the cached entry, so that the entry stays cached. The cached entry is left unchanged
+    * unless it has given write stamp.
+    */
+   void touched(String objectName, long stamp, long lastUsed) {
+      Segment segment = segment(objectName);
+      synchronized (segment) {
+         Entry entry = segment.entries.get(objectName);
+         if (entry != null && entry.stamp == stamp) {
+            segment.entries.put(objectName, new Entry(entry.stored.withLastUsed(lastUsed), stamp, entry.packed,
+                  entry.validatedAt));
+         }
+      }
+   }
+
+   void clear() {
+      for (Segment segment : segments) {
+         synchronized (segment) {
+            segment.entries.clear();
+            segment.weight = 0;
+            segment.modifyAll();
+         }
+      }
+   }
+
+   private Segment segment(String objectName) {
+      int h = objectName.hashCode();
+      return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+   }
+
+   static final class Entry {
+
+      private final StoredEntry stored;
+      private final long stamp;
+      private final boolean packed;
+      private final long weight;
+      private volatile long validatedAt;
+
+      Entry(StoredEntry stored, long stamp, boolean packed, long now) {
+         this.stored = stored;
+         this.stamp = stamp;
+         this.packed = packed;
+         this.validatedAt = now;
+         long weight = ENTRY_OVERHEAD + stored.buffer().length;
+         if (stored.chunks() != null) {
+            for (byte[] chunk : stored.chunks()) {
+               weight += chunk.length;
+            }
+         }
+         this.weight = weight;
+      }
+
+      StoredEntry stored() {
+         return stored;
+      }
+
+      long stamp() {
+         return stamp;
+      }
+
+      boolean packed() {
+         return packed;
+      }
+
+      /**
+       * @return time when the entry was last known to match the stored object
+       */
+      long validatedAt() {
+         return validatedAt;
+      }
+
+      void validated(long now) {
+         validatedAt = now;
+      }
+   }
+
+   private static final class Segment {
+
+      private final long capacity;
+      //access order, the eldest entry is the least recently used one
+      private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+      private long weight;
+      //insertion order, the eldest modification is forgotten first
+      private final LinkedHashMap<String, Long> modifications = new LinkedHashMap<>();
+      private long lastModification;
+      //the latest modification of the forgotten objects
+      private long forgottenModification;
+
+      Segment(long capacity) {
+         this.capacity = capacity;
+      }
+
+      long modification(String objectName) {
+         Long modification = modifications.get(objectName);
+         return modification != null ? modification : forgottenModification;
+      }
+
+      long modify(String objectName) {
+         long modification = ++lastModification;
+         modifications.remove(objectName);
+         modifications.put(objectName, modification);
+         if (modifications.size() > MODIFICATIONS_PER_SEGMENT) {
+            Iterator<Long> it = modifications.values().iterator();
+            forgottenModification = it.next();
+            it.remove();
+         }
+         return modification;
+      }
+
+      void modifyAll() {
+         modifications.clear();
+         forgottenModification = ++lastModification;
+      }
+
+      void put(String objectName, Entry entry) {
+         if (entry.weight > capacity) {
+            return;
+         }
+         entries.put(objectName, entry);
+         weight += entry.weight;
+         Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+         while (weight > capacity && it.hasNext()) {
+            weight -= it.next().getValue().weight;
+            it.remove();
+         }
+      }
+
+      void remove(String objectName) {
+         Entry removed = entries.remove(objectName);
+         if (removed != null) {
+            weight -= removed.weight;
+         }
+      }
+   }
+
+}
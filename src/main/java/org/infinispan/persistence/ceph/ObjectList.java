@@ -0,0 +1,96 @@
+package org.infinispan.persistence.ceph;
+
+import java.nio.charset.StandardCharsets;
+
+import com.ceph.rados.IoCTX;
+import com.ceph.rados.exceptions.RadosException;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Listing of one slice of the objects of a pool, or of its namespace, obtained in chunks. The object space is split by
+ * librados into slices of about the same size, each listed by its own cursor, so that several threads can list the
+ * pool at the same time. The Java binding offers only a single cursor over the whole pool, so the listing functions
+ * are called through {@link LibRados}. The context has to stay open until the listing is closed.
+ *
+ * @since 9.0
+ */
+final class ObjectList implements AutoCloseable {
+
+   //rados_object_list_item holds the length and the pointer of the name, the namespace and the locator
+   private static final int ITEM_SIZE = 3 * (Native.SIZE_T_SIZE + Native.POINTER_SIZE);
+
+   private final Pointer ctx;
+   private final int batchSize;
+   private final Memory results;
+   private final PointerByReference cursor;
+   private final Pointer finish;
+
+   /**
+    * @param slice index of the listed slice, from 0 to {@code slices - 1}
+    * @param batchSize maximum number of names returned by {@link #next()}
+    */
+   ObjectList(IoCTX ctx, int slice, int slices, int batchSize) {
+      this.ctx = ctx.getPointer();
+      this.batchSize = batchSize;
+      this.results = new Memory((long) batchSize * ITEM_SIZE);
+      Pointer begin = LibRados.INSTANCE.rados_object_list_begin(this.ctx);
+      Pointer end = LibRados.INSTANCE.rados_object_list_end(this.ctx);
+      //librados assigns the bounds of the slice to the given cursors
+      PointerByReference start = new PointerByReference(LibRados.INSTANCE.rados_object_list_begin(this.ctx));
+      PointerByReference finish = new PointerByReference(LibRados.INSTANCE.rados_object_list_end(this.ctx));
+      try {
+         LibRados.INSTANCE.rados_object_list_slice(this.ctx, begin, end, new NativeLong(slice),
+               new NativeLong(slices), start, finish);
+      } finally {
+         LibRados.INSTANCE.rados_object_list_cursor_free(this.ctx, begin);
+         LibRados.INSTANCE.rados_object_list_cursor_free(this.ctx, end);
+      }
+      this.cursor = start;
+      this.finish = finish.getValue();
+   }
+
+   /**
+    * @return next chunk of names or {@code null} once the whole slice is listed
+    */
+   String[] next() throws RadosException {
+      while (LibRados.INSTANCE.rados_object_list_cursor_cmp(ctx, cursor.getValue(), finish) < 0) {
+         //the cursor is advanced in place
+         int count = LibRados.INSTANCE.rados_object_list(ctx, cursor.getValue(), finish, new NativeLong(batchSize),
+               null, new NativeLong(0), results, cursor);
+         if (count < 0) {
+            throw new RadosException("Unable to list objects", count);
+         }
+         if (count > 0) {
+            try {
+               return names(count);
+            } finally {
+               LibRados.INSTANCE.rados_object_list_free(new NativeLong(count), results);
+            }
+         }
+         //placement groups of the chunk were empty
+      }
+      return null;
+   }
+
+   private String[] names(int count) {
+      String[] names = new String[count];
+      for (int i = 0; i < count; i++) {
+         long offset = (long) i * ITEM_SIZE;
+         long length = Native.SIZE_T_SIZE == 8 ? results.getLong(offset) : results.getInt(offset);
+         Pointer name = results.getPointer(offset + Native.SIZE_T_SIZE);
+         names[i] = new String(name.getByteArray(0, (int) length), StandardCharsets.UTF_8);
+      }
+      return names;
+   }
+
+   @Override
+   public void close() {
+      LibRados.INSTANCE.rados_object_list_cursor_free(ctx, cursor.getValue());
+      LibRados.INSTANCE.rados_object_list_cursor_free(ctx, finish);
+   }
+
+}
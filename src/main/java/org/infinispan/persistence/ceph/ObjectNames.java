@@ -0,0 +1,72 @@
+package org.infinispan.persistence.ceph;
+
+/**
+ * Escaping of the object names mapped from the keys, so that entries never clash with the objects used internally by
+ * the store, see {@link ExpirationIndex#INTERNAL_OBJECT_PREFIX}, and their names are never taken for names with the
+ * generation or segment prefix, see {@link Generations} and {@link Segments}. A prefix is reserved only if the feature
+ * using it is enabled, otherwise names are used unchanged and the pool is read the same way as by the previous
+ * versions. Once a prefix is reserved, a mapped name starting with it, or with the escape prefix itself, is stored with
+ * the escape prefix.
+ *
+ * @since 9.0
+ */
+final class ObjectNames {
+
+   static final String ESCAPE_PREFIX = "~e~";
+
+   private final boolean internalObjects;
+   private final boolean generations;
+   private final boolean segments;
+
+   /**
+    * @param internalObjects whether the store keeps internal objects in the pool
+    * @param generations whether the names of the objects are prefixed by their generation
+    * @param segments whether the names of the objects are prefixed by their segment
+    */
+   ObjectNames(boolean internalObjects, boolean generations, boolean segments) {
+      this.internalObjects = internalObjects;
+      this.generations = generations;
+      this.segments = segments;
+   }
+
+   /**
+    * @return {@code true} if the store keeps internal objects in the pool
+    */
+   boolean hasInternalObjects() {
+      return internalObjects;
+   }
+
+   /**
+    * @return {@code true} if the object is used internally by the store and doesn't hold any cache entry
+    */
+   boolean isInternalObject(String objectName) {
+      return internalObjects && ExpirationIndex.isInternalObject(objectName);
+   }
+
+   /**
+    * @return object name of given name mapped from a key
+    */
+   String escape(String mapping) {
+      return isReserved(mapping) ? ESCAPE_PREFIX + mapping : mapping;
+   }
+
+   /**
+    * @return name mapped from the key of the entry stored in the object, see {@link #escape(String)}
+    */
+   String unescape(String objectName) {
+      return isEscaping() && objectName.startsWith(ESCAPE_PREFIX) ? objectName.substring(ESCAPE_PREFIX.length())
+            : objectName;
+   }
+
+   private boolean isEscaping() {
+      return internalObjects || generations || segments;
+   }
+
+   private boolean isReserved(String mapping) {
+      return isEscaping() && mapping.startsWith(ESCAPE_PREFIX)
+            || internalObjects && ExpirationIndex.isInternalObject(mapping)
+            || generations && Generations.generationOf(mapping) > 0
+            || segments && Segments.segmentOf(mapping) >= 0;
+   }
+
+}
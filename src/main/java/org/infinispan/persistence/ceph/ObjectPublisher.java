@@ -0,0 +1,188 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Publishes items derived from the objects of a Ceph pool. Every subscriber gets its own {@link EntryNames} listing,
+ * which is started on the first request and advanced only as far as the subscriber's demand requires: a new chunk of
+ * object names is listed once the previous one is consumed and each object is mapped to an item (typically fetched
+ * from the cluster) only when there is outstanding demand for it. Listing and mapping run on the given executor, never
+ * on the thread calling {@link Subscription#request(long)}. Cancelling the subscription stops the listing and releases
+ * it. Failures of the listing or of the mapping are signalled to the subscriber, a subscriber which has thrown from
+ * {@link Subscriber#onNext(Object)} is treated as if it cancelled the subscription.
+ *
+ * @since 9.0
+ */
+final class ObjectPublisher<T> implements Publisher<T> {
+
+   private final Supplier<EntryNames> listing;
+   private final Executor executor;
+   private final Mapper<T> mapper;
+
+   ObjectPublisher(Supplier<EntryNames> listing, Executor executor, Mapper<T> mapper) {
+      this.listing = listing;
+      this.executor = executor;
+      this.mapper = mapper;
+   }
+
+   interface Mapper<T> {
+      /**
+       * @param packed whether the name belongs to a packed entry, see {@link EntryNames#packed()}
+       * @return item published for given object or {@code null} if the object should be skipped
+       */
+      T map(String objectName, boolean packed);
+   }
+
+   @Override
+   public void subscribe(Subscriber<? super T> subscriber) {
+      Objects.requireNonNull(subscriber, "subscriber");
+      subscriber.onSubscribe(new ListingSubscription(subscriber));
+   }
+
+   private final class ListingSubscription implements Subscription, Runnable {
+
+      private final Subscriber<? super T> subscriber;
+      private final AtomicLong requested = new AtomicLong();
+      //number of drain requests, only the thread which moves it from 0 drains
+      private final AtomicInteger wip = new AtomicInteger();
+      private volatile boolean cancelled;
+      private volatile Throwable invalidRequest;
+
+      //accessed only by the draining thread
+      private boolean done;
+      private EntryNames names;
+      private String[] objects;
+      private int position;
+
+      ListingSubscription(Subscriber<? super T> subscriber) {
+         this.subscriber = subscriber;
+      }
+
+      @Override
+      public void request(long n) {
+         if (n <= 0) {
+            invalidRequest = new IllegalArgumentException(
+                  String.format("Number of requested items must be positive, was %d", n));
+         } else {
+            long current;
+            do {
+               current = requested.get();
+               if (current == Long.MAX_VALUE) {
+                  return;
+               }
+            } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+         }
+         drain();
+      }
+
+      @Override
+      public void cancel() {
+         cancelled = true;
+         //let the draining thread release the listing
+         drain();
+      }
+
+      private void drain() {
+         if (wip.getAndIncrement() == 0) {
+            executor.execute(this);
+         }
+      }
+
+      @Override
+      public void run() {
+         int missed = 1;
+         do {
+            if (!done) {
+               emit();
+            }
+            missed = wip.addAndGet(-missed);
+         } while (missed != 0);
+      }
+
+      private void emit() {
+         if (invalidRequest != null && !cancelled) {
+            terminate();
+            subscriber.onError(invalidRequest);
+            return;
+         }
+         long demand = requested.get();
+         long emitted = 0;
+         while (emitted != demand && !cancelled) {
+            T item;
+            try {
+               item = next();
+            } catch (Throwable t) {
+               terminate();
+               if (!cancelled) {
+                  subscriber.onError(t);
+               }
+               return;
+            }
+            if (item == null) {
+               terminate();
+               if (!cancelled) {
+                  subscriber.onComplete();
+               }
+               return;
+            }
+            try {
+               subscriber.onNext(item);
+            } catch (Throwable t) {
+               //the subscriber which has thrown must not be signalled anymore, see rule 2.13 of Reactive Streams
+               cancelled = true;
+               terminate();
+               return;
+            }
+            emitted++;
+         }
+         if (cancelled) {
+            terminate();
+            return;
+         }
+         if (emitted > 0 && demand != Long.MAX_VALUE) {
+            requested.addAndGet(-emitted);
+         }
+      }
+
+      /**
+       * @return next item or {@code null} if the whole pool was listed
+       */
+      private T next() throws Exception {
+         while (!cancelled) {
+            if (objects == null || position == objects.length) {
+               if (names == null) {
+                  names = listing.get();
+               }
+               objects = names.next();
+               if (objects == null) {
+                  return null;
+               }
+               position = 0;
+            }
+            T item = mapper.map(objects[position++], names.packed());
+            if (item != null) {
+               return item;
+            }
+         }
+         return null;
+      }
+
+      private void terminate() {
+         done = true;
+         objects = null;
+         if (names != null) {
+            names.close();
+            names = null;
+         }
+      }
+   }
+
+}
@@ -0,0 +1,135 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.ceph.rados.IoCTX;
+import com.ceph.rados.exceptions.RadosException;
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.NativeLongByReference;
+
+/**
+ * Compound read of one object: a range of its bytes, optionally together with its size or guarded by a comparison
+ * of bytes which were read before. The Java binding offers neither the stat nor the comparison within a read
+ * operation, so the read operation is built directly. All buffers the operation writes into are held by this
+ * instance until it's closed. The read is performed either synchronously or through {@link Completions}.
+ *
+ * @since 9.0
+ */
+final class ObjectRead implements AutoCloseable {
+
+   private static final int CEPH_ECANCELED = -125;
+   private static final int MAX_ERRNO = 4095;
+
+   private final Pointer op;
+   private final Memory buffer;
+   private final NativeLongByReference bytesRead = new NativeLongByReference();
+   private final IntByReference readResult = new IntByReference();
+   private LongByReference size;
+   private IntByReference statResult;
+   private final List<Memory> compared = new ArrayList<>();
+   private final List<IntByReference> compareResults = new ArrayList<>();
+
+   /**
+    * Queues the read of at most {@code length} bytes of the object from given offset.
+    */
+   ObjectRead(long offset, int length) {
+      buffer = new Memory(length);
+      op = LibRados.INSTANCE.rados_create_read_op();
+      LibRados.INSTANCE.rados_read_op_read(op, offset, new NativeLong(length), buffer, bytesRead, readResult);
+   }
+
+   /**
+    * Queues the stat of the object, so that its size is known once the read is done.
+    */
+   ObjectRead stat() {
+      size = new LongByReference();
+      statResult = new IntByReference();
+      LibRados.INSTANCE.rados_read_op_stat(op, size, new NativeLongByReference(), statResult);
+      return this;
+   }
+
+   /**
+    * Makes the read fail with {@link #isMismatch(int)} unless the object contains the same bytes at given offset as
+    * given array, e.g. to detect that the object was rewritten since its first part was read.
+    */
+   ObjectRead compare(byte[] expected, int offset, int length) {
+      Memory bytes = new Memory(length);
+      bytes.write(0, expected, offset, length);
+      IntByReference compareResult = new IntByReference();
+      LibRados.INSTANCE.rados_read_op_cmpext(op, bytes, new NativeLong(length), offset, compareResult);
+      compared.add(bytes);
+      compareResults.add(compareResult);
+      return this;
+   }
+
+   void operate(IoCTX ctx, String objectName, int flags) throws RadosException {
+      check(objectName, LibRados.INSTANCE.rados_read_op_operate(op, ctx.getPointer(), objectName, flags));
+   }
+
+   /**
+    * Submits the read, the future completes once it's done. The read must not be closed before.
+    *
+    * @return future completed with the {@link RadosException} of a failed read
+    */
+   CompletableFuture<Void> operateAsync(Completions completions, IoCTX ctx, String objectName, int flags) {
+      return completions.submit(objectName,
+            completion -> LibRados.INSTANCE.rados_aio_read_op_operate(op, ctx.getPointer(), completion, objectName,
+                  flags),
+            result -> {
+               check(objectName, result);
+               return null;
+            }, this);
+   }
+
+   private void check(String objectName, int result) throws RadosException {
+      if (result < 0) {
+         throw new RadosException(String.format("Unable to read %s", objectName), result);
+      }
+      check(objectName, readResult);
+      if (statResult != null) {
+         check(objectName, statResult);
+      }
+      for (IntByReference compareResult : compareResults) {
+         check(objectName, compareResult);
+      }
+   }
+
+   private static void check(String objectName, IntByReference result) throws RadosException {
+      if (result.getValue() < 0) {
+         throw new RadosException(String.format("Unable to read %s", objectName), result.getValue());
+      }
+   }
+
+   /**
+    * @return bytes read
+    */
+   byte[] bytes() {
+      return buffer.getByteArray(0, bytesRead.getValue().intValue());
+   }
+
+   /**
+    * @return size of the whole object, if requested by {@link #stat()}
+    */
+   long size() {
+      return size.getValue();
+   }
+
+   /**
+    * @return whether given return value of a failed read means the compared bytes differ
+    */
+   static boolean isMismatch(int result) {
+      return result <= -MAX_ERRNO || result == CEPH_ECANCELED;
+   }
+
+   @Override
+   public void close() {
+      LibRados.INSTANCE.rados_release_read_op(op);
+   }
+
+}
@@ -0,0 +1,552 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.ceph.rados.exceptions.RadosException;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.NativeLongByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Small entries packed into a fixed number of bucket objects, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#packedBuckets()}. The bucket is chosen by
+ * the hash of the object name the entry would have otherwise. Every entry is kept in the omap of its bucket, keyed by
+ * the object name, with its {@link EntryFormat} as the value, so that the names are recorded once and listed together
+ * with the entries. The omap functions are not exposed by the Java binding, so they are called through
+ * {@link LibRados}.
+ * <p>
+ * Writes and removes of entries in the same bucket which are issued concurrently are applied by one compound
+ * operation: the first caller applies the operations queued meanwhile, the others wait for it. The previous records of
+ * the names are read by one operation before, so that callers learn which {@link Layout} the entry had.
+ * <p>
+ * Entries stored in standalone objects are marked in their bucket by an empty record, written concurrently with the
+ * object, which also replaces any packed entry of the name. A packed write thus has to remove the standalone object
+ * only if it replaced the mark.
+ *
+ * @since 9.0
+ */
+final class PackedEntries {
+
+   /**
+    * Layout of an entry before it was written or removed.
+    */
+   enum Layout {
+      NONE, PACKED, STANDALONE
+   }
+
+   private static final String BUCKET_PREFIX = ExpirationIndex.INTERNAL_OBJECT_PREFIX + "packed_";
+   /**
+    * Maximum number of names written or removed by one operation.
+    */
+   private static final int MAX_BATCH_SIZE = 256;
+   private static final byte[] STANDALONE_MARK = new byte[0];
+
+   private static final int CEPH_ENOENT = -2;
+   private static final int CEPH_ECANCELED = -125;
+   private static final byte LIBRADOS_CMPXATTR_OP_EQ = 1;
+
+   private final ConnectionPool connections;
+   private final Completions completions;
+   private final int buckets;
+   private final int valueThreshold;
+   private final Batch[] batches;
+
+   PackedEntries(ConnectionPool connections, Completions completions, int buckets, int valueThreshold) {
+      this.connections = connections;
+      this.completions = completions;
+      this.buckets = buckets;
+      this.valueThreshold = valueThreshold;
+      this.batches = new Batch[buckets];
+      for (int bucket = 0; bucket < buckets; bucket++) {
+         batches[bucket] = new Batch(bucketObject(bucket));
+      }
+   }
+
+   int buckets() {
+      return buckets;
+   }
+
+   /**
+    * @param valueLength length of the marshalled value
+    * @return {@code true} if the entry is small enough to be packed
+    */
+   boolean accepts(int valueLength) {
+      return valueLength <= valueThreshold;
+   }
+
+   /**
+    * @return encoded entry stored under given object name or {@code null} if there is no such packed entry
+    */
+   byte[] read(String objectName) throws RadosException {
+      return entry(readRecords(bucketObject(objectName), Collections.singletonList(objectName)).get(objectName));
+   }
+
+   /**
+    * Asynchronous variant of {@link #read(String)}, the bucket is read through {@link Completions}.
+    *
+    * @return future encoded entry, {@code null} if there is no such packed entry
+    */
+   CompletableFuture<byte[]> readAsync(String objectName) {
+      return recordAsync(objectName).thenApply(PackedEntries::entry);
+   }
+
+   /**
+    * @return future layout of the entry stored under given object name
+    */
+   CompletableFuture<Layout> layoutAsync(String objectName) {
+      return recordAsync(objectName).thenApply(PackedEntries::layout);
+   }
+
+   private CompletableFuture<byte[]> recordAsync(String objectName) {
+      String bucket = bucketObject(objectName);
+      ClusterConnections.Lease lease = connections.lease(bucket);
+      Pointer op = LibRados.INSTANCE.rados_create_read_op();
+      CompletableFuture<byte[]> read;
+      try {
+         PointerByReference iterator = new PointerByReference();
+         IntByReference result = new IntByReference();
+         LibRados.INSTANCE.rados_read_op_omap_get_vals_by_keys(op, new String[] { objectName }, new NativeLong(1),
+               iterator, result);
+         read = completions.submit(bucket,
+               completion -> LibRados.INSTANCE.rados_aio_read_op_operate(op, lease.ctx().getPointer(), completion,
+                     bucket, 0),
+               operateResult -> records(operateResult, bucket, iterator, result).get(objectName), iterator, result);
+      } catch (RuntimeException e) {
+         LibRados.INSTANCE.rados_release_read_op(op);
+         lease.close();
+         throw e;
+      }
+      return read.whenComplete((record, e) -> {
+         LibRados.INSTANCE.rados_release_read_op(op);
+         lease.close();
+      });
+   }
+
+   /**
+    * @return encoded entry of given record or {@code null} if there is no record or it's a mark
+    */
+   private static byte[] entry(byte[] record) {
+      return record == null || isMark(record) ? null : record;
+   }
+
+   /**
+    * @return layout of the entry holding given record, {@link Layout#NONE} if there is no record
+    */
+   private static Layout layout(byte[] record) {
+      return record == null ? Layout.NONE : isMark(record) ? Layout.STANDALONE : Layout.PACKED;
+   }
+
+   /**
+    * Adds the write of a packed entry to the operation of its bucket. Unlike {@link #write(String, byte[])}, the
+    * previous layout is not read, see {@link #layoutAsync(String)}.
+    */
+   void write(CompoundWrites writes, String objectName, byte[] entry, Object owner) {
+      writes.setRecord(bucketObject(objectName), objectName, entry, owner);
+   }
+
+   /**
+    * Adds the mark of a standalone object, see {@link #markStandalone(String)}, to the operation of its bucket.
+    */
+   void markStandalone(CompoundWrites writes, String objectName, Object owner) {
+      writes.setRecord(bucketObject(objectName), objectName, STANDALONE_MARK, owner);
+   }
+
+   /**
+    * Adds the removal of the record of given name, packed entry or mark, to the operation of its bucket.
+    */
+   void remove(CompoundWrites writes, String objectName, Object owner) {
+      writes.removeRecord(bucketObject(objectName), objectName, owner);
+   }
+
+   /**
+    * @return layout of the entry before it was written
+    */
+   Layout write(String objectName, byte[] entry) throws RadosException {
+      return submit(objectName, entry);
+   }
+
+   /**
+    * @return layout of the entry before it was removed
+    */
+   Layout remove(String objectName) throws RadosException {
+      return submit(objectName, null);
+   }
+
+   /**
+    * Removes the record of given name only if it still holds the expected value, e.g. an expired entry which may be
+    * written again concurrently. The operation is not batched.
+    *
+    * @param expected encoded entry or empty array to remove the mark of a standalone object
+    * @return {@code true} if the record was removed
+    */
+   boolean remove(String objectName, byte[] expected) throws RadosException {
+      String bucket = bucketObject(objectName);
+      //librados writes the result of the comparison when the operation is performed
+      IntByReference comparison = new IntByReference();
+      Pointer op = LibRados.INSTANCE.rados_create_write_op();
+      try {
+         LibRados.INSTANCE.rados_write_op_omap_cmp(op, objectName, LIBRADOS_CMPXATTR_OP_EQ, expected,
+               new NativeLong(expected.length), comparison);
+         LibRados.INSTANCE.rados_write_op_omap_rm_keys(op, new String[] { objectName }, new NativeLong(1));
+         int result;
+         try (ClusterConnections.Lease lease = connections.lease(bucket)) {
+            result = LibRados.INSTANCE.rados_write_op_operate(op, lease.ctx().getPointer(), bucket, null, 0);
+         }
+         if (result == CEPH_ECANCELED || result == CEPH_ENOENT) {
+            return false;
+         }
+         check(result, bucket);
+         //the record is removed only if it holds the expected value
+         return comparison.getValue() == 0;
+      } finally {
+         LibRados.INSTANCE.rados_release_write_op(op);
+      }
+   }
+
+   /**
+    * Removes the mark of a standalone object which was removed, unless the name was written since.
+    */
+   void removeMark(String objectName) throws RadosException {
+      remove(objectName, STANDALONE_MARK);
+   }
+
+   /**
+    * Starts marking given name as stored in a standalone object, which removes its packed entry, if any. The returned
+    * mark has to be awaited once the standalone object is written.
+    */
+   Mark markStandalone(String objectName) throws RadosException {
+      String bucket = bucketObject(objectName);
+      ClusterConnections.Lease lease = connections.lease(bucket);
+      Pointer op = LibRados.INSTANCE.rados_create_write_op();
+      try {
+         setRecords(op, Collections.singletonMap(objectName, STANDALONE_MARK));
+         Pointer completion = AsyncWrites.createCompletion(bucket);
+         int result = LibRados.INSTANCE.rados_aio_write_op_operate(op, lease.ctx().getPointer(), completion, bucket,
+               null, 0);
+         if (result < 0) {
+            LibRados.INSTANCE.rados_aio_release(completion);
+            throw new RadosException(String.format("Unable to submit write of %s", bucket), result);
+         }
+         return new Mark(lease, op, completion, bucket);
+      } catch (RadosException | RuntimeException e) {
+         LibRados.INSTANCE.rados_release_write_op(op);
+         lease.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Lists the records of given bucket in the order of their names.
+    *
+    * @param startAfter name after which the listing starts, empty to start from the first one
+    * @return at most {@code max} records, an empty value marks an entry stored in a standalone object, see
+    *         {@link #isMark(byte[])}
+    */
+   Map<String, byte[]> list(int bucket, String startAfter, int max) throws RadosException {
+      String bucketObject = bucketObject(bucket);
+      Pointer op = LibRados.INSTANCE.rados_create_read_op();
+      try {
+         PointerByReference iterator = new PointerByReference();
+         IntByReference result = new IntByReference();
+         LibRados.INSTANCE.rados_read_op_omap_get_vals(op, startAfter, "", max, iterator, result);
+         return readRecords(op, bucketObject, iterator, result);
+      } finally {
+         LibRados.INSTANCE.rados_release_read_op(op);
+      }
+   }
+
+   /**
+    * @return {@code true} if the listed record only marks an entry stored in a standalone object
+    */
+   static boolean isMark(byte[] record) {
+      return record.length == 0;
+   }
+
+   private Layout submit(String objectName, byte[] entry) throws RadosException {
+      Batch batch = batches[bucketOf(objectName)];
+      Operation operation = new Operation(objectName, entry);
+      if (batch.add(operation)) {
+         batch.apply();
+      }
+      try {
+         return operation.result.join();
+      } catch (CompletionException e) {
+         if (e.getCause() instanceof RadosException) {
+            throw (RadosException) e.getCause();
+         }
+         throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+   }
+
+   private Map<String, byte[]> readRecords(String bucketObject, Collection<String> names) throws RadosException {
+      String[] keys = names.toArray(new String[names.size()]);
+      Pointer op = LibRados.INSTANCE.rados_create_read_op();
+      try {
+         PointerByReference iterator = new PointerByReference();
+         IntByReference result = new IntByReference();
+         LibRados.INSTANCE.rados_read_op_omap_get_vals_by_keys(op, keys, new NativeLong(keys.length), iterator,
+               result);
+         return readRecords(op, bucketObject, iterator, result);
+      } finally {
+         LibRados.INSTANCE.rados_release_read_op(op);
+      }
+   }
+
+   private Map<String, byte[]> readRecords(Pointer op, String bucketObject, PointerByReference iterator,
+         IntByReference result) throws RadosException {
+      int operateResult;
+      try (ClusterConnections.Lease lease = connections.lease(bucketObject)) {
+         operateResult = LibRados.INSTANCE.rados_read_op_operate(op, lease.ctx().getPointer(), bucketObject, 0);
+      }
+      return records(operateResult, bucketObject, iterator, result);
+   }
+
+   /**
+    * Reads the records returned by a performed read operation and ends its iterator.
+    *
+    * @param operateResult return value of the read operation
+    */
+   static Map<String, byte[]> records(int operateResult, String bucketObject, PointerByReference iterator,
+         IntByReference result) throws RadosException {
+      Map<String, byte[]> records = new LinkedHashMap<>();
+      if (iterator.getValue() == null) {
+         if (operateResult != CEPH_ENOENT) {
+            check(operateResult, bucketObject);
+         }
+         return records;
+      }
+      try {
+         if (operateResult == CEPH_ENOENT) {
+            return records;
+         }
+         check(operateResult, bucketObject);
+         check(result.getValue(), bucketObject);
+         PointerByReference key = new PointerByReference();
+         PointerByReference value = new PointerByReference();
+         NativeLongByReference length = new NativeLongByReference();
+         while (true) {
+            check(LibRados.INSTANCE.rados_omap_get_next(iterator.getValue(), key, value, length), bucketObject);
+            if (key.getValue() == null) {
+               return records;
+            }
+            int valueLength = (int) length.getValue().longValue();
+            records.put(key.getValue().getString(0),
+                  valueLength == 0 ? STANDALONE_MARK : value.getValue().getByteArray(0, valueLength));
+         }
+      } finally {
+         LibRados.INSTANCE.rados_omap_get_end(iterator.getValue());
+      }
+   }
+
+   /**
+    * Adds setting of given records to the operation, librados copies the names and values.
+    */
+   static void setRecords(Pointer op, Map<String, byte[]> records) {
+      String[] keys = new String[records.size()];
+      Pointer[] values = new Pointer[records.size()];
+      Memory lengths = new Memory((long) records.size() * Native.SIZE_T_SIZE);
+      int i = 0;
+      for (Map.Entry<String, byte[]> record : records.entrySet()) {
+         byte[] value = record.getValue();
+         keys[i] = record.getKey();
+         if (value.length > 0) {
+            Memory memory = new Memory(value.length);
+            memory.write(0, value, 0, value.length);
+            values[i] = memory;
+         }
+         if (Native.SIZE_T_SIZE == 8) {
+            lengths.setLong(8L * i, value.length);
+         } else {
+            lengths.setInt(4L * i, value.length);
+         }
+         i++;
+      }
+      LibRados.INSTANCE.rados_write_op_omap_set(op, keys, values, lengths, new NativeLong(keys.length));
+   }
+
+   private static void check(int result, String bucketObject) throws RadosException {
+      if (result < 0) {
+         throw new RadosException(String.format("Operation on %s has failed", bucketObject), result);
+      }
+   }
+
+   private int bucketOf(String objectName) {
+      return (objectName.hashCode() & Integer.MAX_VALUE) % buckets;
+   }
+
+   private String bucketObject(String objectName) {
+      return bucketObject(bucketOf(objectName));
+   }
+
+   private static String bucketObject(int bucket) {
+      return BUCKET_PREFIX + bucket;
+   }
+
+   /**
+    * Pending mark of a standalone object, see {@link #markStandalone(String)}.
+    */
+   static final class Mark {
+
+      private final ClusterConnections.Lease lease;
+      private final Pointer op;
+      private final Pointer completion;
+      private final String bucketObject;
+
+      private Mark(ClusterConnections.Lease lease, Pointer op, Pointer completion, String bucketObject) {
+         this.lease = lease;
+         this.op = op;
+         this.completion = completion;
+         this.bucketObject = bucketObject;
+      }
+
+      /**
+       * Waits until the bucket is marked.
+       */
+      void await() throws RadosException {
+         try {
+            AsyncWrites.await(completion, bucketObject);
+         } finally {
+            LibRados.INSTANCE.rados_release_write_op(op);
+            lease.close();
+         }
+      }
+
+   }
+
+   /**
+    * Write or remove of a packed entry waiting for its batch.
+    */
+   private static final class Operation {
+
+      final String objectName;
+      /**
+       * Encoded entry or {@code null} for remove.
+       */
+      final byte[] entry;
+      final CompletableFuture<Layout> result = new CompletableFuture<>();
+
+      Operation(String objectName, byte[] entry) {
+         this.objectName = objectName;
+         this.entry = entry;
+      }
+
+   }
+
+   /**
+    * Operations queued for one bucket.
+    */
+   private final class Batch {
+
+      private final String bucketObject;
+      //guarded by this
+      private final Deque<Operation> queue = new ArrayDeque<>();
+      private boolean applying;
+
+      Batch(String bucketObject) {
+         this.bucketObject = bucketObject;
+      }
+
+      /**
+       * @return {@code true} if the caller has to apply the queued operations
+       */
+      synchronized boolean add(Operation operation) {
+         queue.add(operation);
+         if (applying) {
+            return false;
+         }
+         applying = true;
+         return true;
+      }
+
+      /**
+       * Applies queued operations until the queue is empty.
+       */
+      void apply() {
+         List<Operation> operations;
+         while ((operations = take()) != null) {
+            try {
+               apply(operations);
+            } catch (RadosException | RuntimeException e) {
+               for (Operation operation : operations) {
+                  operation.result.completeExceptionally(e);
+               }
+            }
+         }
+      }
+
+      /**
+       * @return next operations, at most one for every name so that the operations of a name are applied in order,
+       *         or {@code null} if the queue is empty
+       */
+      private synchronized List<Operation> take() {
+         if (queue.isEmpty()) {
+            applying = false;
+            return null;
+         }
+         Map<String, Operation> operations = new LinkedHashMap<>();
+         for (Iterator<Operation> i = queue.iterator(); i.hasNext() && operations.size() < MAX_BATCH_SIZE;) {
+            Operation operation = i.next();
+            if (!operations.containsKey(operation.objectName)) {
+               operations.put(operation.objectName, operation);
+               i.remove();
+            }
+         }
+         return new ArrayList<>(operations.values());
+      }
+
+      private void apply(List<Operation> operations) throws RadosException {
+         List<String> names = new ArrayList<>(operations.size());
+         for (Operation operation : operations) {
+            names.add(operation.objectName);
+         }
+         Map<String, byte[]> previous = readRecords(bucketObject, names);
+         Map<String, byte[]> writes = new LinkedHashMap<>();
+         List<String> removes = new ArrayList<>();
+         for (Operation operation : operations) {
+            if (operation.entry != null) {
+               writes.put(operation.objectName, operation.entry);
+            } else if (previous.containsKey(operation.objectName)) {
+               //names which don't exist are not removed, so that the bucket is not touched by their deletes
+               removes.add(operation.objectName);
+            }
+         }
+         if (!writes.isEmpty() || !removes.isEmpty()) {
+            Pointer op = LibRados.INSTANCE.rados_create_write_op();
+            try {
+               if (!writes.isEmpty()) {
+                  setRecords(op, writes);
+               }
+               if (!removes.isEmpty()) {
+                  LibRados.INSTANCE.rados_write_op_omap_rm_keys(op, removes.toArray(new String[removes.size()]),
+                        new NativeLong(removes.size()));
+               }
+               try (ClusterConnections.Lease lease = connections.lease(bucketObject)) {
+                  check(LibRados.INSTANCE.rados_write_op_operate(op, lease.ctx().getPointer(), bucketObject, null, 0),
+                        bucketObject);
+               }
+            } finally {
+               LibRados.INSTANCE.rados_release_write_op(op);
+            }
+         }
+         for (Operation operation : operations) {
+            operation.result.complete(layout(previous.get(operation.objectName)));
+         }
+      }
+
+   }
+
+}
@@ -0,0 +1,60 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Map;
+
+import org.infinispan.marshall.core.MarshalledEntry;
+
+/**
+ * Modifications of a transaction staged by {@link CephStore#prepareWithModifications} until the transaction is
+ * committed or rolled back.
+ *
+ * @since 9.0
+ */
+final class PreparedTransaction<K, V> {
+
+   private final Map<Object, Modification<K, V>> modifications;
+   private final byte[] log;
+
+   /**
+    * @param log encoded intent log of the modifications or {@code null} if the intent log is disabled
+    */
+   PreparedTransaction(Map<Object, Modification<K, V>> modifications, byte[] log) {
+      this.modifications = modifications;
+      this.log = log;
+   }
+
+   /**
+    * @return modifications by their keys
+    */
+   Map<Object, Modification<K, V>> modifications() {
+      return modifications;
+   }
+
+   byte[] log() {
+      return log;
+   }
+
+   /**
+    * Write or delete of one key staged by a transaction.
+    */
+   static final class Modification<K, V> {
+
+      private final MarshalledEntry<? extends K, ? extends V> entry;
+
+      Modification(MarshalledEntry<? extends K, ? extends V> entry) {
+         this.entry = entry;
+      }
+
+      /**
+       * @return written entry or {@code null} if the key is deleted
+       */
+      MarshalledEntry<? extends K, ? extends V> entry() {
+         return entry;
+      }
+
+      boolean isWrite() {
+         return entry != null;
+      }
+   }
+
+}
@@ -0,0 +1,157 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.ceph.rados.exceptions.RadosException;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Index of the objects of every segment in the segmented layout, see {@link Segments}. Every segment has its own index
+ * object and names of the objects written into the segment are the keys of its omap, so that removal of a segment
+ * reads only the names of its objects instead of listing the whole pool.
+ * <p>
+ * Names are recorded before the objects are written and they are never removed by deletes, the index may hold names of
+ * objects which don't exist anymore. The index object is removed together with its segment. Objects written before the
+ * index was introduced are not recorded, so the index is used only once it has been completed by a listing of the
+ * pool, which is marked by a control object.
+ *
+ * @since 9.0
+ */
+final class SegmentIndex {
+
+   private static final String INDEX_PREFIX = ExpirationIndex.INTERNAL_OBJECT_PREFIX + "segment_";
+   private static final String COMPLETE_OBJECT = ExpirationIndex.INTERNAL_OBJECT_PREFIX + "segment_complete";
+   private static final byte[] NO_VALUE = new byte[0];
+
+   private static final int CEPH_ENOENT = -2;
+
+   private final ConnectionPool connections;
+   private final Completions completions;
+
+   SegmentIndex(ConnectionPool connections, Completions completions) {
+      this.connections = connections;
+      this.completions = completions;
+   }
+
+   /**
+    * Records the object in the index of its segment, objects without the segment prefix are ignored.
+    */
+   void add(String objectName) throws RadosException {
+      String indexObject = indexObject(objectName);
+      if (indexObject == null) {
+         return;
+      }
+      Pointer op = LibRados.INSTANCE.rados_create_write_op();
+      try {
+         PackedEntries.setRecords(op, Collections.singletonMap(objectName, NO_VALUE));
+         int result;
+         try (ClusterConnections.Lease lease = connections.lease(indexObject)) {
+            result = LibRados.INSTANCE.rados_write_op_operate(op, lease.ctx().getPointer(), indexObject, null, 0);
+         }
+         if (result < 0) {
+            throw new RadosException(String.format("Unable to index %s", objectName), result);
+         }
+      } finally {
+         LibRados.INSTANCE.rados_release_write_op(op);
+      }
+   }
+
+   /**
+    * Asynchronous variant of {@link #add(String)}, the index is written through {@link Completions}.
+    */
+   CompletableFuture<Void> addAsync(String objectName) {
+      CompoundWrites writes = new CompoundWrites();
+      add(writes, objectName, objectName);
+      if (writes.isEmpty()) {
+         return CompletableFuture.completedFuture(null);
+      }
+      return writes.submit(connections, completions, false).thenApply(failures -> {
+         Throwable failure = failures.get(objectName);
+         if (failure != null) {
+            throw new CompletionException(failure);
+         }
+         return null;
+      });
+   }
+
+   /**
+    * Adds the record of {@link #add(String)} to the operation of the index object.
+    */
+   void add(CompoundWrites writes, String objectName, Object owner) {
+      String indexObject = indexObject(objectName);
+      if (indexObject != null) {
+         writes.setRecord(indexObject, objectName, NO_VALUE, owner);
+      }
+   }
+
+   /**
+    * @return up to {@code max} names recorded in the index of given segment, following {@code startAfter} in the
+    *         order of the omap keys
+    */
+   String[] names(int segment, String startAfter, int max) throws RadosException {
+      String indexObject = INDEX_PREFIX + segment;
+      Pointer op = LibRados.INSTANCE.rados_create_read_op();
+      try {
+         PointerByReference iterator = new PointerByReference();
+         IntByReference result = new IntByReference();
+         LibRados.INSTANCE.rados_read_op_omap_get_vals(op, startAfter, "", max, iterator, result);
+         int operateResult;
+         try (ClusterConnections.Lease lease = connections.lease(indexObject)) {
+            operateResult = LibRados.INSTANCE.rados_read_op_operate(op, lease.ctx().getPointer(), indexObject, 0);
+         }
+         Map<String, byte[]> records = PackedEntries.records(operateResult, indexObject, iterator, result);
+         return records.keySet().toArray(new String[records.size()]);
+      } finally {
+         LibRados.INSTANCE.rados_release_read_op(op);
+      }
+   }
+
+   void remove(int segment) throws RadosException {
+      String indexObject = INDEX_PREFIX + segment;
+      try (ClusterConnections.Lease lease = connections.lease(indexObject)) {
+         lease.ctx().remove(indexObject);
+      } catch (RadosException e) {
+         if (e.getReturnValue() != CEPH_ENOENT) {
+            throw e;
+         }
+      }
+   }
+
+   /**
+    * @return {@code true} if all objects of the pool are recorded, see {@link #markComplete()}
+    */
+   boolean isComplete() throws RadosException {
+      try (ClusterConnections.Lease lease = connections.lease(COMPLETE_OBJECT)) {
+         lease.ctx().stat(COMPLETE_OBJECT);
+         return true;
+      } catch (RadosException e) {
+         if (e.getReturnValue() == CEPH_ENOENT) {
+            return false;
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Marks the index complete, once the objects written before the index was introduced were recorded.
+    */
+   void markComplete() throws RadosException {
+      try (ClusterConnections.Lease lease = connections.lease(COMPLETE_OBJECT)) {
+         lease.ctx().writeFull(COMPLETE_OBJECT, NO_VALUE, 0);
+      }
+   }
+
+   /**
+    * @return name of the index object of the segment of given object or {@code null} if it has no segment prefix
+    */
+   private static String indexObject(String objectName) {
+      int segment = Segments.segmentOf(Generations.stripPrefix(objectName));
+      return segment < 0 ? null : INDEX_PREFIX + segment;
+   }
+
+}
@@ -0,0 +1,54 @@
+package org.infinispan.persistence.ceph;
+
+/**
+ * Naming of the objects in the segmented layout, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#segmented()}. Entries of segment
+ * {@code N} are stored in objects named {@code ~sN~<key>}, so that the segment of an object is known from its name
+ * without reading the object or unmarshalling the key. In {@code GENERATION} clear mode the segment prefix follows
+ * the generation prefix.
+ *
+ * @since 9.0
+ */
+final class Segments {
+
+   private static final String PREFIX_START = "~s";
+   private static final char PREFIX_END = '~';
+
+   private Segments() {
+   }
+
+   static String prefix(int segment) {
+      return PREFIX_START + segment + PREFIX_END;
+   }
+
+   /**
+    * @return segment encoded in the object name prefix, -1 for objects without the prefix
+    */
+   static int segmentOf(String objectName) {
+      if (!objectName.startsWith(PREFIX_START)) {
+         return -1;
+      }
+      int end = objectName.indexOf(PREFIX_END, PREFIX_START.length());
+      if (end <= PREFIX_START.length()) {
+         return -1;
+      }
+      int segment = 0;
+      for (int i = PREFIX_START.length(); i < end; i++) {
+         char c = objectName.charAt(i);
+         if (c < '0' || c > '9') {
+            return -1;
+         }
+         segment = segment * 10 + (c - '0');
+      }
+      return segment;
+   }
+
+   /**
+    * @return object name without the segment prefix
+    */
+   static String stripPrefix(String objectName) {
+      return segmentOf(objectName) < 0 ? objectName
+            : objectName.substring(objectName.indexOf(PREFIX_END, PREFIX_START.length()) + 1);
+   }
+
+}
@@ -0,0 +1,100 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.infinispan.persistence.spi.PersistenceException;
+
+/**
+ * Merges concurrent fetches of the same object: the first caller performs the fetch and all callers which arrive
+ * while it's in flight wait for its result instead of issuing their own reads. If the fetch fails, every waiting
+ * caller gets a {@link PersistenceException} caused by the failure.
+ * <p>
+ * A fetch which is in flight while the object is written or removed may return either the previous or the new state,
+ * so the writer calls {@link #forget(String)} once the modification is complete. Callers arriving afterwards never
+ * join a fetch which began before the modification.
+ *
+ * @since 9.0
+ */
+final class SingleFlight<T> {
+
+   private final ConcurrentMap<String, CompletableFuture<T>> flights = new ConcurrentHashMap<>();
+
+   /**
+    * @return result of the fetch of given object, either performed by the calling thread or by a concurrent caller
+    */
+   T fetch(String objectName, Supplier<T> fetch) throws PersistenceException {
+      CompletableFuture<T> flight = new CompletableFuture<>();
+      CompletableFuture<T> running = flights.putIfAbsent(objectName, flight);
+      if (running != null) {
+         return join(running);
+      }
+      try {
+         T result = fetch.get();
+         flight.complete(result);
+         return result;
+      } catch (RuntimeException | Error e) {
+         flight.completeExceptionally(e);
+         throw e;
+      } finally {
+         flights.remove(objectName, flight);
+      }
+   }
+
+   /**
+    * Asynchronous variant of {@link #fetch(String, Supplier)}, the fetch is started by the calling thread if none is
+    * in flight. Callers joining a fetch get a dependent stage, so they can't complete the shared one.
+    *
+    * @return future result of the fetch of given object
+    */
+   CompletableFuture<T> fetchAsync(String objectName, Supplier<CompletableFuture<T>> fetch) {
+      CompletableFuture<T> flight = new CompletableFuture<>();
+      CompletableFuture<T> running = flights.putIfAbsent(objectName, flight);
+      if (running != null) {
+         return running.thenApply(Function.identity());
+      }
+      CompletableFuture<T> result;
+      try {
+         result = fetch.get();
+      } catch (RuntimeException | Error e) {
+         flights.remove(objectName, flight);
+         flight.completeExceptionally(e);
+         throw e;
+      }
+      result.whenComplete((value, failure) -> {
+         flights.remove(objectName, flight);
+         if (failure != null) {
+            flight.completeExceptionally(failure);
+         } else {
+            flight.complete(value);
+         }
+      });
+      return flight.thenApply(Function.identity());
+   }
+
+   /**
+    * Stops callers from joining the fetch of given object which is in flight, if any.
+    */
+   void forget(String objectName) {
+      flights.remove(objectName);
+   }
+
+   void forgetAll() {
+      flights.clear();
+   }
+
+   private static <T> T join(CompletableFuture<T> flight) throws PersistenceException {
+      try {
+         return flight.join();
+      } catch (CompletionException e) {
+         //every waiting caller gets its own exception, the original one is owned by the fetching thread
+         Throwable cause = e.getCause();
+         throw new PersistenceException(cause.getMessage(), cause);
+      }
+   }
+
+}
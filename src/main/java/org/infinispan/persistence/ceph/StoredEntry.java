@@ -0,0 +1,179 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.metadata.EmbeddedMetadata;
+import org.infinispan.metadata.InternalMetadata;
+import org.infinispan.metadata.Metadata;
+import org.infinispan.metadata.impl.InternalMetadataImpl;
+
+/**
+ * Entry fetched from a single Ceph object: its metadata and, if it was requested, the marshalled value and key. The
+ * value and key are kept as slices of the buffer read from the cluster to avoid copying them before unmarshalling.
+ * Chunked values are kept as the list of the chunks, they are never copied into one contiguous buffer. Metadata is kept as
+ * primitives and {@link InternalMetadata} instance is created only when the entry is handed over to Infinispan.
+ *
+ * @since 9.0
+ */
+final class StoredEntry {
+
+   private final boolean hasMetadata;
+   private final long lifespan;
+   private final long maxIdle;
+   private final long created;
+   private final long lastUsed;
+   private final byte[] buffer;
+   private final int keyOffset;
+   private final int keyLength;
+   private final int valueOffset;
+   private final int valueLength;
+   private final int codec;
+   private final ChunkManifest manifest;
+   private final byte[][] chunks;
+
+   StoredEntry(boolean hasMetadata, long lifespan, long maxIdle, long created, long lastUsed, byte[] buffer,
+         int keyOffset, int keyLength, int valueOffset, int valueLength, int codec, ChunkManifest manifest,
+         byte[][] chunks) {
+      this.hasMetadata = hasMetadata;
+      this.lifespan = lifespan;
+      this.maxIdle = maxIdle;
+      this.created = created;
+      this.lastUsed = lastUsed;
+      this.buffer = buffer;
+      this.keyOffset = keyOffset;
+      this.keyLength = keyLength;
+      this.valueOffset = valueOffset;
+      this.valueLength = valueLength;
+      this.codec = codec;
+      this.manifest = manifest;
+      this.chunks = chunks;
+   }
+
+   /**
+    * Creates entry from the buffer which starts with the {@link EntryFormat} header.
+    *
+    * @param keepBuffer whether the buffer holding the key and value should be kept
+    */
+   static StoredEntry fromHeader(byte[] bytes, int length, boolean keepBuffer) {
+      int valueOffset = EntryFormat.valueOffset(bytes);
+      return new StoredEntry(EntryFormat.hasMetadata(bytes), EntryFormat.lifespan(bytes), EntryFormat.maxIdle(bytes),
+            EntryFormat.created(bytes), EntryFormat.lastUsed(bytes), keepBuffer ? bytes : null,
+            EntryFormat.keyOffset(bytes), EntryFormat.keyLength(bytes), valueOffset, Math.max(0, length - valueOffset),
+            EntryFormat.codec(bytes), EntryFormat.manifest(bytes), null);
+   }
+
+   /**
+    * @return copy of this entry with the value held in given chunks
+    */
+   StoredEntry withChunks(byte[][] chunks) {
+      return new StoredEntry(hasMetadata, lifespan, maxIdle, created, lastUsed, buffer, keyOffset, keyLength,
+            valueOffset, valueLength, codec, manifest, chunks);
+   }
+
+   /**
+    * @return copy of this entry used at given time, unless it was used later
+    */
+   StoredEntry withLastUsed(long lastUsed) {
+      return new StoredEntry(hasMetadata, lifespan, maxIdle, created, Math.max(this.lastUsed, lastUsed), buffer,
+            keyOffset, keyLength, valueOffset, valueLength, codec, manifest, chunks);
+   }
+
+   /**
+    * @return creation time of the entry or -1 if it's unknown
+    */
+   long created() {
+      return hasMetadata ? created : -1;
+   }
+
+   InternalMetadata metadata() {
+      return metadata(lastUsed);
+   }
+
+   /**
+    * @param lastUsed time of the last use of the entry, which may be later than the one stored
+    */
+   InternalMetadata metadata(long lastUsed) {
+      if (!hasMetadata) {
+         return null;
+      }
+      Metadata metadata = new EmbeddedMetadata.Builder().lifespan(lifespan, TimeUnit.MILLISECONDS)
+            .maxIdle(maxIdle, TimeUnit.MILLISECONDS).build();
+      return new InternalMetadataImpl(metadata, created, Math.max(this.lastUsed, lastUsed));
+   }
+
+   /**
+    * @return {@code true} if the entry expires once it's not used for some time
+    */
+   boolean hasMaxIdle() {
+      return hasMetadata && maxIdle > -1;
+   }
+
+   boolean hasValue() {
+      return buffer != null;
+   }
+
+   byte[] buffer() {
+      return buffer;
+   }
+
+   /**
+    * @return {@code true} if the object contains the marshalled key and it was kept
+    */
+   boolean hasKey() {
+      return buffer != null && keyLength >= 0;
+   }
+
+   int keyOffset() {
+      return keyOffset;
+   }
+
+   int keyLength() {
+      return keyLength;
+   }
+
+   int valueOffset() {
+      return valueOffset;
+   }
+
+   int valueLength() {
+      return valueLength;
+   }
+
+   /**
+    * @return id of the {@link ValueCodec} the value is compressed with
+    */
+   int codec() {
+      return codec;
+   }
+
+   /**
+    * @return manifest of the chunks holding the value or {@code null} if the value is not chunked
+    */
+   ChunkManifest manifest() {
+      return manifest;
+   }
+
+   /**
+    * @return chunks holding the value or {@code null} if the value is not chunked or it was not fetched
+    */
+   byte[][] chunks() {
+      return chunks;
+   }
+
+   long expiryTime() {
+      return expiryTime(lastUsed);
+   }
+
+   /**
+    * @param lastUsed time of the last use of the entry, which may be later than the one stored
+    */
+   long expiryTime(long lastUsed) {
+      return hasMetadata ? EntryFormat.expiryTime(lifespan, maxIdle, created, Math.max(this.lastUsed, lastUsed)) : -1;
+   }
+
+   boolean isExpired(long now) {
+      long expiryTime = expiryTime();
+      return expiryTime > -1 && expiryTime <= now;
+   }
+
+}
@@ -0,0 +1,243 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.infinispan.persistence.spi.PersistenceException;
+
+import com.ceph.rados.IoCTX;
+import com.ceph.rados.exceptions.RadosException;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * Last uses of the loaded entries which expire once they are not used for some time, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#touchInterval()}. A load only records the
+ * time of the use in memory, the times are written to the cluster periodically in batches. Every object is written at
+ * most once per batch, no matter how many times it was loaded in the meantime.
+ * <p>
+ * A recorded use stays pending until it's written, so that expiration checks, including the purge, see it before it's
+ * stored. If the entry is written or removed in the meantime, the pending use is forgotten. The object is written only
+ * if it still exists, so a use of a removed entry never recreates its object. The time is written into the
+ * {@link EntryFormat} header of the object, or into its extended attribute if the object was written in the legacy
+ * layout. The header is written only if it still holds the creation time and the write stamp of the loaded entry, so
+ * a use never modifies an entry written concurrently by another node.
+ *
+ * @since 9.0
+ */
+final class Touches {
+
+   private static final int CEPH_ENOENT = -2;
+
+   private final int maxPending;
+   private final Flusher flusher;
+   private final Executor executor;
+   private final ConcurrentMap<String, Touch> pending = new ConcurrentHashMap<>();
+   private final Object flushLock = new Object();
+   private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+   interface Flusher {
+      /**
+       * Writes given times of last use of the objects to the cluster.
+       *
+       * @throws CephBatchException if some of the writes have failed
+       */
+      void flush(Map<String, Touch> touches) throws PersistenceException;
+   }
+
+   /**
+    * @param maxPending number of pending uses after which a flush is started by given executor, regardless of the
+    *        flush interval
+    */
+   Touches(int maxPending, Flusher flusher, Executor executor) {
+      this.maxPending = maxPending;
+      this.flusher = flusher;
+      this.executor = executor;
+   }
+
+   /**
+    * Records the use of the entry stored in given object, if it expires once not used for some time.
+    *
+    * @param legacy whether the object was written in the legacy layout, with metadata in extended attributes
+    */
+   void touch(String objectName, StoredEntry stored, boolean legacy, long now) {
+      if (!stored.hasMaxIdle()) {
+         return;
+      }
+      byte[] buffer = stored.buffer();
+      long stamp = buffer != null ? EntryFormat.stamp(buffer, buffer.length) : EntryFormat.NO_STAMP;
+      pending.merge(objectName, new Touch(now, legacy, stored.created(), stamp), (a, b) -> a.time >= b.time ? a : b);
+      if (pending.size() >= maxPending && flushRequested.compareAndSet(false, true)) {
+         executor.execute(() -> {
+            flushRequested.set(false);
+            flushQuietly();
+         });
+      }
+   }
+
+   /**
+    * @return time of the last use of the entry stored in given object which is not written yet or -1 if there is none
+    */
+   long lastUse(String objectName) {
+      Touch touch = pending.get(objectName);
+      return touch != null ? touch.time : -1;
+   }
+
+   /**
+    * Forgets the pending use of given object once the entry is written or removed.
+    */
+   void forget(String objectName) {
+      pending.remove(objectName);
+   }
+
+   void clear() {
+      pending.clear();
+   }
+
+   /**
+    * Writes all pending uses. Uses which failed to be written remain pending and are retried by the next flush.
+    *
+    * @throws CephBatchException if some of the writes have failed
+    */
+   void flush() throws PersistenceException {
+      synchronized (flushLock) {
+         if (pending.isEmpty()) {
+            return;
+         }
+         Map<String, Touch> batch = new HashMap<>(pending);
+         Map<Object, Throwable> failures = Collections.emptyMap();
+         boolean failed = true;
+         try {
+            flusher.flush(batch);
+            failed = false;
+         } catch (CephBatchException e) {
+            failures = e.getFailures();
+            failed = false;
+            throw e;
+         } finally {
+            if (!failed) {
+               for (Map.Entry<String, Touch> e : batch.entrySet()) {
+                  if (!failures.containsKey(e.getKey())) {
+                     //later uses recorded during the flush stay pending
+                     pending.remove(e.getKey(), e.getValue());
+                  }
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Flushes the pending uses, failures are not reported, the failed uses are retried by the next flush.
+    */
+   void flushQuietly() {
+      try {
+         flush();
+      } catch (PersistenceException e) {
+         //TODO log, once messages ids are reserved
+      }
+   }
+
+   /**
+    * Writes the time of the use into the {@link EntryFormat} header of the object, if the object still holds the
+    * loaded entry. The creation time and the write stamp of the entry are compared by the same operation.
+    *
+    * @return {@code false} if there is no such object or it was written since the entry was loaded
+    */
+   static boolean writeIfUnchanged(IoCTX ctx, String objectName, Touch touch) throws RadosException {
+      byte[] created = new byte[8];
+      EntryFormat.writeLong(created, 0, touch.created);
+      byte[] lastUsed = new byte[8];
+      EntryFormat.writeLong(lastUsed, 0, touch.time);
+      //librados writes the results of the comparisons when the operation is performed
+      IntByReference createdComparison = new IntByReference();
+      IntByReference stampComparison = new IntByReference();
+      Pointer op = LibRados.INSTANCE.rados_create_write_op();
+      try {
+         LibRados.INSTANCE.rados_write_op_assert_exists(op);
+         LibRados.INSTANCE.rados_write_op_cmpext(op, created, new NativeLong(created.length),
+               EntryFormat.OFFSET_CREATED, createdComparison);
+         if (touch.stamp != EntryFormat.NO_STAMP) {
+            byte[] stamp = new byte[EntryFormat.STAMP_SIZE];
+            EntryFormat.writeLong(stamp, 0, touch.stamp);
+            LibRados.INSTANCE.rados_write_op_cmpext(op, stamp, new NativeLong(stamp.length), EntryFormat.HEADER_SIZE,
+                  stampComparison);
+         }
+         LibRados.INSTANCE.rados_write_op_write(op, lastUsed, new NativeLong(lastUsed.length),
+               EntryFormat.OFFSET_LAST_USED);
+         return operate(ctx, objectName, op);
+      } finally {
+         LibRados.INSTANCE.rados_release_write_op(op);
+      }
+   }
+
+   /**
+    * Sets the extended attribute of the object, if it exists.
+    *
+    * @return {@code false} if there is no such object
+    */
+   static boolean setAttributeIfExists(IoCTX ctx, String objectName, String name, byte[] value)
+         throws RadosException {
+      Pointer op = LibRados.INSTANCE.rados_create_write_op();
+      try {
+         LibRados.INSTANCE.rados_write_op_assert_exists(op);
+         LibRados.INSTANCE.rados_write_op_setxattr(op, name, value, new NativeLong(value.length));
+         return operate(ctx, objectName, op);
+      } finally {
+         LibRados.INSTANCE.rados_release_write_op(op);
+      }
+   }
+
+   private static boolean operate(IoCTX ctx, String objectName, Pointer op) throws RadosException {
+      int result = LibRados.INSTANCE.rados_write_op_operate(op, ctx.getPointer(), objectName, null, 0);
+      if (result == CEPH_ENOENT || ObjectRead.isMismatch(result)) {
+         //the use is dropped, the object was removed or written again
+         return false;
+      }
+      if (result < 0) {
+         throw new RadosException(String.format("Unable to write last use of %s", objectName), result);
+      }
+      return true;
+   }
+
+   static final class Touch {
+
+      private final long time;
+      private final boolean legacy;
+      private final long created;
+      private final long stamp;
+
+      /**
+       * @param created creation time of the loaded entry
+       * @param stamp write stamp of the loaded entry or {@link EntryFormat#NO_STAMP} if it has none
+       */
+      Touch(long time, boolean legacy, long created, long stamp) {
+         this.time = time;
+         this.legacy = legacy;
+         this.created = created;
+         this.stamp = stamp;
+      }
+
+      long time() {
+         return time;
+      }
+
+      long stamp() {
+         return stamp;
+      }
+
+      /**
+       * @return whether the object was written in the legacy layout, with metadata in extended attributes
+       */
+      boolean legacy() {
+         return legacy;
+      }
+   }
+
+}
@@ -0,0 +1,240 @@
+package org.infinispan.persistence.ceph;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.infinispan.persistence.spi.PersistenceException;
+
+import com.ceph.rados.exceptions.RadosException;
+
+/**
+ * Intent log of the transactions committed by this node, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#transactionLog()}. Before the
+ * modifications of a transaction are applied, they are written to a log object, which is removed once all of them are
+ * applied. Logs found when the store starts belong to commits which were interrupted by a crash, and are applied
+ * again. Logs of commits which have failed are applied again in the background, see {@link #retry(Consumer)}.
+ * Modifications replace or remove whole entries, so applying a log which was already applied partially is safe, and
+ * modifications of entries written after the log are skipped.
+ * <p>
+ * Log objects are named by the name of the log, which is derived from the identity of the node, and one of a fixed
+ * number of slots, so that the recovery reads a known set of objects instead of listing the pool. Every concurrent
+ * commit holds its own slot. A slot holding the log of a failed commit stays used until the log is applied again.
+ * <p>
+ * A log starts with the 8 byte time when it was written, followed by its records. Every record is a byte identifying
+ * the modification, the 4 byte length of its content and the content itself, which is the entry encoded by
+ * {@link EntryFormat} together with its key for a write and the marshalled key for a delete.
+ *
+ * @since 9.0
+ */
+final class TransactionLog {
+
+   static final int SLOTS = 64;
+   static final byte WRITE = 1;
+   static final byte DELETE = 2;
+
+   private static final String LOG_PREFIX = ExpirationIndex.INTERNAL_OBJECT_PREFIX + "txlog_";
+   private static final int TIME_SIZE = 8;
+   private static final int RECORD_HEADER_SIZE = 1 + 4;
+   private static final long SLOT_WAIT_MILLIS = 100;
+   private static final int CEPH_ENOENT = -2;
+
+   private final ConnectionPool connections;
+   private final String logName;
+   private final BlockingQueue<Integer> freeSlots = new ArrayBlockingQueue<>(SLOTS);
+   private final Set<Integer> retainedSlots = ConcurrentHashMap.newKeySet();
+
+   TransactionLog(ConnectionPool connections, String logName) {
+      this.connections = connections;
+      this.logName = logName;
+      for (int slot = 0; slot < SLOTS; slot++) {
+         freeSlots.add(slot);
+      }
+   }
+
+   /**
+    * Applies the logs left by the commits which were interrupted or have failed and removes them. Must be called
+    * before any commit begins.
+    *
+    * @param apply applies the modifications of given log, see {@link #decode(byte[])}
+    */
+   void recover(Consumer<byte[]> apply) throws RadosException {
+      for (int slot = 0; slot < SLOTS; slot++) {
+         applyAgain(logObject(slot), apply);
+      }
+   }
+
+   /**
+    * Applies the logs of the failed commits again, see {@link #retain(int)}, and releases their slots. Logs which fail
+    * again are kept for the next retry.
+    *
+    * @param apply applies the modifications of given log, see {@link #decode(byte[])}
+    */
+   void retry(Consumer<byte[]> apply) throws RadosException {
+      for (Integer slot : retainedSlots) {
+         applyAgain(logObject(slot), apply);
+         retainedSlots.remove(slot);
+         freeSlots.add(slot);
+      }
+   }
+
+   /**
+    * Writes the log of a commit, waiting for a free slot if all of them are used by other commits.
+    *
+    * @param log encoded log, see {@link Encoder}
+    * @param time current time, stored in the log
+    * @return slot holding the log, to be passed to {@link #remove(int)} once all modifications are applied or to
+    *         {@link #retain(int)} if they have failed
+    * @throws PersistenceException if all slots hold logs of failed commits
+    */
+   int write(byte[] log, long time) throws RadosException, PersistenceException {
+      EntryFormat.writeLong(log, 0, time);
+      int slot = takeSlot();
+      String logObject = logObject(slot);
+      try {
+         try (ClusterConnections.Lease lease = connections.lease(logObject)) {
+            lease.ctx().writeFull(logObject, log, log.length);
+         }
+      } catch (RadosException | RuntimeException e) {
+         freeSlots.add(slot);
+         throw e;
+      }
+      return slot;
+   }
+
+   void remove(int slot) throws RadosException {
+      removeObject(logObject(slot));
+      freeSlots.add(slot);
+   }
+
+   /**
+    * Keeps the log in given slot, so that the modifications of the failed commit are applied again by the next
+    * {@link #retry(Consumer)}, or by the recovery if the store is restarted first.
+    */
+   void retain(int slot) {
+      retainedSlots.add(slot);
+   }
+
+   /**
+    * @return time when given log was written
+    */
+   static long time(byte[] log) {
+      if (log.length < TIME_SIZE) {
+         throw new PersistenceException("Transaction log is corrupted");
+      }
+      return EntryFormat.readLong(log, 0);
+   }
+
+   /**
+    * @return records of given log, each of them starting with its type followed by its content
+    */
+   static List<Record> decode(byte[] log) {
+      List<Record> records = new ArrayList<>();
+      int offset = TIME_SIZE;
+      while (offset + RECORD_HEADER_SIZE <= log.length) {
+         byte type = log[offset];
+         int length = EntryFormat.readInt(log, offset + 1);
+         offset += RECORD_HEADER_SIZE;
+         if (length < 0 || offset + length > log.length) {
+            throw new PersistenceException("Transaction log is corrupted");
+         }
+         byte[] content = new byte[length];
+         System.arraycopy(log, offset, content, 0, length);
+         records.add(new Record(type, content));
+         offset += length;
+      }
+      return records;
+   }
+
+   private int takeSlot() throws PersistenceException {
+      try {
+         Integer slot;
+         while ((slot = freeSlots.poll(SLOT_WAIT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            if (retainedSlots.size() >= SLOTS) {
+               throw new PersistenceException(String.format("All slots of the transaction log '%s' hold logs of "
+                     + "failed commits, which are not applied yet", logName));
+            }
+         }
+         return slot;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PersistenceException("Interrupted while waiting for a free slot of the transaction log", e);
+      }
+   }
+
+   private void applyAgain(String logObject, Consumer<byte[]> apply) throws RadosException {
+      byte[] log = NameLog.read(connections, logObject);
+      if (log != null) {
+         apply.accept(log);
+         removeObject(logObject);
+      }
+   }
+
+   private void removeObject(String logObject) throws RadosException {
+      try {
+         try (ClusterConnections.Lease lease = connections.lease(logObject)) {
+            lease.ctx().remove(logObject);
+         }
+      } catch (RadosException e) {
+         //the pool may have been cleared in the meantime
+         if (e.getReturnValue() != CEPH_ENOENT) {
+            throw e;
+         }
+      }
+   }
+
+   private String logObject(int slot) {
+      return LOG_PREFIX + logName + "_" + slot;
+   }
+
+   /**
+    * Encodes the records of one log, the time is written by {@link TransactionLog#write(byte[], long)}.
+    */
+   static final class Encoder {
+
+      private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      Encoder() {
+         out.write(new byte[TIME_SIZE], 0, TIME_SIZE);
+      }
+
+      Encoder add(byte type, byte[] content) {
+         byte[] header = new byte[RECORD_HEADER_SIZE];
+         header[0] = type;
+         EntryFormat.writeInt(header, 1, content.length);
+         out.write(header, 0, header.length);
+         out.write(content, 0, content.length);
+         return this;
+      }
+
+      byte[] toByteArray() {
+         return out.toByteArray();
+      }
+   }
+
+   static final class Record {
+
+      private final byte type;
+      private final byte[] content;
+
+      Record(byte type, byte[] content) {
+         this.type = type;
+         this.content = content;
+      }
+
+      byte type() {
+         return type;
+      }
+
+      byte[] content() {
+         return content;
+      }
+   }
+
+}
@@ -0,0 +1,84 @@
+package org.infinispan.persistence.ceph;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.infinispan.persistence.ceph.configuration.Compression;
+
+/**
+ * Compresses marshalled values, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#compression()}. The codec of every entry
+ * is recorded by its id in the {@link EntryFormat} header, so entries written with different codecs can coexist in one
+ * pool. Compressed value is prefixed by the 4 byte length of the original value, which allows decompressing it into
+ * an exactly sized buffer.
+ *
+ * @since 9.0
+ */
+abstract class ValueCodec {
+
+   static final int NONE = 0;
+   static final int ORIGINAL_LENGTH_SIZE = 4;
+
+   private static final ValueCodec DEFLATE = new DeflateCodec(1);
+   private static final ValueCodec LZ4 = new Lz4Codec(2);
+
+   private final int id;
+
+   ValueCodec(int id) {
+      this.id = id;
+   }
+
+   /**
+    * @return codec for given configuration or {@code null} if the values are not compressed
+    */
+   static ValueCodec of(Compression compression) {
+      switch (compression) {
+         case DEFLATE:
+            return DEFLATE;
+         case LZ4:
+            return LZ4;
+         default:
+            return null;
+      }
+   }
+
+   /**
+    * @return codec with given id, {@code null} for {@link #NONE}
+    * @throws IOException if the codec is not known, e.g. because the entry was written by a newer version of the store
+    */
+   static ValueCodec forId(int id) throws IOException {
+      if (id == NONE) {
+         return null;
+      } else if (id == DEFLATE.id) {
+         return DEFLATE;
+      } else if (id == LZ4.id) {
+         return LZ4;
+      }
+      throw new IOException(String.format("Unknown compression codec %d", id));
+   }
+
+   int id() {
+      return id;
+   }
+
+   /**
+    * @return compressed value prefixed by its original length
+    */
+   abstract byte[] compress(byte[] value);
+
+   /**
+    * @return original value of the compressed one stored in given range
+    */
+   abstract byte[] decompress(byte[] bytes, int offset, int length) throws IOException;
+
+   /**
+    * @return stream of the original value of the compressed one read from given stream
+    */
+   abstract InputStream decompress(InputStream in) throws IOException;
+
+   static int originalLength(InputStream in) throws IOException {
+      return new DataInputStream(in).readInt();
+   }
+
+}
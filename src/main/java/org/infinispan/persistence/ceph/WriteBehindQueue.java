@@ -0,0 +1,234 @@
+package org.infinispan.persistence.ceph;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.infinispan.commons.io.ByteBuffer;
+import org.infinispan.marshall.core.MarshalledEntry;
+import org.infinispan.persistence.spi.PersistenceException;
+
+/**
+ * Queue of the modifications which were accepted by the store but not yet applied to the cluster, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#writeBehindQueueSize()}. The queue
+ * holds at most one modification per key, a later write or delete replaces the pending one, so a key updated many
+ * times between two flushes is written only once.
+ * <p>
+ * The pending modifications are flushed as one batch once half of the maximum number of modifications or of the
+ * maximum memory is used, or once the oldest of them is older than the maximum age. If the queue is full, the
+ * modifying thread flushes it itself, so the memory held by the queue stays bounded. Only one flush runs at a time,
+ * modifications made during a flush are queued for the next one. Modifications which failed to be applied are queued
+ * again, unless they were replaced in the meantime, and are retried by the next flush.
+ * <p>
+ * Modifications are visible to {@link #get(Object)} from the moment they are queued until they are applied.
+ *
+ * @since 9.0
+ */
+final class WriteBehindQueue<K, V> {
+
+   //approximate size of a queued modification apart from the marshalled value
+   private static final int MODIFICATION_OVERHEAD = 64;
+
+   private final int maxModifications;
+   private final long maxMemory;
+   private final long maxAgeNanos;
+   private final Flusher<K, V> flusher;
+   private final Executor executor;
+   private final Object flushLock = new Object();
+   private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+   //guarded by this
+   private Map<Object, Modification<K, V>> pending = new HashMap<>();
+   private Map<Object, Modification<K, V>> flushing = Collections.emptyMap();
+   private long memory;
+   private long oldestPending;
+
+   interface Flusher<K, V> {
+      /**
+       * Applies given modifications to the cluster.
+       *
+       * @throws CephBatchException if some of the modifications have failed
+       */
+      void flush(Map<Object, Modification<K, V>> modifications) throws PersistenceException;
+   }
+
+   /**
+    * @param executor executor which runs the flushes which are not performed by the modifying thread
+    */
+   WriteBehindQueue(int maxModifications, long maxMemory, long maxAge, Flusher<K, V> flusher, Executor executor) {
+      this.maxModifications = maxModifications;
+      this.maxMemory = maxMemory;
+      this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAge);
+      this.flusher = flusher;
+      this.executor = executor;
+   }
+
+   /**
+    * Queues the write of given entry.
+    *
+    * @throws PersistenceException if the queue was full and the flush has failed
+    */
+   void write(MarshalledEntry<? extends K, ? extends V> entry) throws PersistenceException {
+      ByteBuffer value = entry.getValueBytes();
+      long size = MODIFICATION_OVERHEAD + (value != null ? value.getLength() : 0);
+      enqueue(entry.getKey(), new Modification<>(entry, size));
+   }
+
+   /**
+    * Queues the delete of given key.
+    *
+    * @return modification of the key which was pending until now or {@code null} if there was none
+    * @throws PersistenceException if the queue was full and the flush has failed
+    */
+   Modification<K, V> delete(Object key) throws PersistenceException {
+      return enqueue(key, new Modification<>(null, MODIFICATION_OVERHEAD));
+   }
+
+   /**
+    * @return modification of given key which is not yet applied or {@code null} if there is none
+    */
+   synchronized Modification<K, V> get(Object key) {
+      Modification<K, V> modification = pending.get(key);
+      return modification != null ? modification : flushing.get(key);
+   }
+
+   /**
+    * Applies all modifications queued before the call. Returns once they are applied.
+    *
+    * @throws CephBatchException if some of the modifications have failed, they remain queued
+    */
+   void flush() throws PersistenceException {
+      synchronized (flushLock) {
+         Map<Object, Modification<K, V>> batch;
+         synchronized (this) {
+            if (pending.isEmpty()) {
+               return;
+            }
+            batch = pending;
+            flushing = batch;
+            pending = new HashMap<>();
+         }
+         Map<Object, Throwable> failures = Collections.emptyMap();
+         boolean failed = true;
+         try {
+            flusher.flush(batch);
+            failed = false;
+         } catch (CephBatchException e) {
+            failures = e.getFailures();
+            failed = false;
+            throw e;
+         } finally {
+            complete(batch, failures, failed);
+         }
+      }
+   }
+
+   /**
+    * Flushes the queue if the oldest pending modification is older than the maximum age. Failures are not reported,
+    * the failed modifications are retried by the next flush.
+    */
+   void flushIfDue() {
+      boolean due;
+      synchronized (this) {
+         due = !pending.isEmpty() && System.nanoTime() - oldestPending >= maxAgeNanos;
+      }
+      if (due) {
+         flushQuietly();
+      }
+   }
+
+   /**
+    * Discards all pending modifications. A flush which is in progress is completed first.
+    */
+   void clear() {
+      synchronized (flushLock) {
+         synchronized (this) {
+            pending.clear();
+            memory = 0;
+         }
+      }
+   }
+
+   private Modification<K, V> enqueue(Object key, Modification<K, V> modification) throws PersistenceException {
+      Modification<K, V> previous;
+      boolean full;
+      boolean half;
+      synchronized (this) {
+         if (pending.isEmpty()) {
+            oldestPending = System.nanoTime();
+         }
+         previous = pending.put(key, modification);
+         memory += modification.size - (previous != null ? previous.size : 0);
+         if (previous == null) {
+            previous = flushing.get(key);
+         }
+         int modifications = pending.size() + flushing.size();
+         full = modifications >= maxModifications || memory >= maxMemory;
+         half = pending.size() >= maxModifications / 2 || memory >= maxMemory / 2;
+      }
+      if (full) {
+         flush();
+      } else if (half && flushRequested.compareAndSet(false, true)) {
+         executor.execute(() -> {
+            flushRequested.set(false);
+            flushQuietly();
+         });
+      }
+      return previous;
+   }
+
+   private void flushQuietly() {
+      try {
+         flush();
+      } catch (PersistenceException e) {
+         //TODO log, once messages ids are reserved; failed modifications remain queued and are retried
+      }
+   }
+
+   /**
+    * Releases the flushed batch and queues again the failed modifications which were not replaced meanwhile.
+    *
+    * @param failures keys whose modifications have failed
+    * @param failed whether the whole batch has failed
+    */
+   private synchronized void complete(Map<Object, Modification<K, V>> batch, Map<Object, Throwable> failures,
+         boolean failed) {
+      flushing = Collections.emptyMap();
+      for (Map.Entry<Object, Modification<K, V>> e : batch.entrySet()) {
+         if (!failed && !failures.containsKey(e.getKey()) || pending.containsKey(e.getKey())) {
+            memory -= e.getValue().size;
+         } else {
+            if (pending.isEmpty()) {
+               oldestPending = System.nanoTime();
+            }
+            pending.put(e.getKey(), e.getValue());
+         }
+      }
+   }
+
+   static final class Modification<K, V> {
+
+      private final MarshalledEntry<? extends K, ? extends V> entry;
+      private final long size;
+
+      Modification(MarshalledEntry<? extends K, ? extends V> entry, long size) {
+         this.entry = entry;
+         this.size = size;
+      }
+
+      /**
+       * @return written entry or {@code null} if the key is deleted
+       */
+      MarshalledEntry<? extends K, ? extends V> entry() {
+         return entry;
+      }
+
+      boolean isWrite() {
+         return entry != null;
+      }
+   }
+
+}
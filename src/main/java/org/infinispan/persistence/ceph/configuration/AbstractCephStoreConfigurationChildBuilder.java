@@ -34,6 +34,150 @@ public abstract class AbstractCephStoreConfigurationChildBuilder<S> extends Abst
    public CephStoreConfigurationBuilder poolName(String poolName) {
       return builder.poolName(poolName);
    }
-   
-   
+
+   @Override
+   public CephStoreConfigurationBuilder ioThreadPoolSize(int ioThreadPoolSize) {
+      return builder.ioThreadPoolSize(ioThreadPoolSize);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder maxBatchInFlight(int maxBatchInFlight) {
+      return builder.maxBatchInFlight(maxBatchInFlight);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder expirationIndex(boolean expirationIndex) {
+      return builder.expirationIndex(expirationIndex);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder clearMode(ClearMode clearMode) {
+      return builder.clearMode(clearMode);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder generationCleanupRate(int generationCleanupRate) {
+      return builder.generationCleanupRate(generationCleanupRate);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder segmented(boolean segmented) {
+      return builder.segmented(segmented);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder hashObjectNames(boolean hashObjectNames) {
+      return builder.hashObjectNames(hashObjectNames);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder packedBuckets(int packedBuckets) {
+      return builder.packedBuckets(packedBuckets);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder packedValueThreshold(int packedValueThreshold) {
+      return builder.packedValueThreshold(packedValueThreshold);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder chunkThreshold(int chunkThreshold) {
+      return builder.chunkThreshold(chunkThreshold);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder chunkSize(int chunkSize) {
+      return builder.chunkSize(chunkSize);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder compression(Compression compression) {
+      return builder.compression(compression);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder compressionThreshold(int compressionThreshold) {
+      return builder.compressionThreshold(compressionThreshold);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder connections(int connections) {
+      return builder.connections(connections);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder namespace(String namespace) {
+      return builder.namespace(namespace);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder bloomFilterFalsePositiveRate(double bloomFilterFalsePositiveRate) {
+      return builder.bloomFilterFalsePositiveRate(bloomFilterFalsePositiveRate);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder bloomFilterRebuildInterval(long bloomFilterRebuildInterval) {
+      return builder.bloomFilterRebuildInterval(bloomFilterRebuildInterval);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder nearCacheSize(long nearCacheSize) {
+      return builder.nearCacheSize(nearCacheSize);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder nearCacheTrustWindow(long nearCacheTrustWindow) {
+      return builder.nearCacheTrustWindow(nearCacheTrustWindow);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder writeBehindQueueSize(int writeBehindQueueSize) {
+      return builder.writeBehindQueueSize(writeBehindQueueSize);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder writeBehindMaxMemory(long writeBehindMaxMemory) {
+      return builder.writeBehindMaxMemory(writeBehindMaxMemory);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder writeBehindMaxAge(long writeBehindMaxAge) {
+      return builder.writeBehindMaxAge(writeBehindMaxAge);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder durability(Durability durability) {
+      return builder.durability(durability);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder maxWritesInFlight(int maxWritesInFlight) {
+      return builder.maxWritesInFlight(maxWritesInFlight);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder hedgedReadPercentile(double hedgedReadPercentile) {
+      return builder.hedgedReadPercentile(hedgedReadPercentile);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder hedgedReadMaxRatio(double hedgedReadMaxRatio) {
+      return builder.hedgedReadMaxRatio(hedgedReadMaxRatio);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder hedgedReadReplica(ReplicaSelection hedgedReadReplica) {
+      return builder.hedgedReadReplica(hedgedReadReplica);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder transactionLog(boolean transactionLog) {
+      return builder.transactionLog(transactionLog);
+   }
+
+   @Override
+   public CephStoreConfigurationBuilder touchInterval(long touchInterval) {
+      return builder.touchInterval(touchInterval);
+   }
+
 }
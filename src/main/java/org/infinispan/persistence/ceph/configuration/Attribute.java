@@ -7,13 +7,42 @@ public enum Attribute {
    // must be first
    UNKNOWN(null),
 
+   BLOOM_FILTER_FALSE_POSITIVE_RATE("bloom-filter-false-positive-rate"),
+   BLOOM_FILTER_REBUILD_INTERVAL("bloom-filter-rebuild-interval"),
+   CHUNK_SIZE("chunk-size"),
+   CHUNK_THRESHOLD("chunk-threshold"),
+   CLEAR_MODE("clear-mode"),
+   COMPRESSION("compression"),
+   COMPRESSION_THRESHOLD("compression-threshold"),
+   CONNECTIONS("connections"),
+   DURABILITY("durability"),
+   EXPIRATION_INDEX("expiration-index"),
+   GENERATION_CLEANUP_RATE("generation-cleanup-rate"),
+   HASH_OBJECT_NAMES("hash-object-names"),
+   HEDGED_READ_MAX_RATIO("hedged-read-max-ratio"),
+   HEDGED_READ_PERCENTILE("hedged-read-percentile"),
+   HEDGED_READ_REPLICA("hedged-read-replica"),
+   IO_THREAD_POOL_SIZE("io-thread-pool-size"),
    KEY("key"), 
    KEYRING_PATH("keyring-path"), 
    KEY_2_STRING_MAPPER("key-2-string-mapper"), 
+   MAX_BATCH_IN_FLIGHT("max-batch-in-flight"),
+   MAX_WRITES_IN_FLIGHT("max-writes-in-flight"),
    MONITOR_HOST("monitor-host"), 
+   NAMESPACE("namespace"),
+   NEAR_CACHE_SIZE("near-cache-size"),
+   NEAR_CACHE_TRUST_WINDOW("near-cache-trust-window"),
+   PACKED_BUCKETS("packed-buckets"),
+   PACKED_VALUE_THRESHOLD("packed-value-threshold"),
    POOL_NAME("pool-name"), 
    POOL_NAME_PREFIX("pool-name-prefix"),
-   USER_NAME("user-name");
+   SEGMENTED("segmented"),
+   TOUCH_INTERVAL("touch-interval"),
+   TRANSACTION_LOG("transaction-log"),
+   USER_NAME("user-name"),
+   WRITE_BEHIND_MAX_AGE("write-behind-max-age"),
+   WRITE_BEHIND_MAX_MEMORY("write-behind-max-memory"),
+   WRITE_BEHIND_QUEUE_SIZE("write-behind-queue-size");
 
    private final String name;
 
@@ -27,10 +27,74 @@ public class CephStoreConfiguration extends AbstractStoreConfiguration {
          .immutable().build();
    final static AttributeDefinition<String> KEY_2_STRING_MAPPER = AttributeDefinition
          .builder("key2StringMapper", MarshalledValueOrPrimitiveMapper.class.getName()).immutable().build();
+   final static AttributeDefinition<Integer> IO_THREAD_POOL_SIZE = AttributeDefinition.builder("ioThreadPoolSize", 16)
+         .immutable().build();
+   final static AttributeDefinition<Integer> MAX_BATCH_IN_FLIGHT = AttributeDefinition.builder("maxBatchInFlight", 64)
+         .immutable().build();
+   final static AttributeDefinition<Boolean> EXPIRATION_INDEX = AttributeDefinition.builder("expirationIndex", false)
+         .immutable().build();
+   final static AttributeDefinition<ClearMode> CLEAR_MODE = AttributeDefinition.builder("clearMode", ClearMode.DELETE)
+         .immutable().build();
+   final static AttributeDefinition<Integer> GENERATION_CLEANUP_RATE = AttributeDefinition
+         .builder("generationCleanupRate", 1000).immutable().build();
+   final static AttributeDefinition<Boolean> SEGMENTED = AttributeDefinition.builder("segmented", false)
+         .immutable().build();
+   final static AttributeDefinition<Boolean> HASH_OBJECT_NAMES = AttributeDefinition.builder("hashObjectNames", false)
+         .immutable().build();
+   final static AttributeDefinition<Integer> PACKED_BUCKETS = AttributeDefinition.builder("packedBuckets", 0)
+         .immutable().build();
+   final static AttributeDefinition<Integer> PACKED_VALUE_THRESHOLD = AttributeDefinition
+         .builder("packedValueThreshold", 512).immutable().build();
+   final static AttributeDefinition<Integer> CHUNK_THRESHOLD = AttributeDefinition.builder("chunkThreshold", 0)
+         .immutable().build();
+   final static AttributeDefinition<Integer> CHUNK_SIZE = AttributeDefinition.builder("chunkSize", 1048576)
+         .immutable().build();
+   final static AttributeDefinition<Compression> COMPRESSION = AttributeDefinition
+         .builder("compression", Compression.NONE).immutable().build();
+   final static AttributeDefinition<Integer> COMPRESSION_THRESHOLD = AttributeDefinition
+         .builder("compressionThreshold", 256).immutable().build();
+   final static AttributeDefinition<Integer> CONNECTIONS = AttributeDefinition.builder("connections", 1)
+         .immutable().build();
+   final static AttributeDefinition<String> NAMESPACE = AttributeDefinition.builder("namespace", "")
+         .immutable().build();
+   final static AttributeDefinition<Double> BLOOM_FILTER_FALSE_POSITIVE_RATE = AttributeDefinition
+         .builder("bloomFilterFalsePositiveRate", 0.0).immutable().build();
+   final static AttributeDefinition<Long> BLOOM_FILTER_REBUILD_INTERVAL = AttributeDefinition
+         .builder("bloomFilterRebuildInterval", 0L).immutable().build();
+   final static AttributeDefinition<Long> NEAR_CACHE_SIZE = AttributeDefinition.builder("nearCacheSize", 0L)
+         .immutable().build();
+   final static AttributeDefinition<Long> NEAR_CACHE_TRUST_WINDOW = AttributeDefinition
+         .builder("nearCacheTrustWindow", 0L).immutable().build();
+   final static AttributeDefinition<Integer> WRITE_BEHIND_QUEUE_SIZE = AttributeDefinition
+         .builder("writeBehindQueueSize", 0).immutable().build();
+   final static AttributeDefinition<Long> WRITE_BEHIND_MAX_MEMORY = AttributeDefinition
+         .builder("writeBehindMaxMemory", 67108864L).immutable().build();
+   final static AttributeDefinition<Long> WRITE_BEHIND_MAX_AGE = AttributeDefinition.builder("writeBehindMaxAge", 1000L)
+         .immutable().build();
+   final static AttributeDefinition<Durability> DURABILITY = AttributeDefinition
+         .builder("durability", Durability.COMMIT).immutable().build();
+   final static AttributeDefinition<Integer> MAX_WRITES_IN_FLIGHT = AttributeDefinition
+         .builder("maxWritesInFlight", 256).immutable().build();
+   final static AttributeDefinition<Double> HEDGED_READ_PERCENTILE = AttributeDefinition
+         .builder("hedgedReadPercentile", 0d).immutable().build();
+   final static AttributeDefinition<Double> HEDGED_READ_MAX_RATIO = AttributeDefinition
+         .builder("hedgedReadMaxRatio", 0.05d).immutable().build();
+   final static AttributeDefinition<ReplicaSelection> HEDGED_READ_REPLICA = AttributeDefinition
+         .builder("hedgedReadReplica", ReplicaSelection.BALANCE).immutable().build();
+   final static AttributeDefinition<Boolean> TRANSACTION_LOG = AttributeDefinition.builder("transactionLog", false)
+         .immutable().build();
+   final static AttributeDefinition<Long> TOUCH_INTERVAL = AttributeDefinition.builder("touchInterval", 0L)
+         .immutable().build();
 
    public static AttributeSet attributeDefinitionSet() {
       return new AttributeSet(CephStoreConfiguration.class, AbstractStoreConfiguration.attributeDefinitionSet(),
-            USER_NAME, KEY, KEYRING_PATH, MONITOR_HOST, POOL_NAME, POOL_NAME_PREFIX, KEY_2_STRING_MAPPER);
+            USER_NAME, KEY, KEYRING_PATH, MONITOR_HOST, POOL_NAME, POOL_NAME_PREFIX, KEY_2_STRING_MAPPER,
+            IO_THREAD_POOL_SIZE, MAX_BATCH_IN_FLIGHT, EXPIRATION_INDEX, CLEAR_MODE, GENERATION_CLEANUP_RATE, SEGMENTED,
+            HASH_OBJECT_NAMES, PACKED_BUCKETS, PACKED_VALUE_THRESHOLD, CHUNK_THRESHOLD, CHUNK_SIZE, COMPRESSION,
+            COMPRESSION_THRESHOLD, CONNECTIONS, NAMESPACE, BLOOM_FILTER_FALSE_POSITIVE_RATE,
+            BLOOM_FILTER_REBUILD_INTERVAL, NEAR_CACHE_SIZE, NEAR_CACHE_TRUST_WINDOW, WRITE_BEHIND_QUEUE_SIZE,
+            WRITE_BEHIND_MAX_MEMORY, WRITE_BEHIND_MAX_AGE, DURABILITY, MAX_WRITES_IN_FLIGHT, HEDGED_READ_PERCENTILE,
+            HEDGED_READ_MAX_RATIO, HEDGED_READ_REPLICA, TRANSACTION_LOG, TOUCH_INTERVAL);
    }
 
    private final Attribute<String> userName;
@@ -40,6 +104,35 @@ public class CephStoreConfiguration extends AbstractStoreConfiguration {
    private final Attribute<String> poolName;
    private final Attribute<String> poolNamePrefix;
    private final Attribute<String> key2StringMapper;
+   private final Attribute<Integer> ioThreadPoolSize;
+   private final Attribute<Integer> maxBatchInFlight;
+   private final Attribute<Boolean> expirationIndex;
+   private final Attribute<ClearMode> clearMode;
+   private final Attribute<Integer> generationCleanupRate;
+   private final Attribute<Boolean> segmented;
+   private final Attribute<Boolean> hashObjectNames;
+   private final Attribute<Integer> packedBuckets;
+   private final Attribute<Integer> packedValueThreshold;
+   private final Attribute<Integer> chunkThreshold;
+   private final Attribute<Integer> chunkSize;
+   private final Attribute<Compression> compression;
+   private final Attribute<Integer> compressionThreshold;
+   private final Attribute<Integer> connections;
+   private final Attribute<String> namespace;
+   private final Attribute<Double> bloomFilterFalsePositiveRate;
+   private final Attribute<Long> bloomFilterRebuildInterval;
+   private final Attribute<Long> nearCacheSize;
+   private final Attribute<Long> nearCacheTrustWindow;
+   private final Attribute<Integer> writeBehindQueueSize;
+   private final Attribute<Long> writeBehindMaxMemory;
+   private final Attribute<Long> writeBehindMaxAge;
+   private final Attribute<Durability> durability;
+   private final Attribute<Integer> maxWritesInFlight;
+   private final Attribute<Double> hedgedReadPercentile;
+   private final Attribute<Double> hedgedReadMaxRatio;
+   private final Attribute<ReplicaSelection> hedgedReadReplica;
+   private final Attribute<Boolean> transactionLog;
+   private final Attribute<Long> touchInterval;
 
    public CephStoreConfiguration(AttributeSet attributes, AsyncStoreConfiguration async,
          SingletonStoreConfiguration singletonStore) {
@@ -52,6 +145,35 @@ public class CephStoreConfiguration extends AbstractStoreConfiguration {
       this.poolName = attributes.attribute(POOL_NAME);
       this.poolNamePrefix = attributes.attribute(POOL_NAME_PREFIX);
       this.key2StringMapper = attributes.attribute(KEY_2_STRING_MAPPER);
+      this.ioThreadPoolSize = attributes.attribute(IO_THREAD_POOL_SIZE);
+      this.maxBatchInFlight = attributes.attribute(MAX_BATCH_IN_FLIGHT);
+      this.expirationIndex = attributes.attribute(EXPIRATION_INDEX);
+      this.clearMode = attributes.attribute(CLEAR_MODE);
+      this.generationCleanupRate = attributes.attribute(GENERATION_CLEANUP_RATE);
+      this.segmented = attributes.attribute(SEGMENTED);
+      this.hashObjectNames = attributes.attribute(HASH_OBJECT_NAMES);
+      this.packedBuckets = attributes.attribute(PACKED_BUCKETS);
+      this.packedValueThreshold = attributes.attribute(PACKED_VALUE_THRESHOLD);
+      this.chunkThreshold = attributes.attribute(CHUNK_THRESHOLD);
+      this.chunkSize = attributes.attribute(CHUNK_SIZE);
+      this.compression = attributes.attribute(COMPRESSION);
+      this.compressionThreshold = attributes.attribute(COMPRESSION_THRESHOLD);
+      this.connections = attributes.attribute(CONNECTIONS);
+      this.namespace = attributes.attribute(NAMESPACE);
+      this.bloomFilterFalsePositiveRate = attributes.attribute(BLOOM_FILTER_FALSE_POSITIVE_RATE);
+      this.bloomFilterRebuildInterval = attributes.attribute(BLOOM_FILTER_REBUILD_INTERVAL);
+      this.nearCacheSize = attributes.attribute(NEAR_CACHE_SIZE);
+      this.nearCacheTrustWindow = attributes.attribute(NEAR_CACHE_TRUST_WINDOW);
+      this.writeBehindQueueSize = attributes.attribute(WRITE_BEHIND_QUEUE_SIZE);
+      this.writeBehindMaxMemory = attributes.attribute(WRITE_BEHIND_MAX_MEMORY);
+      this.writeBehindMaxAge = attributes.attribute(WRITE_BEHIND_MAX_AGE);
+      this.durability = attributes.attribute(DURABILITY);
+      this.maxWritesInFlight = attributes.attribute(MAX_WRITES_IN_FLIGHT);
+      this.hedgedReadPercentile = attributes.attribute(HEDGED_READ_PERCENTILE);
+      this.hedgedReadMaxRatio = attributes.attribute(HEDGED_READ_MAX_RATIO);
+      this.hedgedReadReplica = attributes.attribute(HEDGED_READ_REPLICA);
+      this.transactionLog = attributes.attribute(TRANSACTION_LOG);
+      this.touchInterval = attributes.attribute(TOUCH_INTERVAL);
    }
 
    public String userName() {
@@ -82,4 +204,120 @@ public class CephStoreConfiguration extends AbstractStoreConfiguration {
       return key2StringMapper.get();
    }
 
+   public int ioThreadPoolSize() {
+      return ioThreadPoolSize.get();
+   }
+
+   public int maxBatchInFlight() {
+      return maxBatchInFlight.get();
+   }
+
+   public boolean expirationIndex() {
+      return expirationIndex.get();
+   }
+
+   public ClearMode clearMode() {
+      return clearMode.get();
+   }
+
+   public int generationCleanupRate() {
+      return generationCleanupRate.get();
+   }
+
+   public boolean segmented() {
+      return segmented.get();
+   }
+
+   public boolean hashObjectNames() {
+      return hashObjectNames.get();
+   }
+
+   public int packedBuckets() {
+      return packedBuckets.get();
+   }
+
+   public int packedValueThreshold() {
+      return packedValueThreshold.get();
+   }
+
+   public int chunkThreshold() {
+      return chunkThreshold.get();
+   }
+
+   public int chunkSize() {
+      return chunkSize.get();
+   }
+
+   public Compression compression() {
+      return compression.get();
+   }
+
+   public int compressionThreshold() {
+      return compressionThreshold.get();
+   }
+
+   public int connections() {
+      return connections.get();
+   }
+
+   public String namespace() {
+      return namespace.get();
+   }
+
+   public double bloomFilterFalsePositiveRate() {
+      return bloomFilterFalsePositiveRate.get();
+   }
+
+   public long bloomFilterRebuildInterval() {
+      return bloomFilterRebuildInterval.get();
+   }
+
+   public long nearCacheSize() {
+      return nearCacheSize.get();
+   }
+
+   public long nearCacheTrustWindow() {
+      return nearCacheTrustWindow.get();
+   }
+
+   public int writeBehindQueueSize() {
+      return writeBehindQueueSize.get();
+   }
+
+   public long writeBehindMaxMemory() {
+      return writeBehindMaxMemory.get();
+   }
+
+   public long writeBehindMaxAge() {
+      return writeBehindMaxAge.get();
+   }
+
+   public Durability durability() {
+      return durability.get();
+   }
+
+   public int maxWritesInFlight() {
+      return maxWritesInFlight.get();
+   }
+
+   public double hedgedReadPercentile() {
+      return hedgedReadPercentile.get();
+   }
+
+   public double hedgedReadMaxRatio() {
+      return hedgedReadMaxRatio.get();
+   }
+
+   public ReplicaSelection hedgedReadReplica() {
+      return hedgedReadReplica.get();
+   }
+
+   public boolean transactionLog() {
+      return transactionLog.get();
+   }
+
+   public long touchInterval() {
+      return touchInterval.get();
+   }
+
 }
@@ -1,13 +1,44 @@
 package org.infinispan.persistence.ceph.configuration;
 
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.BLOOM_FILTER_FALSE_POSITIVE_RATE;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.BLOOM_FILTER_REBUILD_INTERVAL;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.CHUNK_SIZE;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.CHUNK_THRESHOLD;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.CLEAR_MODE;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.COMPRESSION;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.COMPRESSION_THRESHOLD;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.CONNECTIONS;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.DURABILITY;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.EXPIRATION_INDEX;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.GENERATION_CLEANUP_RATE;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.HASH_OBJECT_NAMES;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.HEDGED_READ_MAX_RATIO;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.HEDGED_READ_PERCENTILE;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.HEDGED_READ_REPLICA;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.IO_THREAD_POOL_SIZE;
 import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.KEY;
 import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.KEYRING_PATH;
 import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.KEY_2_STRING_MAPPER;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.MAX_BATCH_IN_FLIGHT;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.MAX_WRITES_IN_FLIGHT;
 import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.MONITOR_HOST;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.NAMESPACE;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.NEAR_CACHE_SIZE;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.NEAR_CACHE_TRUST_WINDOW;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.PACKED_BUCKETS;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.PACKED_VALUE_THRESHOLD;
 import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.POOL_NAME;
 import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.POOL_NAME_PREFIX;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.SEGMENTED;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.TOUCH_INTERVAL;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.TRANSACTION_LOG;
 import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.USER_NAME;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.WRITE_BEHIND_MAX_AGE;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.WRITE_BEHIND_MAX_MEMORY;
+import static org.infinispan.persistence.ceph.configuration.CephStoreConfiguration.WRITE_BEHIND_QUEUE_SIZE;
 
+import org.infinispan.commons.CacheConfigurationException;
+import org.infinispan.commons.configuration.attributes.AttributeDefinition;
 import org.infinispan.configuration.cache.AbstractStoreConfigurationBuilder;
 import org.infinispan.configuration.cache.PersistenceConfigurationBuilder;
 
@@ -53,10 +84,173 @@ public class CephStoreConfigurationBuilder
       return self();
    }
 
+   public CephStoreConfigurationBuilder ioThreadPoolSize(int ioThreadPoolSize) {
+      attributes.attribute(IO_THREAD_POOL_SIZE).set(ioThreadPoolSize);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder maxBatchInFlight(int maxBatchInFlight) {
+      attributes.attribute(MAX_BATCH_IN_FLIGHT).set(maxBatchInFlight);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder expirationIndex(boolean expirationIndex) {
+      attributes.attribute(EXPIRATION_INDEX).set(expirationIndex);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder clearMode(ClearMode clearMode) {
+      attributes.attribute(CLEAR_MODE).set(clearMode);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder generationCleanupRate(int generationCleanupRate) {
+      attributes.attribute(GENERATION_CLEANUP_RATE).set(generationCleanupRate);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder segmented(boolean segmented) {
+      attributes.attribute(SEGMENTED).set(segmented);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder hashObjectNames(boolean hashObjectNames) {
+      attributes.attribute(HASH_OBJECT_NAMES).set(hashObjectNames);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder packedBuckets(int packedBuckets) {
+      attributes.attribute(PACKED_BUCKETS).set(packedBuckets);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder packedValueThreshold(int packedValueThreshold) {
+      attributes.attribute(PACKED_VALUE_THRESHOLD).set(packedValueThreshold);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder chunkThreshold(int chunkThreshold) {
+      attributes.attribute(CHUNK_THRESHOLD).set(chunkThreshold);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder chunkSize(int chunkSize) {
+      attributes.attribute(CHUNK_SIZE).set(chunkSize);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder compression(Compression compression) {
+      attributes.attribute(COMPRESSION).set(compression);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder compressionThreshold(int compressionThreshold) {
+      attributes.attribute(COMPRESSION_THRESHOLD).set(compressionThreshold);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder connections(int connections) {
+      attributes.attribute(CONNECTIONS).set(connections);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder namespace(String namespace) {
+      attributes.attribute(NAMESPACE).set(namespace);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder bloomFilterFalsePositiveRate(double bloomFilterFalsePositiveRate) {
+      attributes.attribute(BLOOM_FILTER_FALSE_POSITIVE_RATE).set(bloomFilterFalsePositiveRate);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder bloomFilterRebuildInterval(long bloomFilterRebuildInterval) {
+      attributes.attribute(BLOOM_FILTER_REBUILD_INTERVAL).set(bloomFilterRebuildInterval);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder nearCacheSize(long nearCacheSize) {
+      attributes.attribute(NEAR_CACHE_SIZE).set(nearCacheSize);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder nearCacheTrustWindow(long nearCacheTrustWindow) {
+      attributes.attribute(NEAR_CACHE_TRUST_WINDOW).set(nearCacheTrustWindow);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder writeBehindQueueSize(int writeBehindQueueSize) {
+      attributes.attribute(WRITE_BEHIND_QUEUE_SIZE).set(writeBehindQueueSize);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder writeBehindMaxMemory(long writeBehindMaxMemory) {
+      attributes.attribute(WRITE_BEHIND_MAX_MEMORY).set(writeBehindMaxMemory);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder writeBehindMaxAge(long writeBehindMaxAge) {
+      attributes.attribute(WRITE_BEHIND_MAX_AGE).set(writeBehindMaxAge);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder durability(Durability durability) {
+      attributes.attribute(DURABILITY).set(durability);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder maxWritesInFlight(int maxWritesInFlight) {
+      attributes.attribute(MAX_WRITES_IN_FLIGHT).set(maxWritesInFlight);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder hedgedReadPercentile(double hedgedReadPercentile) {
+      attributes.attribute(HEDGED_READ_PERCENTILE).set(hedgedReadPercentile);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder hedgedReadMaxRatio(double hedgedReadMaxRatio) {
+      attributes.attribute(HEDGED_READ_MAX_RATIO).set(hedgedReadMaxRatio);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder hedgedReadReplica(ReplicaSelection hedgedReadReplica) {
+      attributes.attribute(HEDGED_READ_REPLICA).set(hedgedReadReplica);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder transactionLog(boolean transactionLog) {
+      attributes.attribute(TRANSACTION_LOG).set(transactionLog);
+      return self();
+   }
+
+   public CephStoreConfigurationBuilder touchInterval(long touchInterval) {
+      attributes.attribute(TOUCH_INTERVAL).set(touchInterval);
+      return self();
+   }
+
    @Override
    public void validate() {
       super.validate();
-      //no further validation is needed, if config values are not specified by user, default values are used 
+      //values not specified by user are replaced by defaults, which are valid
+      requireAtLeast(IO_THREAD_POOL_SIZE, Attribute.IO_THREAD_POOL_SIZE, 1);
+      requireAtLeast(MAX_BATCH_IN_FLIGHT, Attribute.MAX_BATCH_IN_FLIGHT, 1);
+      requireAtLeast(GENERATION_CLEANUP_RATE, Attribute.GENERATION_CLEANUP_RATE, 1);
+      requireAtLeast(CHUNK_SIZE, Attribute.CHUNK_SIZE, 1);
+      double falsePositiveRate = attributes.attribute(BLOOM_FILTER_FALSE_POSITIVE_RATE).get();
+      //0 disables the filter
+      if (falsePositiveRate != 0 && !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+         throw new CacheConfigurationException(String.format("Attribute '%s' of the Ceph store must be 0 or between 0 "
+               + "and 1, but is %s", Attribute.BLOOM_FILTER_FALSE_POSITIVE_RATE.getLocalName(), falsePositiveRate));
+      }
+   }
+
+   private void requireAtLeast(AttributeDefinition<? extends Number> definition, Attribute attribute, long min) {
+      Number value = attributes.attribute(definition).get();
+      if (value.longValue() < min) {
+         throw new CacheConfigurationException(String.format("Attribute '%s' of the Ceph store must be at least %d, "
+               + "but is %s", attribute.getLocalName(), min, value));
+      }
    }
 
    @Override
@@ -35,7 +35,202 @@ public interface CephStoreConfigurationChildBuilder<S> extends StoreConfiguratio
     * non-alphabetical and non-digit characters are replaced by underscode. 
     */
    public CephStoreConfigurationBuilder poolNamePrefix(String poolNamePrefix);
-   
-   
+
+   /**
+    * Number of threads which execute asynchronous operations of the store. Defaults to 16.
+    */
+   public CephStoreConfigurationBuilder ioThreadPoolSize(int ioThreadPoolSize);
+
+   /**
+    * Maximum number of operations of a single batch write or delete which are in flight at the same time. Defaults to
+    * 64.
+    */
+   public CephStoreConfigurationBuilder maxBatchInFlight(int maxBatchInFlight);
+
+   /**
+    * Whether the store maintains an index of expiring entries in the pool, so that purge visits only entries which
+    * have already expired instead of scanning the whole pool. Defaults to false.
+    */
+   public CephStoreConfigurationBuilder expirationIndex(boolean expirationIndex);
+
+   /**
+    * Defines how the clear operation removes the entries, see {@link ClearMode}. Defaults to {@link ClearMode#DELETE}.
+    */
+   public CephStoreConfigurationBuilder clearMode(ClearMode clearMode);
+
+   /**
+    * Maximum number of objects per second removed by the background cleanup of old generations when {@link
+    * ClearMode#GENERATION} is used. Defaults to 1000.
+    */
+   public CephStoreConfigurationBuilder generationCleanupRate(int generationCleanupRate);
+
+   /**
+    * Whether entries are stored under a per-segment object name prefix, so that segment-scoped iteration, size and
+    * removal don't need to read the objects of other segments. The segment is obtained from the consistent hash of a
+    * distributed cache, the setting has no effect in local caches. Changing the setting requires an empty pool.
+    */
+   public CephStoreConfigurationBuilder segmented(boolean segmented);
+
+   /**
+    * Whether object names are derived from the SHA-256 hash of the marshalled key instead of using the configured key
+    * to string mapper. The marshalled key is stored in the object, so iteration doesn't need to map object names back
+    * to the keys. Changing the setting requires an empty pool.
+    */
+   public CephStoreConfigurationBuilder hashObjectNames(boolean hashObjectNames);
+
+   /**
+    * Number of bucket objects into which small entries are packed. Each entry is kept in the omap of a bucket chosen by
+    * the hash of its key, so that small entries don't need an object each. Entries larger than {@link
+    * #packedValueThreshold(int)} are stored in standalone objects. 0 disables packing. Changing the setting requires
+    * an empty pool.
+    */
+   public CephStoreConfigurationBuilder packedBuckets(int packedBuckets);
+
+   /**
+    * Maximum size in bytes of a marshalled value which is packed into a bucket object when {@link #packedBuckets(int)}
+    * is enabled.
+    */
+   public CephStoreConfigurationBuilder packedValueThreshold(int packedValueThreshold);
+
+   /**
+    * Marshalled values larger than this number of bytes are split into chunks of {@link #chunkSize(int)} bytes, each
+    * stored in its own object and written and read in parallel. The entry object then holds only a manifest of the
+    * chunks. 0 disables chunking.
+    */
+   public CephStoreConfigurationBuilder chunkThreshold(int chunkThreshold);
+
+   /**
+    * Size in bytes of the chunks large values are split into, see {@link #chunkThreshold(int)}.
+    */
+   public CephStoreConfigurationBuilder chunkSize(int chunkSize);
+
+   /**
+    * Codec used to compress marshalled values, see {@link Compression}. Values smaller than
+    * {@link #compressionThreshold(int)} and values which don't get smaller are stored uncompressed. Entries record the
+    * codec they were written with, so the setting can be changed without rewriting the stored entries. Defaults to
+    * {@link Compression#NONE}.
+    */
+   public CephStoreConfigurationBuilder compression(Compression compression);
+
+   /**
+    * Minimum size in bytes of a marshalled value which is compressed when {@link #compression(Compression)} is set.
+    * Defaults to 256.
+    */
+   public CephStoreConfigurationBuilder compressionThreshold(int compressionThreshold);
+
+   /**
+    * Number of independent connections to the Ceph cluster, each with its own I/O context of the pool. Operations on
+    * an object always use the connection selected by the hash of the object name. Connections are periodically checked
+    * and a failed one is replaced without stopping the store. Stores of one cache manager configured with the same
+    * monitor host, credentials and number of connections share the connections. Defaults to 1.
+    */
+   public CephStoreConfigurationBuilder connections(int connections);
+
+   /**
+    * RADOS namespace within the pool where the entries are stored. Caches configured with the same
+    * {@link #poolName(String)} and different namespaces share the pool without seeing each other's entries. Empty
+    * (default) uses the default namespace of the pool.
+    */
+   public CephStoreConfigurationBuilder namespace(String namespace);
+
+   /**
+    * False positive rate of the local Bloom filter of stored object names, which lets {@code load} and
+    * {@code contains} of missing entries return without contacting the cluster. The memory used by the filter is
+    * derived from the rate and the number of stored objects. 0 (default) disables the filter.
+    */
+   public CephStoreConfigurationBuilder bloomFilterFalsePositiveRate(double bloomFilterFalsePositiveRate);
+
+   /**
+    * Interval in milliseconds in which the Bloom filter enabled by {@link #bloomFilterFalsePositiveRate(double)} is
+    * rebuilt from the pool listing. Objects written by other nodes sharing the pool are reported as missing until the
+    * next rebuild, so the interval has to be set if the pool is shared. 0 (default) rebuilds the filter only when
+    * needed locally.
+    */
+   public CephStoreConfigurationBuilder bloomFilterRebuildInterval(long bloomFilterRebuildInterval);
+
+   /**
+    * Maximum size in bytes of the local near cache of recently loaded and written entries. A cached entry is served
+    * after reading only its header from the cluster to verify that the object has not changed, or without any read
+    * within {@link #nearCacheTrustWindow(long)}. 0 (default) disables the near cache.
+    */
+   public CephStoreConfigurationBuilder nearCacheSize(long nearCacheSize);
+
+   /**
+    * Time in milliseconds for which an entry of the near cache enabled by {@link #nearCacheSize(long)} is served
+    * without validating it against the cluster. Changes made by other nodes sharing the pool may not be seen for up to
+    * this time. 0 (default) validates the entry on every load.
+    */
+   public CephStoreConfigurationBuilder nearCacheTrustWindow(long nearCacheTrustWindow);
+
+   /**
+    * Maximum number of modifications which are queued by the store and applied to the cluster later in parallel
+    * batches. The queue keeps only the latest write or delete of each key and is flushed once half full, once it uses
+    * half of {@link #writeBehindMaxMemory(long)} or once the oldest modification is older than
+    * {@link #writeBehindMaxAge(long)}. Loads see the queued modifications. Deletes don't read the cluster, so whether
+    * they removed an entry is reported on a best-effort basis. 0 (default) applies every modification immediately.
+    */
+   public CephStoreConfigurationBuilder writeBehindQueueSize(int writeBehindQueueSize);
+
+   /**
+    * Maximum size in bytes of the marshalled values held by the write-behind queue enabled by
+    * {@link #writeBehindQueueSize(int)}. Defaults to 64 MiB.
+    */
+   public CephStoreConfigurationBuilder writeBehindMaxMemory(long writeBehindMaxMemory);
+
+   /**
+    * Time in milliseconds after which a modification queued by the write-behind queue enabled by
+    * {@link #writeBehindQueueSize(int)} is flushed at the latest. Defaults to 1000.
+    */
+   public CephStoreConfigurationBuilder writeBehindMaxAge(long writeBehindMaxAge);
+
+   /**
+    * Defines when a write of an entry object is considered complete, see {@link Durability}. Writes with durability
+    * other than {@link Durability#COMMIT} are submitted asynchronously and waited for only as far as required.
+    * Defaults to {@link Durability#COMMIT}.
+    */
+   public CephStoreConfigurationBuilder durability(Durability durability);
+
+   /**
+    * Maximum number of writes submitted with {@link Durability#FIRE_AND_FORGET} durability which are not yet
+    * acknowledged. Further writes wait until some of them complete. Defaults to 256.
+    */
+   public CephStoreConfigurationBuilder maxWritesInFlight(int maxWritesInFlight);
+
+   /**
+    * Percentile of the latencies of recent reads of entry objects after which a load or a contains check sends a
+    * second read of the same object to another replica and uses whichever read finishes first, e.g. 95 or 99. The
+    * share of hedged reads is limited by {@link #hedgedReadMaxRatio(double)}. 0 (default) disables hedged reads.
+    */
+   public CephStoreConfigurationBuilder hedgedReadPercentile(double hedgedReadPercentile);
+
+   /**
+    * Maximum share of the reads which may be hedged, between 0 and 1, so that a cluster wide slowdown doesn't double
+    * the read load. Defaults to 0.05.
+    */
+   public CephStoreConfigurationBuilder hedgedReadMaxRatio(double hedgedReadMaxRatio);
+
+   /**
+    * Defines which replica serves the hedged reads, see {@link ReplicaSelection}. Defaults to
+    * {@link ReplicaSelection#BALANCE}.
+    */
+   public CephStoreConfigurationBuilder hedgedReadReplica(ReplicaSelection hedgedReadReplica);
+
+   /**
+    * Whether transactions committed by this node are written to an intent log, named by the node name of the transport,
+    * or by the host name if none is configured. Before the modifications of a transaction are applied, they are written
+    * to an intent log object, which is removed once they are all applied. Intent logs left by a crash during a commit
+    * are applied again when the store starts, those of failed commits are applied again in the background. Defaults to
+    * {@code false}.
+    */
+   public CephStoreConfigurationBuilder transactionLog(boolean transactionLog);
+
+   /**
+    * Interval in milliseconds in which the times of the last use of loaded entries with max idle are written to the
+    * cluster. Loads only record the time in memory and every entry is written at most once per interval, expiration
+    * checks and purge take the recorded times into account. Every write is guarded by the creation time and the write
+    * stamp of the loaded entry, so it never modifies an entry written concurrently. 0 disables the updates, entries
+    * with max idle then expire in the store even if they are loaded. Defaults to 0.
+    */
+   public CephStoreConfigurationBuilder touchInterval(long touchInterval);
 
 }
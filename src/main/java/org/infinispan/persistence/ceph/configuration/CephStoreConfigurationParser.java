@@ -100,6 +100,122 @@ public class CephStoreConfigurationParser implements ConfigurationParser {
             builder.key2StringMapper(value);
             break;
          }
+         case IO_THREAD_POOL_SIZE: {
+            builder.ioThreadPoolSize(Integer.parseInt(value));
+            break;
+         }
+         case MAX_BATCH_IN_FLIGHT: {
+            builder.maxBatchInFlight(Integer.parseInt(value));
+            break;
+         }
+         case EXPIRATION_INDEX: {
+            builder.expirationIndex(Boolean.parseBoolean(value));
+            break;
+         }
+         case CLEAR_MODE: {
+            builder.clearMode(ClearMode.valueOf(value.toUpperCase()));
+            break;
+         }
+         case GENERATION_CLEANUP_RATE: {
+            builder.generationCleanupRate(Integer.parseInt(value));
+            break;
+         }
+         case SEGMENTED: {
+            builder.segmented(Boolean.parseBoolean(value));
+            break;
+         }
+         case HASH_OBJECT_NAMES: {
+            builder.hashObjectNames(Boolean.parseBoolean(value));
+            break;
+         }
+         case PACKED_BUCKETS: {
+            builder.packedBuckets(Integer.parseInt(value));
+            break;
+         }
+         case PACKED_VALUE_THRESHOLD: {
+            builder.packedValueThreshold(Integer.parseInt(value));
+            break;
+         }
+         case CHUNK_THRESHOLD: {
+            builder.chunkThreshold(Integer.parseInt(value));
+            break;
+         }
+         case CHUNK_SIZE: {
+            builder.chunkSize(Integer.parseInt(value));
+            break;
+         }
+         case COMPRESSION: {
+            builder.compression(Compression.valueOf(value.toUpperCase()));
+            break;
+         }
+         case COMPRESSION_THRESHOLD: {
+            builder.compressionThreshold(Integer.parseInt(value));
+            break;
+         }
+         case CONNECTIONS: {
+            builder.connections(Integer.parseInt(value));
+            break;
+         }
+         case NAMESPACE: {
+            builder.namespace(value);
+            break;
+         }
+         case BLOOM_FILTER_FALSE_POSITIVE_RATE: {
+            builder.bloomFilterFalsePositiveRate(Double.parseDouble(value));
+            break;
+         }
+         case BLOOM_FILTER_REBUILD_INTERVAL: {
+            builder.bloomFilterRebuildInterval(Long.parseLong(value));
+            break;
+         }
+         case NEAR_CACHE_SIZE: {
+            builder.nearCacheSize(Long.parseLong(value));
+            break;
+         }
+         case NEAR_CACHE_TRUST_WINDOW: {
+            builder.nearCacheTrustWindow(Long.parseLong(value));
+            break;
+         }
+         case WRITE_BEHIND_QUEUE_SIZE: {
+            builder.writeBehindQueueSize(Integer.parseInt(value));
+            break;
+         }
+         case WRITE_BEHIND_MAX_MEMORY: {
+            builder.writeBehindMaxMemory(Long.parseLong(value));
+            break;
+         }
+         case WRITE_BEHIND_MAX_AGE: {
+            builder.writeBehindMaxAge(Long.parseLong(value));
+            break;
+         }
+         case DURABILITY: {
+            builder.durability(Durability.valueOf(value.toUpperCase()));
+            break;
+         }
+         case MAX_WRITES_IN_FLIGHT: {
+            builder.maxWritesInFlight(Integer.parseInt(value));
+            break;
+         }
+         case HEDGED_READ_PERCENTILE: {
+            builder.hedgedReadPercentile(Double.parseDouble(value));
+            break;
+         }
+         case HEDGED_READ_MAX_RATIO: {
+            builder.hedgedReadMaxRatio(Double.parseDouble(value));
+            break;
+         }
+         case HEDGED_READ_REPLICA: {
+            builder.hedgedReadReplica(ReplicaSelection.valueOf(value.toUpperCase()));
+            break;
+         }
+         case TRANSACTION_LOG: {
+            builder.transactionLog(Boolean.parseBoolean(value));
+            break;
+         }
+         case TOUCH_INTERVAL: {
+            builder.touchInterval(Long.parseLong(value));
+            break;
+         }
          default: {
             Parser.parseStoreAttribute(reader, i, builder);
             break;
@@ -0,0 +1,18 @@
+package org.infinispan.persistence.ceph.configuration;
+
+/**
+ * Defines how {@link org.infinispan.persistence.ceph.CephStore#clear()} removes the entries.
+ *
+ * @since 9.0
+ */
+public enum ClearMode {
+   /**
+    * All objects are removed one by one, the call returns once the pool is empty.
+    */
+   DELETE,
+   /**
+    * Entries are stored under a generation specific object name prefix. Clear only switches to the next generation and
+    * returns immediately, objects of the previous generations are removed in the background.
+    */
+   GENERATION
+}
@@ -0,0 +1,22 @@
+package org.infinispan.persistence.ceph.configuration;
+
+/**
+ * Codec used to compress marshalled values before they are stored. Every entry records the codec it was written
+ * with, so changing the codec doesn't require rewriting the stored entries.
+ *
+ * @since 9.0
+ */
+public enum Compression {
+   /**
+    * Values are stored as marshalled.
+    */
+   NONE,
+   /**
+    * Values are compressed by the Deflate algorithm, which achieves better ratio at the cost of more CPU time.
+    */
+   DEFLATE,
+   /**
+    * Values are compressed in the LZ4 block format, which is considerably faster than Deflate but achieves lower ratio.
+    */
+   LZ4
+}
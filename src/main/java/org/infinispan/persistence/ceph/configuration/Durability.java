@@ -0,0 +1,27 @@
+package org.infinispan.persistence.ceph.configuration;
+
+/**
+ * Defines when a write of an entry object is considered complete.
+ *
+ * @since 9.0
+ */
+public enum Durability {
+   /**
+    * Write returns once the object is committed to the disks of all replicas.
+    */
+   COMMIT,
+   /**
+    * Write returns once the object is acknowledged by all replicas, i.e. applied in their memory, which may be before
+    * it is committed to disk. Recent Ceph releases acknowledge writes only once they are committed, so the setting
+    * makes a difference only with older clusters.
+    */
+   ACK,
+   /**
+    * Write returns once it's submitted to the cluster, without waiting for any acknowledgement. Number of such writes
+    * in flight is limited by
+    * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#maxWritesInFlight()}, failures are
+    * reported by {@link org.infinispan.persistence.ceph.CephStore#flush()}. Suitable only for caches which can be
+    * rebuilt.
+    */
+   FIRE_AND_FORGET
+}
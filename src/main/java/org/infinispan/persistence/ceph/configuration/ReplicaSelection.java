@@ -0,0 +1,19 @@
+package org.infinispan.persistence.ceph.configuration;
+
+/**
+ * Defines which replica of a placement group serves a read which is not directed to the primary OSD, see
+ * {@link org.infinispan.persistence.ceph.configuration.CephStoreConfiguration#hedgedReadReplica()}. Reads from a
+ * replica other than the primary may return an object which is not yet updated by a write in progress.
+ *
+ * @since 9.0
+ */
+public enum ReplicaSelection {
+   /**
+    * Read is served by a random replica.
+    */
+   BALANCE,
+   /**
+    * Read is served by the replica closest to the client according to the CRUSH location of the client.
+    */
+   LOCALIZE
+}
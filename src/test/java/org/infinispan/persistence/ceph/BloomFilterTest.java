@@ -0,0 +1,52 @@
+package org.infinispan.persistence.ceph;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "persistence.ceph.BloomFilterTest")
+public class BloomFilterTest {
+
+   public void testNoFalseNegatives() {
+      BloomFilter filter = new BloomFilter(10000, 0.01);
+      for (int i = 0; i < 10000; i++) {
+         filter.add("key_" + i);
+      }
+      for (int i = 0; i < 10000; i++) {
+         assertTrue(filter.mightContain("key_" + i));
+      }
+      assertFalse(filter.isOverfilled());
+      //elements taken for added ones don't count
+      for (int i = 0; i < 1000 && !filter.isOverfilled(); i++) {
+         filter.add("more_" + i);
+      }
+      assertTrue(filter.isOverfilled());
+   }
+
+   public void testReAddingDoesNotFill() {
+      BloomFilter filter = new BloomFilter(100, 0.01);
+      assertTrue(filter.add("key"));
+      for (int i = 0; i < 1000; i++) {
+         assertFalse(filter.add("key"));
+      }
+      assertFalse(filter.isOverfilled());
+   }
+
+   public void testFalsePositiveRate() {
+      BloomFilter filter = new BloomFilter(10000, 0.01);
+      for (int i = 0; i < 10000; i++) {
+         filter.add("key_" + i);
+      }
+      int falsePositives = 0;
+      for (int i = 0; i < 100000; i++) {
+         if (filter.mightContain("missing_" + i)) {
+            falsePositives++;
+         }
+      }
+      assertTrue(falsePositives < 2000, "False positives: " + falsePositives);
+      //about 9.6 bits per element for 1%
+      assertTrue(filter.bits() < 10000 * 10 + Long.SIZE);
+   }
+
+}
@@ -0,0 +1,119 @@
+package org.infinispan.persistence.ceph;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.metadata.EmbeddedMetadata;
+import org.infinispan.metadata.InternalMetadata;
+import org.infinispan.metadata.impl.InternalMetadataImpl;
+import org.infinispan.persistence.spi.PersistenceException;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "persistence.ceph.EntryFormatTest")
+public class EntryFormatTest {
+
+   public void testEncodeDecode() {
+      InternalMetadata metadata = new InternalMetadataImpl(new EmbeddedMetadata.Builder()
+            .lifespan(1000, TimeUnit.MILLISECONDS).maxIdle(500, TimeUnit.MILLISECONDS).build(), 10000, 10200);
+      byte[] value = new byte[] { 1, 2, 3 };
+      byte[] bytes = EntryFormat.encode(value, metadata);
+
+      assertTrue(EntryFormat.hasHeader(bytes, bytes.length));
+      StoredEntry stored = StoredEntry.fromHeader(bytes, bytes.length, true);
+      assertEquals(stored.metadata().lifespan(), 1000);
+      assertEquals(stored.metadata().maxIdle(), 500);
+      assertEquals(stored.metadata().created(), 10000);
+      assertEquals(stored.metadata().lastUsed(), 10200);
+      assertEquals(stored.expiryTime(), metadata.expiryTime());
+      assertFalse(stored.isExpired(10699));
+      assertTrue(stored.isExpired(10700));
+      assertEquals(stored.valueOffset(), EntryFormat.HEADER_SIZE);
+      assertEquals(stored.valueLength(), value.length);
+      assertEquals(bytes[stored.valueOffset() + 2], 3);
+   }
+
+   public void testEncodeWithoutMetadata() {
+      byte[] bytes = EntryFormat.encode(new byte[] { 1 }, null);
+      StoredEntry stored = StoredEntry.fromHeader(bytes, bytes.length, false);
+      assertNull(stored.metadata());
+      assertFalse(stored.hasValue());
+      assertFalse(stored.isExpired(Long.MAX_VALUE));
+   }
+
+   public void testEncodeWithKey() {
+      byte[] key = new byte[] { 7, 8 };
+      byte[] bytes = EntryFormat.encode(key, new byte[] { 1, 2, 3 }, null);
+
+      assertTrue(EntryFormat.hasHeader(bytes, bytes.length));
+      assertEquals(bytes[EntryFormat.OFFSET_VERSION], EntryFormat.VERSION_2);
+      StoredEntry stored = StoredEntry.fromHeader(bytes, bytes.length, true);
+      assertTrue(stored.hasKey());
+      assertEquals(stored.keyLength(), key.length);
+      assertEquals(bytes[stored.keyOffset() + 1], 8);
+      assertEquals(stored.valueOffset(), EntryFormat.HEADER_SIZE + EntryFormat.KEY_LENGTH_SIZE + key.length);
+      assertEquals(stored.valueLength(), 3);
+      assertEquals(bytes[stored.valueOffset()], 1);
+   }
+
+   public void testEncodeChunkedWithKey() {
+      byte[] key = new byte[] { 7, 8 };
+      ChunkManifest manifest = new ChunkManifest(2500, 1000, 42);
+      byte[] bytes = EntryFormat.encode(key, ValueCodec.NONE, EntryFormat.NO_STAMP, null, manifest);
+
+      assertEquals(bytes[EntryFormat.OFFSET_VERSION], EntryFormat.VERSION_2);
+      StoredEntry stored = StoredEntry.fromHeader(bytes, bytes.length, true);
+      assertEquals(stored.manifest().valueLength(), 2500);
+      assertEquals(stored.manifest().chunkCount(), 3);
+      assertEquals(stored.manifest().chunkLength(2), 500);
+      assertEquals(stored.keyLength(), key.length);
+      assertEquals(bytes[stored.keyOffset() + 1], 8);
+      assertEquals(stored.valueLength(), 0);
+      assertEquals(ChunkManifest.ownerOf(manifest.chunkName("~g1~k_1", 2)), "~g1~k_1");
+      assertEquals(ChunkManifest.ownerOf("k_1"), null);
+   }
+
+   public void testEncodeChunkedWithStamp() {
+      byte[] key = new byte[] { 7, 8 };
+      ChunkManifest manifest = new ChunkManifest(2500, 1000, 42);
+      byte[] bytes = EntryFormat.encode(key, ValueCodec.NONE, 123L, null, manifest);
+
+      assertEquals(bytes[EntryFormat.OFFSET_VERSION], EntryFormat.VERSION_2);
+      assertEquals(EntryFormat.stamp(bytes, bytes.length), 123L);
+      assertEquals(EntryFormat.stamp(bytes, EntryFormat.HEADER_SIZE), EntryFormat.NO_STAMP);
+      StoredEntry stored = StoredEntry.fromHeader(bytes, bytes.length, true);
+      assertEquals(stored.manifest().valueLength(), 2500);
+      assertEquals(stored.keyLength(), key.length);
+      assertEquals(bytes[stored.keyOffset() + 1], 8);
+      assertTrue(EntryFormat.PREFIX_SIZE >= stored.keyOffset());
+   }
+
+   public void testEncodeWithoutStamp() {
+      byte[] bytes = EntryFormat.encode(new byte[] { 1 }, null);
+      assertEquals(EntryFormat.stamp(bytes, bytes.length), EntryFormat.NO_STAMP);
+   }
+
+   public void testEncodeWithoutKeyKeepsVersion1() {
+      byte[] bytes = EntryFormat.encode(new byte[] { 1 }, null);
+      assertEquals(bytes[EntryFormat.OFFSET_VERSION], EntryFormat.VERSION_1);
+      assertFalse(StoredEntry.fromHeader(bytes, bytes.length, true).hasKey());
+   }
+
+   public void testLegacyValue() {
+      byte[] legacy = new byte[] { 3, 0, 0, 0, 1, 2, 3 };
+      assertFalse(EntryFormat.hasHeader(legacy, legacy.length));
+      byte[] bytes = EntryFormat.encode(new byte[0], null);
+      assertFalse(EntryFormat.hasHeader(bytes, EntryFormat.HEADER_SIZE - 1));
+   }
+
+   @Test(expectedExceptions = PersistenceException.class)
+   public void testUnknownVersion() {
+      byte[] bytes = EntryFormat.encode(new byte[] { 1 }, null);
+      bytes[EntryFormat.OFFSET_VERSION] = EntryFormat.CURRENT_VERSION + 1;
+      EntryFormat.hasHeader(bytes, bytes.length);
+   }
+
+}
@@ -0,0 +1,104 @@
+package org.infinispan.persistence.ceph;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.infinispan.persistence.spi.PersistenceException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ceph.rados.Rados;
+
+@Test(groups = "unit", testName = "persistence.ceph.HedgedReadsTest")
+public class HedgedReadsTest {
+
+   private ExecutorService executor;
+
+   @BeforeClass
+   public void setUp() {
+      executor = Executors.newCachedThreadPool();
+   }
+
+   @AfterClass
+   public void tearDown() {
+      executor.shutdownNow();
+   }
+
+   public void testSlowReadIsHedged() {
+      HedgedReads reads = new HedgedReads(90, 1, Rados.OPERATION_BALANCE_READS, executor);
+      warmUp(reads);
+      assertTrue(reads.delayNanos() < TimeUnit.SECONDS.toNanos(1));
+
+      long start = System.nanoTime();
+      String result = reads.read(flags -> {
+         if (flags == Rados.OPERATION_NOFLAG) {
+            sleep(5000);
+            return "primary";
+         }
+         return "hedged";
+      });
+      assertEquals(result, "hedged");
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+   }
+
+   public void testFailedHedgedReadIsIgnored() {
+      HedgedReads reads = new HedgedReads(90, 1, Rados.OPERATION_BALANCE_READS, executor);
+      warmUp(reads);
+
+      String result = reads.read(flags -> {
+         if (flags == Rados.OPERATION_NOFLAG) {
+            sleep(200);
+            return "primary";
+         }
+         throw new PersistenceException("replica failed");
+      });
+      assertEquals(result, "primary");
+   }
+
+   public void testHedgedReadsAreCapped() {
+      HedgedReads reads = new HedgedReads(90, 0, Rados.OPERATION_BALANCE_READS, executor);
+      warmUp(reads);
+
+      AtomicInteger hedged = new AtomicInteger();
+      String result = reads.read(flags -> {
+         if (flags == Rados.OPERATION_NOFLAG) {
+            sleep(200);
+            return "primary";
+         }
+         hedged.incrementAndGet();
+         return "hedged";
+      });
+      assertEquals(result, "primary");
+      assertEquals(hedged.get(), 0);
+   }
+
+   @Test(expectedExceptions = PersistenceException.class)
+   public void testFailureIsRethrown() {
+      HedgedReads reads = new HedgedReads(90, 1, Rados.OPERATION_BALANCE_READS, executor);
+      warmUp(reads);
+      reads.read(flags -> {
+         throw new PersistenceException("read failed");
+      });
+   }
+
+   private static void warmUp(HedgedReads reads) {
+      for (int i = 0; i < 1024; i++) {
+         assertEquals(reads.read(flags -> "fast"), "fast");
+      }
+   }
+
+   private static void sleep(long millis) {
+      try {
+         Thread.sleep(millis);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+}
@@ -0,0 +1,119 @@
+package org.infinispan.persistence.ceph;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "persistence.ceph.NearCacheTest")
+public class NearCacheTest {
+
+   public void testPutAndGet() {
+      NearCache cache = new NearCache(1024 * 1024);
+      StoredEntry stored = entry(42L, 10);
+      assertTrue(cache.putIfUnmodified("k", stored, false, cache.modification("k"), 100));
+
+      NearCache.Entry cached = cache.get("k");
+      assertEquals(cached.stamp(), 42L);
+      assertEquals(cached.validatedAt(), 100);
+      assertFalse(cached.packed());
+   }
+
+   public void testEntryWithoutStampIsNotCached() {
+      NearCache cache = new NearCache(1024 * 1024);
+      byte[] bytes = EntryFormat.encode(new byte[10], null);
+      cache.putIfUnmodified("k", StoredEntry.fromHeader(bytes, bytes.length, true), false, cache.modification("k"), 0);
+      assertNull(cache.get("k"));
+   }
+
+   public void testFetchOverlappingWriteIsNotCached() {
+      NearCache cache = new NearCache(1024 * 1024);
+      long fetchModification = cache.modification("k");
+      long writeModification = cache.invalidate("k");
+      assertTrue(cache.putIfUnmodified("k", entry(2L, 10), false, writeModification, 0));
+      assertFalse(cache.putIfUnmodified("k", entry(1L, 10), false, fetchModification, 0));
+      assertEquals(cache.get("k").stamp(), 2L);
+
+      cache.invalidate("k");
+      assertNull(cache.get("k"));
+   }
+
+   public void testModificationOfOtherObjectDoesNotPreventCaching() {
+      NearCache cache = new NearCache(1024 * 1024);
+      long[] modifications = new long[100];
+      for (int i = 0; i < 100; i++) {
+         modifications[i] = cache.modification("k" + i);
+      }
+      for (int i = 0; i < 100; i++) {
+         assertTrue(cache.putIfUnmodified("k" + i, entry(1L, 10), false, modifications[i], 0));
+      }
+      cache.invalidate("k0");
+      assertNotNull(cache.get("k1"));
+   }
+
+   public void testFetchOverlappingForgottenWriteIsNotCached() {
+      NearCache cache = new NearCache(1024 * 1024);
+      long fetchModification = cache.modification("k");
+      cache.invalidate("k");
+      //more modifications than a segment remembers
+      for (int i = 0; i < 16 * 2048; i++) {
+         cache.invalidate("n" + i);
+      }
+      assertFalse(cache.putIfUnmodified("k", entry(1L, 10), false, fetchModification, 0));
+
+      fetchModification = cache.modification("k");
+      cache.clear();
+      assertFalse(cache.putIfUnmodified("k", entry(1L, 10), false, fetchModification, 0));
+   }
+
+   public void testLeastRecentlyUsedEntryIsEvicted() {
+      //each segment holds two entries
+      NearCache cache = new NearCache(16 * 1000);
+      StoredEntry stored = entry(1L, 300);
+      cache.putIfUnmodified("a", stored, false, cache.modification("a"), 0);
+      for (int i = 0; i < 100; i++) {
+         String name = "n" + i;
+         assertNotNull(cache.get("a"));
+         cache.putIfUnmodified(name, stored, false, cache.modification(name), 0);
+         assertNotNull(cache.get(name));
+      }
+      int cached = 0;
+      for (int i = 0; i < 100; i++) {
+         cached += cache.get("n" + i) != null ? 1 : 0;
+      }
+      assertTrue(cached < 100);
+      assertNotNull(cache.get("a"));
+   }
+
+   public void testLargeEntryIsNotCached() {
+      NearCache cache = new NearCache(16 * 1000);
+      cache.putIfUnmodified("k", entry(1L, 2000), false, cache.modification("k"), 0);
+      assertNull(cache.get("k"));
+   }
+
+   public void testTouchOfSameStampKeepsEntry() {
+      NearCache cache = new NearCache(1024 * 1024);
+      StoredEntry stored = entry(42L, 10);
+      cache.putIfUnmodified("k", stored, false, cache.modification("k"), 100);
+
+      cache.touched("k", 43L, 200);
+      assertTrue(cache.get("k").stored() == stored);
+
+      long modification = cache.modification("k");
+      cache.touched("k", 42L, 200);
+      NearCache.Entry touched = cache.get("k");
+      assertFalse(touched.stored() == stored);
+      assertEquals(touched.stamp(), 42L);
+      assertEquals(touched.validatedAt(), 100);
+      assertEquals(cache.modification("k"), modification);
+   }
+
+   private static StoredEntry entry(long stamp, int valueLength) {
+      byte[] bytes = EntryFormat.encode(null, new byte[valueLength], ValueCodec.NONE, stamp, null);
+      return StoredEntry.fromHeader(bytes, bytes.length, true);
+   }
+
+}
@@ -0,0 +1,47 @@
+package org.infinispan.persistence.ceph;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "persistence.ceph.ObjectNamesTest")
+public class ObjectNamesTest {
+
+   public void testReservedNamesAreEscaped() {
+      ObjectNames names = new ObjectNames(true, false, false);
+      for (String mapping : new String[] { "key", "__ispn_expiry_1", "~e~key", "~e~" }) {
+         String objectName = names.escape(mapping);
+         assertFalse(names.isInternalObject(objectName));
+         assertEquals(names.unescape(objectName), mapping);
+      }
+      assertEquals(names.escape("key"), "key");
+      assertTrue(names.isInternalObject("__ispn_expiry_1"));
+   }
+
+   public void testNothingIsReservedWithoutInternalObjects() {
+      ObjectNames names = new ObjectNames(false, false, false);
+      assertEquals(names.escape("__ispn_expiry_1"), "__ispn_expiry_1");
+      assertEquals(names.unescape("~e~key"), "~e~key");
+      assertFalse(names.isInternalObject("__ispn_expiry_1"));
+   }
+
+   public void testGenerationPrefixIsEscaped() {
+      ObjectNames names = new ObjectNames(true, true, false);
+      String objectName = names.escape("~g3~key");
+      assertEquals(Generations.generationOf(objectName), 0);
+      assertEquals(Generations.generationOf("~g2~" + objectName), 2);
+      assertEquals(names.unescape(Generations.stripPrefix("~g2~" + objectName)), "~g3~key");
+      assertEquals(names.escape("~gx~key"), "~gx~key");
+   }
+
+   public void testSegmentPrefixIsEscaped() {
+      ObjectNames names = new ObjectNames(false, false, true);
+      String objectName = Segments.prefix(1) + names.escape("~s5~key");
+      assertEquals(Segments.segmentOf(objectName), 1);
+      assertEquals(names.unescape(Segments.stripPrefix(objectName)), "~s5~key");
+      assertEquals(names.escape("__ispn_key"), "__ispn_key");
+   }
+
+}
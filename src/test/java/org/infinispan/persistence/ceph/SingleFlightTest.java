@@ -0,0 +1,151 @@
+package org.infinispan.persistence.ceph;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.infinispan.persistence.spi.PersistenceException;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "persistence.ceph.SingleFlightTest")
+public class SingleFlightTest {
+
+   private static final int CALLERS = 8;
+
+   public void testConcurrentFetchesAreMerged() throws Exception {
+      SingleFlight<String> flight = new SingleFlight<>();
+      AtomicInteger fetches = new AtomicInteger();
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+      try {
+         Future<String> leader = executor.submit(() -> flight.fetch("k", () -> {
+            fetches.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "v";
+         }));
+         assertTrue(started.await(10, TimeUnit.SECONDS));
+         List<Future<String>> followers = new ArrayList<>();
+         for (int i = 1; i < CALLERS; i++) {
+            followers.add(executor.submit(() -> flight.fetch("k", () -> {
+               fetches.incrementAndGet();
+               return "other";
+            })));
+         }
+         //let the followers join the flight
+         Thread.sleep(100);
+         release.countDown();
+         assertEquals(leader.get(10, TimeUnit.SECONDS), "v");
+         for (Future<String> follower : followers) {
+            String result = follower.get(10, TimeUnit.SECONDS);
+            assertTrue(result.equals("v") || result.equals("other"));
+         }
+         assertTrue(fetches.get() < CALLERS);
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   public void testFailureIsPropagatedToFollowers() throws Exception {
+      SingleFlight<String> flight = new SingleFlight<>();
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try {
+         Future<String> leader = executor.submit(() -> flight.fetch("k", () -> {
+            started.countDown();
+            await(release);
+            throw new PersistenceException("failed");
+         }));
+         assertTrue(started.await(10, TimeUnit.SECONDS));
+         Future<String> follower = executor.submit(() -> flight.fetch("k", () -> "v"));
+         Thread.sleep(100);
+         release.countDown();
+         assertFailed(leader);
+         try {
+            assertEquals(follower.get(10, TimeUnit.SECONDS), "v");
+         } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof PersistenceException);
+         }
+         //failed flight is not reused
+         assertEquals(flight.fetch("k", () -> "v"), "v");
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   public void testForgottenFlightIsNotJoined() throws Exception {
+      SingleFlight<String> flight = new SingleFlight<>();
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+         Future<String> stale = executor.submit(() -> flight.fetch("k", () -> {
+            started.countDown();
+            await(release);
+            return "old";
+         }));
+         assertTrue(started.await(10, TimeUnit.SECONDS));
+         flight.forget("k");
+         assertEquals(flight.fetch("k", () -> "new"), "new");
+         release.countDown();
+         assertEquals(stale.get(10, TimeUnit.SECONDS), "old");
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   public void testAsyncFetchIsJoined() throws Exception {
+      SingleFlight<String> flight = new SingleFlight<>();
+      AtomicInteger fetches = new AtomicInteger();
+      CompletableFuture<String> read = new CompletableFuture<>();
+      CompletableFuture<String> leader = flight.fetchAsync("k", () -> {
+         fetches.incrementAndGet();
+         return read;
+      });
+      CompletableFuture<String> follower = flight.fetchAsync("k", () -> {
+         fetches.incrementAndGet();
+         return CompletableFuture.completedFuture("other");
+      });
+      assertFalse(follower.isDone());
+      //followers can't complete the shared flight
+      follower.complete("follower");
+      read.complete("v");
+      assertEquals(leader.get(10, TimeUnit.SECONDS), "v");
+      assertEquals(fetches.get(), 1);
+      //completed flight is not reused
+      assertEquals(flight.fetchAsync("k", () -> CompletableFuture.completedFuture("new")).get(10, TimeUnit.SECONDS),
+            "new");
+   }
+
+   private static void await(CountDownLatch latch) {
+      try {
+         latch.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private static void assertFailed(Future<?> future) throws Exception {
+      try {
+         future.get(10, TimeUnit.SECONDS);
+      } catch (ExecutionException e) {
+         assertTrue(e.getCause() instanceof PersistenceException);
+         return;
+      }
+      throw new AssertionError("Fetch should have failed");
+   }
+
+}
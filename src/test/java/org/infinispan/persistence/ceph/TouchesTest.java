@@ -0,0 +1,78 @@
+package org.infinispan.persistence.ceph;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.infinispan.persistence.spi.PersistenceException;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "persistence.ceph.TouchesTest")
+public class TouchesTest {
+
+   public void testLatestUseIsKept() {
+      Touches touches = new Touches(100, batch -> {}, Runnable::run);
+      touches.touch("a", entry(1000), false, 20);
+      touches.touch("a", entry(1000), false, 10);
+      assertEquals(touches.lastUse("a"), 20);
+      assertEquals(touches.lastUse("b"), -1);
+   }
+
+   public void testEntryWithoutMaxIdleIsNotTouched() {
+      Touches touches = new Touches(100, batch -> {}, Runnable::run);
+      touches.touch("a", entry(-1), false, 10);
+      assertEquals(touches.lastUse("a"), -1);
+   }
+
+   public void testForget() {
+      Touches touches = new Touches(100, batch -> {}, Runnable::run);
+      touches.touch("a", entry(1000), false, 10);
+      touches.forget("a");
+      assertEquals(touches.lastUse("a"), -1);
+   }
+
+   public void testFlush() {
+      List<Map<String, Touches.Touch>> flushed = new ArrayList<>();
+      Touches touches = new Touches(100, flushed::add, Runnable::run);
+      touches.touch("a", entry(1000), false, 10);
+      touches.touch("b", entry(1000), true, 20);
+      touches.flush();
+      assertEquals(flushed.size(), 1);
+      assertEquals(flushed.get(0).get("a").time(), 10);
+      assertTrue(flushed.get(0).get("b").legacy());
+      assertEquals(touches.lastUse("a"), -1);
+
+      touches.flush();
+      assertEquals(flushed.size(), 1);
+   }
+
+   public void testFailedUseStaysPending() {
+      Touches touches = new Touches(100, batch -> {
+         throw new CephBatchException("touch", Collections.singletonMap("a", new PersistenceException()));
+      }, Runnable::run);
+      touches.touch("a", entry(1000), false, 10);
+      touches.touch("b", entry(1000), false, 20);
+      touches.flushQuietly();
+      assertEquals(touches.lastUse("a"), 10);
+      assertEquals(touches.lastUse("b"), -1);
+   }
+
+   public void testFlushOnMaxPending() {
+      List<Map<String, Touches.Touch>> flushed = new ArrayList<>();
+      Touches touches = new Touches(2, flushed::add, Runnable::run);
+      touches.touch("a", entry(1000), false, 10);
+      assertTrue(flushed.isEmpty());
+      touches.touch("b", entry(1000), false, 10);
+      assertEquals(flushed.size(), 1);
+      assertEquals(flushed.get(0).size(), 2);
+   }
+
+   private static StoredEntry entry(long maxIdle) {
+      return new StoredEntry(true, -1, maxIdle, 0, 0, null, 0, 0, 0, 0, 0, null, null);
+   }
+
+}
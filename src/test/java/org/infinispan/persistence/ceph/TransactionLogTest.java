@@ -0,0 +1,47 @@
+package org.infinispan.persistence.ceph;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.infinispan.persistence.spi.PersistenceException;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "persistence.ceph.TransactionLogTest")
+public class TransactionLogTest {
+
+   public void testEncodeDecode() {
+      byte[] entry = EntryFormat.encode("key".getBytes(StandardCharsets.UTF_8), new byte[100], null);
+      byte[] removedKey = "removed".getBytes(StandardCharsets.UTF_8);
+      byte[] log = new TransactionLog.Encoder()
+            .add(TransactionLog.WRITE, entry)
+            .add(TransactionLog.DELETE, removedKey)
+            .toByteArray();
+
+      List<TransactionLog.Record> records = TransactionLog.decode(log);
+      assertEquals(records.size(), 2);
+      assertEquals(records.get(0).type(), TransactionLog.WRITE);
+      assertTrue(Arrays.equals(records.get(0).content(), entry));
+      assertEquals(records.get(1).type(), TransactionLog.DELETE);
+      assertTrue(Arrays.equals(records.get(1).content(), removedKey));
+   }
+
+   public void testEmptyLog() {
+      assertTrue(TransactionLog.decode(new TransactionLog.Encoder().toByteArray()).isEmpty());
+   }
+
+   @Test(expectedExceptions = PersistenceException.class)
+   public void testTruncatedLog() {
+      byte[] log = new TransactionLog.Encoder().add(TransactionLog.DELETE, new byte[10]).toByteArray();
+      TransactionLog.decode(Arrays.copyOf(log, log.length - 1));
+   }
+
+   @Test(expectedExceptions = PersistenceException.class)
+   public void testLogWithoutTime() {
+      TransactionLog.time(new byte[4]);
+   }
+
+}
@@ -0,0 +1,78 @@
+package org.infinispan.persistence.ceph;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.infinispan.persistence.ceph.configuration.Compression;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "persistence.ceph.ValueCodecTest")
+public class ValueCodecTest {
+
+   public void testCompressibleValue() throws IOException {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 500; i++) {
+         sb.append("{\"id\":").append(i).append(",\"name\":\"entry\",\"tags\":[\"a\",\"b\"]}");
+      }
+      byte[] value = sb.toString().getBytes(StandardCharsets.UTF_8);
+      for (Compression compression : new Compression[] { Compression.DEFLATE, Compression.LZ4 }) {
+         ValueCodec codec = ValueCodec.of(compression);
+         byte[] compressed = codec.compress(value);
+         assertTrue(compressed.length < value.length / 4, compression.toString());
+         assertRoundTrip(codec, value, compressed);
+      }
+   }
+
+   public void testIncompressibleAndSmallValues() throws IOException {
+      byte[] random = new byte[100_000];
+      new Random(42).nextBytes(random);
+      byte[][] values = { random, new byte[0], new byte[] { 1 }, new byte[13], "abcabcabcabcabcabc".getBytes() };
+      for (Compression compression : new Compression[] { Compression.DEFLATE, Compression.LZ4 }) {
+         ValueCodec codec = ValueCodec.of(compression);
+         for (byte[] value : values) {
+            assertRoundTrip(codec, value, codec.compress(value));
+         }
+      }
+   }
+
+   public void testCodecIds() throws IOException {
+      assertNull(ValueCodec.of(Compression.NONE));
+      assertNull(ValueCodec.forId(ValueCodec.NONE));
+      for (Compression compression : new Compression[] { Compression.DEFLATE, Compression.LZ4 }) {
+         ValueCodec codec = ValueCodec.of(compression);
+         assertEquals(ValueCodec.forId(codec.id()), codec);
+         byte[] bytes = EntryFormat.encode(null, new byte[] { 1 }, codec.id(), null);
+         assertEquals(bytes[EntryFormat.OFFSET_VERSION], EntryFormat.VERSION_2);
+         assertEquals(StoredEntry.fromHeader(bytes, bytes.length, true).codec(), codec.id());
+      }
+   }
+
+   @Test(expectedExceptions = IOException.class)
+   public void testUnknownCodec() throws IOException {
+      ValueCodec.forId(7);
+   }
+
+   private static void assertRoundTrip(ValueCodec codec, byte[] value, byte[] compressed) throws IOException {
+      byte[] shifted = new byte[compressed.length + 3];
+      System.arraycopy(compressed, 0, shifted, 3, compressed.length);
+      assertTrue(Arrays.equals(codec.decompress(shifted, 3, compressed.length), value));
+
+      InputStream in = codec.decompress(new ByteArrayInputStream(compressed));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) >= 0) {
+         out.write(b);
+      }
+      assertTrue(Arrays.equals(out.toByteArray(), value));
+   }
+
+}
@@ -4,6 +4,7 @@ import static org.infinispan.test.TestingUtil.withCacheManager;
 import static org.testng.Assert.assertEquals;
 
 import org.infinispan.Cache;
+import org.infinispan.commons.CacheConfigurationException;
 import org.infinispan.configuration.cache.Configuration;
 import org.infinispan.configuration.cache.ConfigurationBuilder;
 import org.infinispan.persistence.ceph.CephStore;
@@ -22,7 +23,8 @@ public class ConfigurationTest<K, V> extends AbstractInfinispanTest {
          .userName("admin")
          .key("AQCY2sdXyDIcJxAAK1edRJ8xOJ2NkkiXzAuq5A==")
          .monitorHost("192.168.122.145:6789")
-         .poolName("ispn-store");
+         .poolName("ispn-store")
+         .ioThreadPoolSize(4);
 
       Configuration configuration = cfg.build();
       CephStoreConfiguration storeCfg = (CephStoreConfiguration) configuration.persistence().stores().get(0);
@@ -30,6 +32,7 @@ public class ConfigurationTest<K, V> extends AbstractInfinispanTest {
       assertEquals(storeCfg.key(), "AQCY2sdXyDIcJxAAK1edRJ8xOJ2NkkiXzAuq5A==");
       assertEquals(storeCfg.monitorHost(), "192.168.122.145:6789");
       assertEquals(storeCfg.poolName(), "ispn-store");
+      assertEquals(storeCfg.ioThreadPoolSize(), 4);
       
       cfg = new ConfigurationBuilder();
       cfg.persistence().addStore(CephStoreConfigurationBuilder.class).read(storeCfg);
@@ -39,6 +42,7 @@ public class ConfigurationTest<K, V> extends AbstractInfinispanTest {
       assertEquals(storeCfg2.key(), "AQCY2sdXyDIcJxAAK1edRJ8xOJ2NkkiXzAuq5A==");
       assertEquals(storeCfg2.monitorHost(), "192.168.122.145:6789");
       assertEquals(storeCfg2.poolName(), "ispn-store");
+      assertEquals(storeCfg2.ioThreadPoolSize(), 4);
    }
    
    public void testDefaultPoolName() {
@@ -59,4 +63,39 @@ public class ConfigurationTest<K, V> extends AbstractInfinispanTest {
          }
       });
    }
-}
\ No newline at end of file
+
+   @Test(expectedExceptions = CacheConfigurationException.class)
+   public void testInvalidIoThreadPoolSize() {
+      ConfigurationBuilder cfg = new ConfigurationBuilder();
+      cfg.persistence().addStore(CephStoreConfigurationBuilder.class).ioThreadPoolSize(0);
+      cfg.build();
+   }
+
+   @Test(expectedExceptions = CacheConfigurationException.class)
+   public void testInvalidMaxBatchInFlight() {
+      ConfigurationBuilder cfg = new ConfigurationBuilder();
+      cfg.persistence().addStore(CephStoreConfigurationBuilder.class).maxBatchInFlight(0);
+      cfg.build();
+   }
+
+   @Test(expectedExceptions = CacheConfigurationException.class)
+   public void testInvalidGenerationCleanupRate() {
+      ConfigurationBuilder cfg = new ConfigurationBuilder();
+      cfg.persistence().addStore(CephStoreConfigurationBuilder.class).generationCleanupRate(0);
+      cfg.build();
+   }
+
+   @Test(expectedExceptions = CacheConfigurationException.class)
+   public void testInvalidChunkSize() {
+      ConfigurationBuilder cfg = new ConfigurationBuilder();
+      cfg.persistence().addStore(CephStoreConfigurationBuilder.class).chunkSize(0);
+      cfg.build();
+   }
+
+   @Test(expectedExceptions = CacheConfigurationException.class)
+   public void testInvalidBloomFilterFalsePositiveRate() {
+      ConfigurationBuilder cfg = new ConfigurationBuilder();
+      cfg.persistence().addStore(CephStoreConfigurationBuilder.class).bloomFilterFalsePositiveRate(1);
+      cfg.build();
+   }
+}
@@ -8,6 +8,9 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
 import org.infinispan.Cache;
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.parsing.ConfigurationBuilderHolder;
+import org.infinispan.configuration.parsing.ParserRegistry;
 import org.infinispan.manager.EmbeddedCacheManager;
 import org.infinispan.persistence.ceph.CephStore;
 import org.infinispan.test.AbstractInfinispanTest;
@@ -89,4 +92,81 @@ public class XmlFileParsingTest<K, V> extends AbstractInfinispanTest {
          }
       });
    }
+
+   public void testStoreAttributes() throws Exception {
+      String config = InfinispanStartTag.LATEST +
+            "<cache-container default-cache=\"default\">" +
+            "   <local-cache name=\"default\">\n" +
+            "      <persistence passivation=\"false\"> \n" +
+            "         <ceph-store xmlns=\"urn:infinispan:config:store:ceph:9.0\" " +
+            "          pool-name=\"ispn-store\" " +
+            "          io-thread-pool-size=\"4\" " +
+            "          max-batch-in-flight=\"8\" " +
+            "          expiration-index=\"true\" " +
+            "          clear-mode=\"GENERATION\" " +
+            "          generation-cleanup-rate=\"50\" " +
+            "          segmented=\"true\" " +
+            "          hash-object-names=\"true\" " +
+            "          packed-buckets=\"32\" " +
+            "          packed-value-threshold=\"128\" " +
+            "          chunk-threshold=\"4194304\" " +
+            "          chunk-size=\"524288\" " +
+            "          compression=\"LZ4\" " +
+            "          compression-threshold=\"1024\" " +
+            "          connections=\"3\" " +
+            "          namespace=\"ns\" " +
+            "          bloom-filter-false-positive-rate=\"0.02\" " +
+            "          bloom-filter-rebuild-interval=\"60000\" " +
+            "          near-cache-size=\"1048576\" " +
+            "          near-cache-trust-window=\"500\" " +
+            "          write-behind-queue-size=\"100\" " +
+            "          write-behind-max-memory=\"2097152\" " +
+            "          write-behind-max-age=\"250\" " +
+            "          durability=\"FIRE_AND_FORGET\" " +
+            "          max-writes-in-flight=\"64\" " +
+            "          hedged-read-percentile=\"0.99\" " +
+            "          hedged-read-max-ratio=\"0.1\" " +
+            "          hedged-read-replica=\"LOCALIZE\" " +
+            "          transaction-log=\"true\" " +
+            "          touch-interval=\"30000\" " +
+            "         />\n" +
+            "      </persistence>\n" +
+            "   </local-cache>\n" +
+            "</cache-container>" +
+            INFINISPAN_END_TAG;
+
+      //the configuration is only parsed, no store is started
+      ConfigurationBuilderHolder holder = new ParserRegistry().parse(new ByteArrayInputStream(config.getBytes()));
+      Configuration configuration = holder.getNamedConfigurationBuilders().get("default").build();
+      CephStoreConfiguration store = (CephStoreConfiguration) configuration.persistence().stores().get(0);
+      assertEquals(store.ioThreadPoolSize(), 4);
+      assertEquals(store.maxBatchInFlight(), 8);
+      assertEquals(store.expirationIndex(), true);
+      assertEquals(store.clearMode(), ClearMode.GENERATION);
+      assertEquals(store.generationCleanupRate(), 50);
+      assertEquals(store.segmented(), true);
+      assertEquals(store.hashObjectNames(), true);
+      assertEquals(store.packedBuckets(), 32);
+      assertEquals(store.packedValueThreshold(), 128);
+      assertEquals(store.chunkThreshold(), 4194304);
+      assertEquals(store.chunkSize(), 524288);
+      assertEquals(store.compression(), Compression.LZ4);
+      assertEquals(store.compressionThreshold(), 1024);
+      assertEquals(store.connections(), 3);
+      assertEquals(store.namespace(), "ns");
+      assertEquals(store.bloomFilterFalsePositiveRate(), 0.02d);
+      assertEquals(store.bloomFilterRebuildInterval(), 60000L);
+      assertEquals(store.nearCacheSize(), 1048576L);
+      assertEquals(store.nearCacheTrustWindow(), 500L);
+      assertEquals(store.writeBehindQueueSize(), 100);
+      assertEquals(store.writeBehindMaxMemory(), 2097152L);
+      assertEquals(store.writeBehindMaxAge(), 250L);
+      assertEquals(store.durability(), Durability.FIRE_AND_FORGET);
+      assertEquals(store.maxWritesInFlight(), 64);
+      assertEquals(store.hedgedReadPercentile(), 0.99d);
+      assertEquals(store.hedgedReadMaxRatio(), 0.1d);
+      assertEquals(store.hedgedReadReplica(), ReplicaSelection.LOCALIZE);
+      assertEquals(store.transactionLog(), true);
+      assertEquals(store.touchInterval(), 30000L);
+   }
 }
\ No newline at end of file